@@ -18,6 +18,7 @@ package io.fabric8.apmagent;
 import io.fabric8.apmagent.metrics.ApmAgentContext;
 import io.fabric8.apmagent.metrics.ThreadMetrics;
 import io.fabric8.apmagent.strategy.sampling.SamplingStrategy;
+import io.fabric8.apmagent.strategy.sampling.StackProfile;
 import io.fabric8.apmagent.strategy.trace.TraceStrategy;
 import io.fabric8.apmagent.utils.PropertyUtils;
 import org.jolokia.jvmagent.JvmAgent;
@@ -84,6 +85,28 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         }
     }
 
+    /**
+     * Invoked on entry to every method instrumented by the trace strategy
+     *
+     * @param methodId the ID the method was assigned when it was instrumented
+     */
+    public static void enterMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.enterMethod(Thread.currentThread(), methodId, false);
+        }
+    }
+
+    /**
+     * Invoked on every exit from a method instrumented by the trace strategy
+     *
+     * @param methodId the ID the method was assigned when it was instrumented
+     */
+    public static void exitMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.exitMethod(Thread.currentThread(), methodId, false);
+        }
+    }
+
     public static void enterMethod(String methodName) {
         if (INSTANCE.started.get()) {
             INSTANCE.apmAgentContext.enterMethod(Thread.currentThread(), methodName, false);
@@ -110,6 +133,36 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         return Collections.EMPTY_LIST;
     }
 
+    public String getCollapsedStacks() {
+        StackProfile stackProfile = getStackProfile();
+        return stackProfile != null ? stackProfile.getCollapsedStacks() : "";
+    }
+
+    public long getProfileSampleCount() {
+        StackProfile stackProfile = getStackProfile();
+        return stackProfile != null ? stackProfile.getSampleCount() : 0;
+    }
+
+    public long getProfileTruncatedCount() {
+        StackProfile stackProfile = getStackProfile();
+        return stackProfile != null ? stackProfile.getTruncatedCount() : 0;
+    }
+
+    public void resetProfile() {
+        StackProfile stackProfile = getStackProfile();
+        if (stackProfile != null) {
+            stackProfile.reset();
+        }
+    }
+
+    private StackProfile getStackProfile() {
+        Strategy s = this.strategy;
+        if (s instanceof SamplingStrategy) {
+            return ((SamplingStrategy) s).getStackProfile();
+        }
+        return null;
+    }
+
     public List<ThreadMetrics> getThreadMetrics() {
         if (isInitialized()) {
             return apmAgentContext.getThreadMetrics();
@@ -34,4 +34,21 @@ public interface ApmAgentMBean {
      * @return List of all <className>@<methodName>
      */
     List<String> getAllMethods();
+
+    /**
+     * @return the stacks sampled by the sampling strategy in the collapsed stack format used by flame graph tools
+     */
+    String getCollapsedStacks();
+
+    /**
+     * @return the number of stacks sampled by the sampling strategy
+     */
+    long getProfileSampleCount();
+
+    /**
+     * @return the number of sampled stacks which were cut short because the profile had reached its maximum size
+     */
+    long getProfileTruncatedCount();
+
+    void resetProfile();
 }
@@ -58,6 +58,9 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     private boolean threadMetricDepthChanged = false;
     private boolean strategyChanged = false;
     private int samplingInterval = 1;
+    private int samplingMaxThreads = 32;
+    private int samplingMaxDepth = 64;
+    private int profileMaxNodes = 20000;
     private List<FilterItem> whiteFilterList = new ArrayList<>();
     private List<FilterItem> blackFilterList = new ArrayList<>();
     private List<ApmConfigurationChangeListener> changeListeners = new CopyOnWriteArrayList<>();
@@ -252,6 +255,39 @@ public class ApmConfiguration implements ApmConfigurationMBean {
         this.samplingInterval = samplingInterval;
     }
 
+    /**
+     * The maximum number of threads whose stacks are taken each sampling interval, the threads are taken in turn
+     */
+    public int getSamplingMaxThreads() {
+        return samplingMaxThreads;
+    }
+
+    public void setSamplingMaxThreads(int samplingMaxThreads) {
+        this.samplingMaxThreads = samplingMaxThreads;
+    }
+
+    /**
+     * The maximum number of frames taken from the top of each sampled stack
+     */
+    public int getSamplingMaxDepth() {
+        return samplingMaxDepth;
+    }
+
+    public void setSamplingMaxDepth(int samplingMaxDepth) {
+        this.samplingMaxDepth = samplingMaxDepth;
+    }
+
+    /**
+     * The maximum number of call tree nodes the sampling profile keeps, deeper calls of new paths are cut off
+     */
+    public int getProfileMaxNodes() {
+        return profileMaxNodes;
+    }
+
+    public void setProfileMaxNodes(int profileMaxNodes) {
+        this.profileMaxNodes = profileMaxNodes;
+    }
+
     public String getStrategy() {
         return strategy.name();
     }
@@ -32,6 +32,7 @@ import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -50,7 +51,13 @@ public class ApmAgentContext {
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
     private ConcurrentMap<Thread, ThreadMetrics> threadMetricsMap = new ConcurrentHashMap<>();
-    private ConcurrentMap<String, MethodMetrics> methodMetricsMap = new ConcurrentHashMap<>();
+    // the metrics of the current thread so instrumented calls do not have to look them up in the shared map
+    private final ThreadLocal<ThreadMetrics> currentThreadMetrics = new ThreadLocal<>();
+    private final MethodMetricsTable<MethodMetrics> methodMetricsTable = new MethodMetricsTable<>();
+    private final ConcurrentMap<String, Integer> methodIds = new ConcurrentHashMap<>();
+    private volatile String[] methodNames = new String[64];
+    private volatile List<? extends MethodMetrics> sortedMethodMetrics = Collections.emptyList();
+    private int nextMethodId;
     private ConcurrentMap<Object, ObjectName> objectNameMap = new ConcurrentHashMap<>();
     private MBeanServer mBeanServer;
     private JolokiaServer jolokiaServer;
@@ -59,7 +66,6 @@ public class ApmAgentContext {
     private ObjectName configurationObjectName;
     private final ApmConfiguration configuration;
     private final MonitoredMethodMetrics monitoredMethodMetrics;
-    private AtomicBoolean doHouseKeeping = new AtomicBoolean();
     private Thread backgroundThread;
     private boolean monitorByDefault = true;
 
@@ -71,43 +77,106 @@ public class ApmAgentContext {
     }
 
     public void enterMethod(Thread currentThread, String fullMethodName, boolean alwaysActive) {
+        enterMethod(currentThread, getMethodId(fullMethodName), alwaysActive);
+    }
+
+    public void enterMethod(Thread currentThread, int methodId, boolean alwaysActive) {
         if (isInitialized()) {
-            ThreadMetrics threadMetrics = threadMetricsMap.get(currentThread);
+            ThreadMetrics threadMetrics = getThreadMetrics(currentThread);
             if (threadMetrics == null) {
-                threadMetrics = new ThreadMetrics(this, currentThread);
-                threadMetricsMap.put(currentThread, threadMetrics);
+                // the sampling strategy may already have created them from another thread
+                threadMetrics = threadMetricsMap.get(currentThread);
+                if (threadMetrics == null || threadMetrics.isDestroyed()) {
+                    threadMetrics = new ThreadMetrics(this, currentThread);
+                    threadMetricsMap.put(currentThread, threadMetrics);
+                }
+                if (currentThread == Thread.currentThread()) {
+                    currentThreadMetrics.set(threadMetrics);
+                }
             }
-            threadMetrics.enter(fullMethodName, alwaysActive);
-
-            MethodMetrics methodMetrics = methodMetricsMap.get(fullMethodName);
-            if (methodMetrics == null) {
-                methodMetrics = new MethodMetrics(fullMethodName);
-                methodMetrics.setActive(isMonitorByDefault());
-                methodMetricsMap.putIfAbsent(fullMethodName, methodMetrics);
+            threadMetrics.enter(methodId, alwaysActive);
+
+            if (methodMetricsTable.get(methodId) == null) {
+                String fullMethodName = getMethodName(methodId);
+                if (fullMethodName != null) {
+                    MethodMetrics methodMetrics = new MethodMetrics(fullMethodName);
+                    methodMetrics.setActive(isMonitorByDefault());
+                    methodMetricsTable.putIfAbsent(methodId, methodMetrics);
+                }
             }
         }
 
     }
 
     public void exitMethod(Thread currentThread, String methodName, boolean alwaysActive) {
+        exitMethod(currentThread, getMethodId(methodName), alwaysActive);
+    }
+
+    public void exitMethod(Thread currentThread, int methodId, boolean alwaysActive) {
         if (isInitialized()) {
-            ThreadMetrics threadMetrics = threadMetricsMap.get(currentThread);
+            ThreadMetrics threadMetrics = getThreadMetrics(currentThread);
 
             long elapsed = -1;
             if (threadMetrics != null) {
-                elapsed = threadMetrics.exit(methodName, alwaysActive);
+                elapsed = threadMetrics.exit(methodId, alwaysActive);
             }
 
             if (elapsed >= 0) {
-                MethodMetrics methodMetrics = methodMetricsMap.get(methodName);
+                MethodMetrics methodMetrics = methodMetricsTable.get(methodId);
                 if (methodMetrics != null) {
                     methodMetrics.update(elapsed);
                 }
             }
-            doHouseKeeping();
         }
     }
 
+    /**
+     * Returns the live metrics of the given thread or null if it has none. The sampling strategy records
+     * calls on behalf of other threads so only the current thread's metrics can come from the thread local.
+     */
+    private ThreadMetrics getThreadMetrics(Thread thread) {
+        ThreadMetrics answer;
+        if (thread == Thread.currentThread()) {
+            answer = currentThreadMetrics.get();
+        } else {
+            answer = threadMetricsMap.get(thread);
+        }
+        return answer != null && !answer.isDestroyed() ? answer : null;
+    }
+
+    /**
+     * Returns the ID of the given fully qualified method name, assigning the next unused ID the first time
+     * the method is seen. IDs are dense so metrics can be held in arrays indexed by them, and are never
+     * reused so code instrumented with an ID stays valid when its class is retransformed.
+     */
+    public int getMethodId(String fullMethodName) {
+        Integer id = methodIds.get(fullMethodName);
+        if (id == null) {
+            synchronized (methodIds) {
+                id = methodIds.get(fullMethodName);
+                if (id == null) {
+                    id = nextMethodId++;
+                    String[] names = methodNames;
+                    if (id >= names.length) {
+                        names = Arrays.copyOf(names, names.length * 2);
+                    }
+                    names[id] = fullMethodName;
+                    methodNames = names;
+                    methodIds.put(fullMethodName, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns the fully qualified method name of the given method ID or null if the ID has not been assigned
+     */
+    public String getMethodName(int methodId) {
+        String[] names = methodNames;
+        return methodId >= 0 && methodId < names.length ? names[methodId] : null;
+    }
+
     public void initialize() {
         if (initialized.compareAndSet(false, true)) {
             try {
@@ -130,7 +199,7 @@ public class ApmAgentContext {
                         while (started.get()) {
                             try {
                                 Thread.sleep(HOUSE_KEEPING_TIME);
-                                doHouseKeeping.set(true);
+                                doHouseKeeping();
                             } catch (Throwable e) {
                             }
                         }
@@ -143,24 +212,28 @@ public class ApmAgentContext {
     }
 
     void doHouseKeeping() {
-        //the time is going to be the elapsed time from the latest method call
-        //its not going to be terribly accurate - but then it doesn't really need to be
-        if (doHouseKeeping.compareAndSet(true, false)) {
-            try {
-                List<ThreadMetrics> threadMetricsList = getThreadMetrics();
-                for (ThreadMetrics tm : threadMetricsList) {
-                    if (tm.isDead()) {
-                        tm.destroy();
-                        threadMetricsMap.remove(tm.getThread());
-                    }
+        //runs on the background thread so instrumented calls never pay for it
+        try {
+            List<ThreadMetrics> threadMetricsList = getThreadMetrics();
+            for (ThreadMetrics tm : threadMetricsList) {
+                if (tm.isDead()) {
+                    // the thread local of a dead thread has gone with it, so this drops the last reference
+                    tm.destroy();
+                    threadMetricsMap.remove(tm.getThread());
                 }
-                monitoredMethodMetrics.calculateMethodMetrics(getMethodMetrics());
-                for (ThreadMetrics threadMetrics : threadMetricsList) {
+            }
+            // snapshot each timer once per interval, JMX and getMethodMetrics() only read the snapshots
+            List<MethodMetrics> methodMetricsList = methodMetricsTable.values();
+            MethodMetrics.calculateSnapshots(methodMetricsList);
+            sortedMethodMetrics = MethodMetrics.sortedMetrics(methodMetricsList);
+            monitoredMethodMetrics.calculateMethodMetrics(sortedMethodMetrics);
+            for (ThreadMetrics threadMetrics : threadMetricsList) {
+                if (!threadMetrics.isDestroyed()) {
                     threadMetrics.calculateMethodMetrics();
                 }
-            } catch (Throwable e) {
-                e.printStackTrace();
             }
+        } catch (Throwable e) {
+            e.printStackTrace();
         }
     }
 
@@ -170,7 +243,12 @@ public class ApmAgentContext {
                 unregisterMBean(objectName);
             }
             objectNameMap.clear();
-            methodMetricsMap.clear();
+            methodMetricsTable.clear();
+            sortedMethodMetrics = Collections.emptyList();
+            // threads still holding their metrics in their thread local will create new ones
+            for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+                threadMetrics.destroy();
+            }
             threadMetricsMap.clear();
         }
     }
@@ -237,7 +315,7 @@ public class ApmAgentContext {
     }
 
     public List<? extends MethodMetrics> getMethodMetrics() {
-        return MethodMetrics.sortedMetrics(methodMetricsMap.values());
+        return sortedMethodMetrics;
     }
 
     public boolean isInitialized() {
@@ -257,12 +335,13 @@ public class ApmAgentContext {
     }
 
     public void setActive(String fullMethodName, boolean flag) {
-        if (isInitialized()) {
+        Integer methodId = methodIds.get(fullMethodName);
+        if (isInitialized() && methodId != null) {
             for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
-                threadMetrics.setActive(fullMethodName, flag);
+                threadMetrics.setActive(methodId, flag);
             }
 
-            MethodMetrics methodMetrics = methodMetricsMap.get(fullMethodName);
+            MethodMetrics methodMetrics = methodMetricsTable.get(methodId);
             if (methodMetrics != null) {
                 methodMetrics.setActive(flag);
             }
@@ -341,9 +420,12 @@ public class ApmAgentContext {
     }
 
     private void remove(MethodDescription methodDescription) {
-        MethodMetrics methodMetrics = this.methodMetricsMap.remove(methodDescription.getFullMethodName());
-        for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
-            threadMetrics.remove(methodDescription.getFullMethodName());
+        Integer methodId = methodIds.get(methodDescription.getFullMethodName());
+        if (methodId != null) {
+            methodMetricsTable.remove(methodId);
+            for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+                threadMetrics.remove(methodId);
+            }
         }
     }
 
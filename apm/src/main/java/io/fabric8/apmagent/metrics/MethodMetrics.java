@@ -28,8 +28,8 @@ public class MethodMetrics {
     protected final Timer timer;
     private final String name;
     private final double rateFactor;
-    private final double durationFactor;
-    private int percentage;
+    private volatile MethodMetricsSnapshot snapshot = MethodMetricsSnapshot.EMPTY;
+    private volatile int percentage;
     private boolean active = true;
 
     /**
@@ -42,7 +42,6 @@ public class MethodMetrics {
         this.timer = new Timer();
 
         this.rateFactor = TimeUnit.SECONDS.toSeconds(1);
-        this.durationFactor = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
     }
 
     public String getName() {
@@ -57,64 +56,71 @@ public class MethodMetrics {
         this.active = active;
     }
 
+    /**
+     * Takes a new snapshot of the timer which all the statistics getters return until the next one
+     */
+    public void calculateSnapshot() {
+        snapshot = new MethodMetricsSnapshot(timer, rateFactor);
+    }
+
     public long getCount() {
-        return timer.getCount();
+        return snapshot.count;
     }
 
     public double getMeanRate() {
-        return timer.getMeanRate() * rateFactor;
+        return snapshot.meanRate;
     }
 
     public double getOneMinuteRate() {
-        return timer.getOneMinuteRate() * rateFactor;
+        return snapshot.oneMinuteRate;
     }
 
     public double getFiveMinuteRate() {
-        return timer.getFiveMinuteRate() * rateFactor;
+        return snapshot.fiveMinuteRate;
     }
 
     public double getFifteenMinuteRate() {
-        return timer.getFifteenMinuteRate() * rateFactor;
+        return snapshot.fifteenMinuteRate;
     }
 
     public double getMin() {
-        return timer.getSnapshot().getMin() * durationFactor;
+        return snapshot.min;
     }
 
     public double getMax() {
-        return timer.getSnapshot().getMax() * durationFactor;
+        return snapshot.max;
     }
 
     public double getMean() {
-        return timer.getSnapshot().getMean() * durationFactor;
+        return snapshot.mean;
     }
 
     public double getStdDev() {
-        return timer.getSnapshot().getStdDev() * durationFactor;
+        return snapshot.stdDev;
     }
 
     public double get50thPercentile() {
-        return timer.getSnapshot().getMedian() * durationFactor;
+        return snapshot.median;
     }
 
     public double get75thPercentile() {
-        return timer.getSnapshot().get75thPercentile() * durationFactor;
+        return snapshot.p75;
     }
 
     public double get95thPercentile() {
-        return timer.getSnapshot().get95thPercentile() * durationFactor;
+        return snapshot.p95;
     }
 
     public double get98thPercentile() {
-        return timer.getSnapshot().get98thPercentile() * durationFactor;
+        return snapshot.p98;
     }
 
     public double get99thPercentile() {
-        return timer.getSnapshot().get99thPercentile() * durationFactor;
+        return snapshot.p99;
     }
 
     public double get999thPercentile() {
-        return timer.getSnapshot().get999thPercentile() * durationFactor;
+        return snapshot.p999;
     }
 
     /**
@@ -123,7 +129,7 @@ public class MethodMetrics {
      * @return estimated load
      */
     public double getLoad() {
-        return timer.getSnapshot().size() * getMean();
+        return snapshot.load;
     }
 
     public int getPercentage() {
@@ -135,7 +141,7 @@ public class MethodMetrics {
     }
 
     public long[] values() {
-        return timer.getSnapshot().getValues();
+        return snapshot.values();
     }
 
     public void update(long elapsed) {
@@ -148,25 +154,36 @@ public class MethodMetrics {
         return "MethodMetrics:" + getName();
     }
 
+    /**
+     * Takes a new snapshot of each of the metrics
+     */
+    public static void calculateSnapshots(Collection<? extends MethodMetrics> collection) {
+        for (MethodMetrics m : collection) {
+            m.calculateSnapshot();
+        }
+    }
+
+    /**
+     * Sorts the metrics by the load of their last snapshots, highest first, and calculates their percentage of the total load
+     */
     public static List<? extends MethodMetrics> sortedMetrics(Collection<? extends MethodMetrics> collection) {
         ArrayList<? extends MethodMetrics> list = new ArrayList<>(collection);
 
         Collections.sort(list, new Comparator<MethodMetrics>() {
             @Override
             public int compare(MethodMetrics methodMetrics1, MethodMetrics methodMetrics2) {
-                return (int) ((int) methodMetrics2.getLoad() - (int) methodMetrics1.getLoad());
+                return Double.compare(methodMetrics2.getLoad(), methodMetrics1.getLoad());
             }
         });
         //calculate the percentage
-        int totalLoad = 0;
+        double totalLoad = 0;
         for (MethodMetrics m : list) {
             totalLoad += m.getLoad();
         }
         for (MethodMetrics m : list) {
-            int percentage = (int) ((m.getLoad() * 100) / totalLoad);
+            int percentage = totalLoad > 0 ? (int) ((m.getLoad() * 100) / totalLoad) : 0;
             m.setPercentage(percentage);
         }
         return list;
     }
 }
-
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable copy of the statistics of a {@link MethodMetrics} taken once per collection interval,
+ * so reading the metrics over JMX does not copy and sort the timer's reservoir on every attribute.
+ * Durations are in milliseconds.
+ */
+final class MethodMetricsSnapshot {
+    static final MethodMetricsSnapshot EMPTY = new MethodMetricsSnapshot();
+
+    private static final double DURATION_FACTOR = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+
+    final long count;
+    final double meanRate;
+    final double oneMinuteRate;
+    final double fiveMinuteRate;
+    final double fifteenMinuteRate;
+    final double min;
+    final double max;
+    final double mean;
+    final double stdDev;
+    final double median;
+    final double p75;
+    final double p95;
+    final double p98;
+    final double p99;
+    final double p999;
+    final double load;
+    private final long[] values;
+
+    private MethodMetricsSnapshot() {
+        values = new long[0];
+        count = 0;
+        meanRate = oneMinuteRate = fiveMinuteRate = fifteenMinuteRate = 0;
+        min = max = mean = stdDev = median = p75 = p95 = p98 = p99 = p999 = load = 0;
+    }
+
+    MethodMetricsSnapshot(Timer timer, double rateFactor) {
+        Snapshot snapshot = timer.getSnapshot();
+        count = timer.getCount();
+        meanRate = timer.getMeanRate() * rateFactor;
+        oneMinuteRate = timer.getOneMinuteRate() * rateFactor;
+        fiveMinuteRate = timer.getFiveMinuteRate() * rateFactor;
+        fifteenMinuteRate = timer.getFifteenMinuteRate() * rateFactor;
+        min = snapshot.getMin() * DURATION_FACTOR;
+        max = snapshot.getMax() * DURATION_FACTOR;
+        mean = snapshot.getMean() * DURATION_FACTOR;
+        stdDev = snapshot.getStdDev() * DURATION_FACTOR;
+        median = snapshot.getMedian() * DURATION_FACTOR;
+        p75 = snapshot.get75thPercentile() * DURATION_FACTOR;
+        p95 = snapshot.get95thPercentile() * DURATION_FACTOR;
+        p98 = snapshot.get98thPercentile() * DURATION_FACTOR;
+        p99 = snapshot.get99thPercentile() * DURATION_FACTOR;
+        p999 = snapshot.get999thPercentile() * DURATION_FACTOR;
+        // average amount of time for a method multiplied by the number of times called
+        load = snapshot.size() * mean;
+        values = snapshot.getValues();
+    }
+
+    long[] values() {
+        return values.clone();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds metrics indexed by method ID. Reads are lock free array lookups so they can be done on every
+ * instrumented call; adding and removing metrics is rare so is serialized.
+ */
+class MethodMetricsTable<T extends MethodMetrics> {
+    private volatile AtomicReferenceArray<T> table = new AtomicReferenceArray<>(64);
+
+    T get(int methodId) {
+        AtomicReferenceArray<T> current = table;
+        return methodId >= 0 && methodId < current.length() ? current.get(methodId) : null;
+    }
+
+    /**
+     * Adds the metrics for the method unless it already has some
+     *
+     * @return the metrics now held for the method
+     */
+    synchronized T putIfAbsent(int methodId, T metrics) {
+        AtomicReferenceArray<T> current = table;
+        if (methodId >= current.length()) {
+            int length = current.length();
+            while (methodId >= length) {
+                length *= 2;
+            }
+            AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            table = current = grown;
+        }
+        T answer = current.get(methodId);
+        if (answer == null) {
+            current.set(methodId, metrics);
+            answer = metrics;
+        }
+        return answer;
+    }
+
+    synchronized T remove(int methodId) {
+        AtomicReferenceArray<T> current = table;
+        return methodId >= 0 && methodId < current.length() ? current.getAndSet(methodId, null) : null;
+    }
+
+    synchronized void clear() {
+        AtomicReferenceArray<T> current = table;
+        for (int i = 0; i < current.length(); i++) {
+            current.set(i, null);
+        }
+    }
+
+    List<T> values() {
+        AtomicReferenceArray<T> current = table;
+        List<T> answer = new ArrayList<>();
+        for (int i = 0; i < current.length(); i++) {
+            T metrics = current.get(i);
+            if (metrics != null) {
+                answer.add(metrics);
+            }
+        }
+        return answer;
+    }
+}
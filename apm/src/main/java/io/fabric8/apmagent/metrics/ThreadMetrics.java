@@ -21,8 +21,6 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class ThreadMetrics {
@@ -31,8 +29,9 @@ public class ThreadMetrics {
     private final ThreadInfo threadInfo;
     private final Thread thread;
     private final ThreadMXBean threadMXBean;
-    private final ConcurrentMap<String, ThreadContextMethodMetrics> methods = new ConcurrentHashMap<>();
+    private final MethodMetricsTable<ThreadContextMethodMetrics> methods = new MethodMetricsTable<>();
     private final MonitoredThreadMethodMetrics monitoredThreadMethodMetrics;
+    private volatile boolean destroyed;
 
     public ThreadMetrics(ApmAgentContext apmAgentContext, Thread thread) {
         this.methodStackRef = new AtomicReference<>(new ThreadContextMethodMetricsStack());
@@ -73,21 +72,25 @@ public class ThreadMetrics {
         monitoredThreadMethodMetrics.setMonitorSize(monitorSize);
     }
 
-    public void enter(String methodName, boolean alwaysActive) {
-        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+    public void enter(int methodId, boolean alwaysActive) {
+        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodId);
         if (threadContextMethodMetrics == null) {
+            String methodName = apmAgentContext.getMethodName(methodId);
+            if (methodName == null) {
+                return;
+            }
             threadContextMethodMetrics = new ThreadContextMethodMetrics(thread, this.methodStackRef, methodName);
             threadContextMethodMetrics.setActive(apmAgentContext.isMonitorByDefault());
-            methods.putIfAbsent(methodName, threadContextMethodMetrics);
+            threadContextMethodMetrics = methods.putIfAbsent(methodId, threadContextMethodMetrics);
         }
         if (alwaysActive || threadContextMethodMetrics.isActive()) {
             threadContextMethodMetrics.onEnter();
         }
     }
 
-    public long exit(String methodName, boolean alwaysActive) {
+    public long exit(int methodId, boolean alwaysActive) {
         long result = -1;
-        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodId);
         if (threadContextMethodMetrics != null) {
             if (alwaysActive || threadContextMethodMetrics.isActive()) {
                 result = threadContextMethodMetrics.onExit();
@@ -105,28 +108,37 @@ public class ThreadMetrics {
     }
 
     public void destroy() {
+        destroyed = true;
         monitoredThreadMethodMetrics.destroy();
     }
 
-    public ThreadContextMethodMetrics remove(String fullMethodName) {
-        ThreadContextMethodMetrics result = methods.remove(fullMethodName);
+    /**
+     * Returns true once these metrics have been discarded and should no longer be updated
+     */
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    public ThreadContextMethodMetrics remove(int methodId) {
+        ThreadContextMethodMetrics result = methods.remove(methodId);
         return result;
     }
 
     public void calculateMethodMetrics() {
+        MethodMetrics.calculateSnapshots(this.methods.values());
         List<ThreadContextMethodMetrics> list = (List<ThreadContextMethodMetrics>) MethodMetrics.sortedMetrics(this.methods.values());
         monitoredThreadMethodMetrics.calculateMethodMetrics(list);
     }
 
-    public void setActive(String methodName, boolean flag) {
-        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+    public void setActive(int methodId, boolean flag) {
+        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodId);
         if (threadContextMethodMetrics != null) {
             threadContextMethodMetrics.setActive(flag);
         }
     }
 
-    public boolean isActive(String methodName) {
-        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+    public boolean isActive(int methodId) {
+        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodId);
         return threadContextMethodMetrics != null ? threadContextMethodMetrics.isActive() : false;
     }
 }
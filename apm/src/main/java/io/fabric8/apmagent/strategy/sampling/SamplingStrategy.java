@@ -22,12 +22,16 @@ import io.fabric8.apmagent.metrics.ApmAgentContext;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Samples the stacks of a bounded number of threads each interval using {@link ThreadMXBean#getThreadInfo(long[], int)},
+ * rather than taking the stacks of every thread, and aggregates them into a {@link StackProfile}.
+ * The top of each stack is also used to estimate the method metrics.
+ */
 public class SamplingStrategy implements Strategy, Runnable {
     private static final long CLEANUP_INTERVAL = 1000;
     private ApmAgentContext context;
@@ -36,10 +40,15 @@ public class SamplingStrategy implements Strategy, Runnable {
     private AtomicBoolean started = new AtomicBoolean();
     private Thread samplingThread;
     private final Map<Long, String> currentMethods = new HashMap<>();
+    private final Map<Long, Thread> threads = new HashMap<>();
+    private final StackProfile stackProfile;
+    private long[] sampleIds = new long[0];
+    private int nextThreadIndex;
 
     public SamplingStrategy(ApmAgentContext context) {
         this.context = context;
         this.configuration = context.getConfiguration();
+        this.stackProfile = new StackProfile(configuration.getProfileMaxNodes());
     }
 
     @Override
@@ -77,25 +86,35 @@ public class SamplingStrategy implements Strategy, Runnable {
 
     @Override
     public void configurationChanged() {
+        stackProfile.setMaxNodes(configuration.getProfileMaxNodes());
+    }
 
+    public StackProfile getStackProfile() {
+        return stackProfile;
     }
 
     @Override
     public void run() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
         long lastTime = 0;
         while (started.get()) {
             try {
-                for (Map.Entry<Thread, StackTraceElement[]> threadEntry : Thread.getAllStackTraces().entrySet()) {
-                    if (threadEntry.getKey() != Thread.currentThread()) {
-                        addMeasurement(threadEntry.getKey(), threadEntry.getValue());
-                    }
-                }
                 long currentTime = System.currentTimeMillis();
 
                 if ((currentTime - lastTime) > CLEANUP_INTERVAL) {
                     cleanup();
                     lastTime = currentTime;
                 }
+                long[] ids = nextThreadIds(threadMXBean.getAllThreadIds());
+                // getThreadInfo still brings every thread to a safepoint, sampling a few threads to a bounded
+                // depth only keeps the time spent there short
+                for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(ids, configuration.getSamplingMaxDepth())) {
+                    if (threadInfo != null) {
+                        StackTraceElement[] stackTraceElements = threadInfo.getStackTrace();
+                        stackProfile.addSample(stackTraceElements);
+                        addMeasurement(threads.get(threadInfo.getThreadId()), stackTraceElements);
+                    }
+                }
                 Thread.sleep(configuration.getSamplingInterval());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -103,23 +122,44 @@ public class SamplingStrategy implements Strategy, Runnable {
         }
     }
 
-    private void cleanup() {
-        List<ThreadInfo> removeList = null;
-        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
-        for (Long id : currentMethods.keySet()) {
-            ThreadInfo threadInfo = threadMXBean.getThreadInfo(id);
-            if (threadInfo != null) {
-                if (threadInfo.getThreadState() == Thread.State.TERMINATED) {
-                    if (removeList == null) {
-                        removeList = new ArrayList<>();
-                    }
-                    removeList.add(threadInfo);
-                }
+    /**
+     * Returns the ids of the next threads to sample, taking the live threads in turn
+     */
+    private long[] nextThreadIds(long[] allThreadIds) {
+        long selfId = Thread.currentThread().getId();
+        int count = Math.min(configuration.getSamplingMaxThreads(), allThreadIds.length - 1);
+        if (count <= 0) {
+            return new long[0];
+        }
+        if (sampleIds.length != count) {
+            sampleIds = new long[count];
+        }
+        int index = 0;
+        for (int i = 0; i < allThreadIds.length && index < count; i++) {
+            long id = allThreadIds[(nextThreadIndex + i) % allThreadIds.length];
+            if (id != selfId) {
+                sampleIds[index++] = id;
             }
         }
-        if (removeList != null) {
-            for (ThreadInfo threadInfo : removeList) {
-                currentMethods.remove(threadInfo.getThreadId());
+        nextThreadIndex = (nextThreadIndex + count) % allThreadIds.length;
+        return sampleIds;
+    }
+
+    private void cleanup() {
+        // enumerating the threads does not need a safepoint unlike Thread.getAllStackTraces()
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        Thread[] liveThreads = new Thread[group.activeCount() + 16];
+        int count = group.enumerate(liveThreads, true);
+        threads.clear();
+        for (int i = 0; i < count; i++) {
+            threads.put(liveThreads[i].getId(), liveThreads[i]);
+        }
+        for (Iterator<Long> iterator = currentMethods.keySet().iterator(); iterator.hasNext(); ) {
+            if (!threads.containsKey(iterator.next())) {
+                iterator.remove();
             }
         }
     }
@@ -148,4 +188,3 @@ public class SamplingStrategy implements Strategy, Runnable {
         return stringBuilder.toString();
     }
 }
-
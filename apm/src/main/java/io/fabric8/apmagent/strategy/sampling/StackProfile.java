@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates sampled stacks into a call tree which can be written in the collapsed stack format
+ * used by flame graph tools: one line per distinct stack with its frames separated by ';' from the
+ * outermost call and followed by the number of samples.
+ * <p>
+ * The tree is bounded by a maximum number of nodes, once it is reached a sample of a new call path is
+ * counted against the deepest frame already in the tree. Samples whose outermost frame is not in the
+ * tree are reported under a {@link #TRUNCATED_FRAME} frame of their own.
+ */
+public class StackProfile {
+    public static final String TRUNCATED_FRAME = "[truncated]";
+
+    private final Node root = new Node(null);
+    private int maxNodes;
+    private int nodeCount;
+    private long sampleCount;
+    private long truncatedCount;
+
+    public StackProfile(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Adds a sampled stack, the first element is the top of the stack as returned by {@link Thread#getStackTrace()}
+     */
+    public synchronized void addSample(StackTraceElement[] stackTraceElements) {
+        if (stackTraceElements == null || stackTraceElements.length == 0) {
+            return;
+        }
+        Node node = root;
+        for (int i = stackTraceElements.length - 1; i >= 0; i--) {
+            String frame = getFrame(stackTraceElements[i]);
+            Node child = node.children != null ? node.children.get(frame) : null;
+            if (child == null) {
+                if (nodeCount >= maxNodes) {
+                    truncatedCount++;
+                    break;
+                }
+                child = node.addChild(frame);
+                nodeCount++;
+            }
+            node = child;
+        }
+        node.selfCount++;
+        sampleCount++;
+    }
+
+    /**
+     * @return the profile in the collapsed stack format
+     */
+    public synchronized String getCollapsedStacks() {
+        StringBuilder builder = new StringBuilder();
+        if (root.selfCount > 0) {
+            builder.append(TRUNCATED_FRAME).append(' ').append(root.selfCount).append('\n');
+        }
+        if (root.children != null) {
+            List<String> path = new ArrayList<>();
+            for (Node child : root.children.values()) {
+                appendCollapsedStacks(builder, path, child);
+            }
+        }
+        return builder.toString();
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the number of samples which were cut short because the profile had reached its maximum size
+     */
+    public synchronized long getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    public synchronized void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public synchronized void reset() {
+        root.children = null;
+        root.selfCount = 0;
+        nodeCount = 0;
+        sampleCount = 0;
+        truncatedCount = 0;
+    }
+
+    private void appendCollapsedStacks(StringBuilder builder, List<String> path, Node node) {
+        path.add(node.frame);
+        if (node.selfCount > 0) {
+            for (int i = 0; i < path.size(); i++) {
+                if (i > 0) {
+                    builder.append(';');
+                }
+                builder.append(path.get(i));
+            }
+            builder.append(' ').append(node.selfCount).append('\n');
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                appendCollapsedStacks(builder, path, child);
+            }
+        }
+        path.remove(path.size() - 1);
+    }
+
+    private static String getFrame(StackTraceElement stackTraceElement) {
+        String className = stackTraceElement.getClassName();
+        String methodName = stackTraceElement.getMethodName();
+        StringBuilder stringBuilder = new StringBuilder(className.length() + methodName.length() + 1);
+        stringBuilder.append(className).append(".").append(methodName);
+        return stringBuilder.toString();
+    }
+
+    private static class Node {
+        private final String frame;
+        private Map<String, Node> children;
+        private long selfCount;
+
+        Node(String frame) {
+            this.frame = frame;
+        }
+
+        Node addChild(String frame) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            Node child = new Node(frame);
+            children.put(frame, child);
+            return child;
+        }
+    }
+}
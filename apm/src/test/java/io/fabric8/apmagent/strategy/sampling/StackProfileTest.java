@@ -0,0 +1,78 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class StackProfileTest {
+
+    @Test
+    public void testCollapsedStacks() throws Exception {
+        StackProfile profile = new StackProfile(100);
+        profile.addSample(stack("Main.run", "Foo.a", "Foo.b"));
+        profile.addSample(stack("Main.run", "Foo.a", "Foo.b"));
+        profile.addSample(stack("Main.run", "Foo.a"));
+        profile.addSample(stack("Main.run", "Bar.c"));
+        profile.addSample(new StackTraceElement[0]);
+
+        assertEquals(4, profile.getSampleCount());
+        assertEquals(0, profile.getTruncatedCount());
+        assertEquals(set("Main.run;Foo.a 1", "Main.run;Foo.a;Foo.b 2", "Main.run;Bar.c 1"), set(profile.getCollapsedStacks().split("\n")));
+    }
+
+    @Test
+    public void testTruncatedSamplesAreReported() throws Exception {
+        StackProfile profile = new StackProfile(2);
+        profile.addSample(stack("Main.run", "Foo.a"));
+        // no room for Foo.b so it is counted against Foo.a
+        profile.addSample(stack("Main.run", "Foo.a", "Foo.b"));
+        // no room for the outermost frame so it is reported as truncated
+        profile.addSample(stack("Other.run", "Bar.c"));
+
+        assertEquals(3, profile.getSampleCount());
+        assertEquals(2, profile.getTruncatedCount());
+        assertEquals(set(StackProfile.TRUNCATED_FRAME + " 1", "Main.run;Foo.a 2"), set(profile.getCollapsedStacks().split("\n")));
+
+        profile.reset();
+        assertEquals(0, profile.getSampleCount());
+        assertEquals(0, profile.getTruncatedCount());
+        assertEquals("", profile.getCollapsedStacks());
+    }
+
+    /**
+     * Creates a stack from the outermost call inwards, returned top first like {@link Thread#getStackTrace()}
+     */
+    private static StackTraceElement[] stack(String... frames) {
+        StackTraceElement[] answer = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            int dot = frames[i].lastIndexOf('.');
+            answer[frames.length - 1 - i] = new StackTraceElement(frames[i].substring(0, dot), frames[i].substring(dot + 1), null, -1);
+        }
+        return answer;
+    }
+
+    private static Set<String> set(String... lines) {
+        return new HashSet<String>(Arrays.asList(lines));
+    }
+}
@@ -91,14 +91,20 @@ import org.apache.zookeeper.KeeperException;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.gitective.core.RepositoryUtils;
 import io.fabric8.api.gravia.IllegalArgumentAssertion;
 import io.fabric8.api.gravia.IllegalStateAssertion;
@@ -465,37 +471,12 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return Collections.unmodifiableMap(dataStoreProperties);
     }
 
+    /**
+     * Versions are loaded from the git object database without checking them out, so they are
+     * loaded under the read lock and several versions can be loaded at the same time
+     */
     private Version getVersionFromCache(String versionId, String profileId) {
-        Version result = getVersionFromCacheRO(versionId, profileId);
-        if (result == null) {
-            return getVersionFromCacheRW(versionId, profileId);
-        }
-        return result;
-    }
-    
-    private Version getVersionFromCacheRO(String versionId, String profileId){
         LockHandle readLock = aquireReadLock();
-        try {
-            assertValid();
-            String branch = GitHelpers.getProfileBranch(versionId, profileId);
-            if (GitHelpers.localBranchExists(getGit(), branch)) {
-                if( versionCache.asMap().containsKey(versionId) ) {
-                    return versionCache.asMap().get(versionId);
-                } else {
-                    return null;
-                }
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            throw FabricException.launderThrowable(e);
-        } finally {
-            readLock.unlock();
-        }
-    }
-
-    private Version getVersionFromCacheRW(String versionId, String profileId){
-        LockHandle writeLock = aquireWriteLock();
         try {
             assertValid();
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
@@ -507,7 +488,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -1771,7 +1752,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         
         @Override
         public Version load(final String versionId) {
-            assertWriteLock();
+            assertReadLock();
             GitOperation<Version> gitop = new GitOperation<Version>() {
                 public Version call(Git git, GitContext context) throws Exception {
                     String revision = git.getRepository().getRefDatabase().getRef(versionId).getObjectId().getName();
@@ -1785,90 +1766,61 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         private Version loadVersion(Git git, GitContext context, String versionId, String revision) throws Exception {
             VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(revision);
             vbuilder.setAttributes(getVersionAttributes(git, context, versionId));
-            populateVersionBuilder(git, context, vbuilder, GitHelpers.MASTER_BRANCH, versionId);
-            populateVersionBuilder(git, context, vbuilder, versionId, versionId);
+            populateVersionBuilder(git, vbuilder, GitHelpers.MASTER_BRANCH, versionId);
+            populateVersionBuilder(git, vbuilder, versionId, versionId);
             return vbuilder.getVersion();
         }
 
-        private void populateVersionBuilder(Git git, GitContext context, VersionBuilder builder, String branch, String versionId) throws GitAPIException, IOException {
-            checkoutRequiredProfileBranch(git, context, branch, null);
-            File profilesDir = GitHelpers.getProfilesDirectory(git);
-            if (profilesDir.exists()) {
-                String[] files = profilesDir.list();
-                if (files != null) {
-                    for (String childName : files) {
-                        Path childPath = profilesDir.toPath().resolve(childName);
-                        if (childPath.toFile().isDirectory()) {
-                            populateProfile(git, builder, branch, versionId, childPath.toFile(), "");
-
-                        }
-                    }
+        /**
+         * Adds the profiles of the branch, they are read from the commit of the branch so nothing is checked out
+         */
+        private void populateVersionBuilder(Git git, VersionBuilder builder, String branch, String versionId) throws IOException {
+            Repository repository = git.getRepository();
+            ObjectId commitId = repository.resolve("refs/heads/" + branch);
+            IllegalStateAssertion.assertNotNull(commitId, "Cannot find profile branch: " + versionId + "/" + branch);
+            ObjectReader reader = repository.newObjectReader();
+            try {
+                RevTree tree = new RevWalk(reader).parseCommit(commitId).getTree();
+                TreeWalk walk = TreeWalk.forPath(reader, GitHelpers.PROFILES_PATH, tree);
+                if (walk != null && FileMode.TREE.equals(walk.getRawMode(0))) {
+                    populateProfiles(reader, builder, versionId, walk.getObjectId(0), "");
                 }
+            } finally {
+                reader.close();
             }
         }
 
-        private void populateProfile(Git git, VersionBuilder versionBuilder, String branch, String versionId, File profileFile, String prefix) throws IOException {
-            String profileName = profileFile.getName();
-            String profileId = profileName;
-            if (profileId.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
-                profileId = prefix + profileId.substring(0, profileId.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = profileFile.listFiles();
-                if (files != null) {
-                    for (File childFile : files) {
-                        if (childFile.isDirectory()) {
-                            populateProfile(git, versionBuilder, branch, versionId, childFile, prefix + profileFile.getName() + "-");
-                        }
-                    }
+        private void populateProfiles(ObjectReader reader, VersionBuilder versionBuilder, String versionId, ObjectId treeId, String prefix) throws IOException {
+            TreeWalk walk = new TreeWalk(reader);
+            walk.addTree(treeId);
+            while (walk.next()) {
+                if (!FileMode.TREE.equals(walk.getRawMode(0))) {
+                    continue;
                 }
-                return;
-            }
-
-            Map<String, byte[]> fileConfigurations = doGetFileConfigurations(git, profileId);
-            
-            ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
-            profileBuilder.setFileConfigurations(fileConfigurations);
-            versionBuilder.addProfile(profileBuilder.getProfile());
-        }
-
-        private Map<String, byte[]> doGetFileConfigurations(Git git, String profileId) throws IOException {
-            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
-            File profileDirectory = GitHelpers.getProfileDirectory(git, profileId);
-            populateFileConfigurations(configurations, profileDirectory, profileDirectory);
-            return configurations;
-        }
-
-        private void populateFileConfigurations(Map<String, byte[]> configurations, File profileDirectory, File directory) throws IOException {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String relativePath = getFilePattern(profileDirectory, file);
-                        configurations.put(relativePath, loadFileConfiguration(file));
-                    } else if (file.isDirectory()) {
-                        populateFileConfigurations(configurations, profileDirectory, file);
-                    }
+                String name = walk.getNameString();
+                if (name.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                    String profileId = prefix + name.substring(0, name.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
+                    ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
+                    profileBuilder.setFileConfigurations(getFileConfigurations(reader, walk.getObjectId(0)));
+                    versionBuilder.addProfile(profileBuilder.getProfile());
+                } else {
+                    // lets recurse all children
+                    populateProfiles(reader, versionBuilder, versionId, walk.getObjectId(0), prefix + name + "-");
                 }
             }
         }
 
-        private byte[] loadFileConfiguration(File file) throws IOException {
-            if (file.isDirectory()) {
-                // Not sure why we do this, but for directory pids, lets recurse...
-                StringBuilder buf = new StringBuilder();
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        String value = Files.toString(child);
-                        buf.append(String.format("%s = %s\n", child.getName(), value));
-                    }
+        private Map<String, byte[]> getFileConfigurations(ObjectReader reader, ObjectId profileTreeId) throws IOException {
+            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
+            TreeWalk walk = new TreeWalk(reader);
+            walk.addTree(profileTreeId);
+            walk.setRecursive(true);
+            while (walk.next()) {
+                if (!FileMode.GITLINK.equals(walk.getRawMode(0))) {
+                    configurations.put(walk.getPathString(), reader.open(walk.getObjectId(0)).getBytes());
                 }
-                return buf.toString().getBytes();
-            } else if (file.exists() && file.isFile()) {
-                return Files.readBytes(file);
             }
-            return null;
+            return configurations;
         }
     }
 }
@@ -53,6 +53,7 @@ public class GitHelpers {
 
     static final String CONFIGS = "fabric";
     static final String CONFIGS_PROFILES = CONFIGS + File.separator + "profiles";
+    static final String PROFILES_PATH = CONFIGS + "/profiles";
     static final String VERSION_ATTRIBUTES = "version.attributes";
     static final String REMOTE_ORIGIN = "origin";
     static final String MASTER_BRANCH = "master";
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.Profiles;
+import io.fabric8.api.Version;
+import org.eclipse.jgit.api.Git;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class GitDataStoreImplVersionLoadingTest extends GitDataStoreImplTestSupport {
+
+    @Test
+    public void testLoadVersionFromBranchNotCheckedOut() throws Exception {
+        GitDataStoreImpl gitDataStore = createGitDataStore();
+        File profileDir = new File(projetDirectory(), "../fabric8-karaf/src/main/resources/distro/fabric/import");
+        gitDataStore.importFromFileSystem(profileDir.getCanonicalPath());
+        gitDataStore.createVersion("1.0", "1.1", new HashMap<String, String>());
+
+        gitDataStore.createProfile(ProfileBuilder.Factory.create("1.1", "a-b")
+                .addFileConfiguration("x.properties", "x=1\n".getBytes("UTF-8"))
+                .addFileConfiguration("sub/z.txt", "z\n".getBytes("UTF-8"))
+                .getProfile());
+        gitDataStore.createProfile(ProfileBuilder.Factory.create("1.1", "c")
+                .addFileConfiguration("y.properties", "y=2\n".getBytes("UTF-8"))
+                .getProfile());
+
+        // the profiles above are committed on 1.1, leave the working tree on master
+        Git git = gitDataStore.getGit();
+        git.checkout().setName(GitHelpers.MASTER_BRANCH).setForce(true).call();
+
+        Version version = gitDataStore.getRequiredVersion("1.1");
+        assertEquals(GitHelpers.MASTER_BRANCH, git.getRepository().getBranch());
+
+        Map<String, Map<String, byte[]>> expected = readWorkingTree(git, "1.1");
+        Map<String, Map<String, byte[]>> actual = new TreeMap<String, Map<String, byte[]>>();
+        for (Profile profile : version.getProfiles()) {
+            actual.put(profile.getId(), profile.getFileConfigurations());
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Map<String, byte[]>> entry : expected.entrySet()) {
+            Map<String, byte[]> configurations = actual.get(entry.getKey());
+            assertEquals(entry.getKey(), entry.getValue().keySet(), configurations.keySet());
+            for (Map.Entry<String, byte[]> file : entry.getValue().entrySet()) {
+                assertTrue(entry.getKey() + "/" + file.getKey(), Arrays.equals(file.getValue(), configurations.get(file.getKey())));
+            }
+        }
+
+        Profile nested = version.getRequiredProfile("a-b");
+        assertArrayEquals("z\n".getBytes("UTF-8"), nested.getFileConfigurations().get("sub/z.txt"));
+        assertArrayEquals("x=1\n".getBytes("UTF-8"), nested.getFileConfigurations().get("x.properties"));
+        assertNotNull(version.getProfile("c"));
+    }
+
+    /**
+     * Reads the profiles the way they used to be loaded, by checking out master and then the version branch
+     */
+    private Map<String, Map<String, byte[]>> readWorkingTree(Git git, String versionId) throws Exception {
+        Map<String, Map<String, byte[]>> profiles = new TreeMap<String, Map<String, byte[]>>();
+        for (String branch : Arrays.asList(GitHelpers.MASTER_BRANCH, versionId)) {
+            git.checkout().setName(branch).setForce(true).call();
+            File profilesDir = GitHelpers.getProfilesDirectory(git);
+            if (profilesDir.isDirectory()) {
+                readProfiles(git, profiles, profilesDir, "");
+            }
+        }
+        git.checkout().setName(GitHelpers.MASTER_BRANCH).setForce(true).call();
+        return profiles;
+    }
+
+    private void readProfiles(Git git, Map<String, Map<String, byte[]>> profiles, File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.isDirectory()) {
+                continue;
+            }
+            String name = file.getName();
+            if (name.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                String profileId = prefix + name.substring(0, name.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
+                Map<String, byte[]> configurations = new HashMap<String, byte[]>();
+                File profileDir = GitHelpers.getProfileDirectory(git, profileId);
+                readFiles(configurations, profileDir, "");
+                profiles.put(profileId, configurations);
+            } else {
+                readProfiles(git, profiles, file, prefix + name + "-");
+            }
+        }
+    }
+
+    private void readFiles(Map<String, byte[]> configurations, File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                readFiles(configurations, file, prefix + file.getName() + "/");
+            } else {
+                configurations.put(prefix + file.getName(), Files.readAllBytes(file.toPath()));
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmarks;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import org.fusesource.hawtbuf.UTF8Buffer;
+import org.fusesource.mqtt.codec.CONNECT;
+import org.fusesource.mqtt.codec.MQTTFrame;
+import org.vertx.java.core.buffer.Buffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.nio.ByteBuffer;
+
+/**
+ * The first bytes each kind of client sends when it connects, encoded the way the real clients encode them
+ * so the benchmarks see the same header lengths and property maps as the gateway does in production.
+ */
+public final class Handshakes {
+
+    public static final String MQTT = "mqtt";
+    public static final String AMQP = "amqp";
+    public static final String STOMP = "stomp";
+    public static final String OPENWIRE = "openwire";
+    public static final String SSL = "ssl";
+
+    private Handshakes() {
+    }
+
+    public static byte[] create(String protocol) throws Exception {
+        if (MQTT.equals(protocol)) {
+            return mqtt();
+        } else if (AMQP.equals(protocol)) {
+            return amqp();
+        } else if (STOMP.equals(protocol)) {
+            return stomp();
+        } else if (OPENWIRE.equals(protocol)) {
+            return openwire();
+        } else if (SSL.equals(protocol)) {
+            return ssl();
+        } else {
+            throw new IllegalArgumentException("Unknown protocol: " + protocol);
+        }
+    }
+
+    /**
+     * An MQTT 3.1.1 CONNECT as sent by the fusesource mqtt-client with the virtual host in the user name
+     */
+    public static byte[] mqtt() {
+        MQTTFrame frame = new CONNECT()
+                .version(4)
+                .clientId(new UTF8Buffer("gateway-benchmark-client"))
+                .userName(new UTF8Buffer("broker1/admin"))
+                .password(new UTF8Buffer("password"))
+                .keepAlive((short) 30)
+                .cleanSession(true)
+                .encode();
+        Buffer answer = new Buffer();
+        answer.appendByte(frame.header());
+        int remaining = 0;
+        for (org.fusesource.hawtbuf.Buffer buffer : frame.buffers) {
+            remaining += buffer.length;
+        }
+        do {
+            byte digit = (byte) (remaining & 0x7F);
+            remaining >>>= 7;
+            if (remaining > 0) {
+                digit |= 0x80;
+            }
+            answer.appendByte(digit);
+        } while (remaining > 0);
+        for (org.fusesource.hawtbuf.Buffer buffer : frame.buffers) {
+            answer.appendBytes(buffer.toByteArray());
+        }
+        return answer.getBytes();
+    }
+
+    /**
+     * The AMQP 1.0 SASL protocol header as sent by the qpid JMS client
+     */
+    public static byte[] amqp() {
+        return new byte[]{'A', 'M', 'Q', 'P', 3, 1, 0, 0};
+    }
+
+    /**
+     * A STOMP 1.2 CONNECT frame as sent by stompjms
+     */
+    public static byte[] stomp() {
+        String frame = "CONNECT\n" +
+                "accept-version:1.0,1.1,1.2\n" +
+                "host:broker1\n" +
+                "login:admin\n" +
+                "passcode:password\n" +
+                "heart-beat:0,10000\n" +
+                "\n" +
+                "\u0000";
+        return new Buffer(frame, "UTF-8").getBytes();
+    }
+
+    /**
+     * The loosely encoded WireFormatInfo with the properties an ActiveMQ 5.10 client sends
+     */
+    public static byte[] openwire() throws Exception {
+        WireFormatInfo info = new WireFormatInfo();
+        info.setVersion(10);
+        info.setStackTraceEnabled(true);
+        info.setCacheEnabled(true);
+        info.setCacheSize(1024);
+        info.setTcpNoDelayEnabled(true);
+        info.setSizePrefixDisabled(false);
+        info.setTightEncodingEnabled(true);
+        info.setMaxInactivityDuration(30000);
+        info.setMaxInactivityDurationInitalDelay(10000);
+        info.setMaxFrameSize(OpenWireFormat.DEFAULT_MAX_FRAME_SIZE);
+        info.setProperty("ProviderName", "ActiveMQ");
+        info.setProperty("ProviderVersion", "5.10.0");
+        info.setProperty("PlatformDetails", "JVM: 1.7.0_75, 24.75-b04, Oracle Corporation, OS: Linux, 3.10.0, amd64");
+        info.setHost("broker1");
+        return new OpenWireFormat(1).marshal(info).toByteArray();
+    }
+
+    /**
+     * A TLS ClientHello as sent by the JDK
+     */
+    public static byte[] ssl() throws Exception {
+        SSLEngine engine = SSLContext.getDefault().createSSLEngine("broker1", 61617);
+        engine.setUseClientMode(true);
+        ByteBuffer packet = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        engine.wrap(ByteBuffer.allocate(0), packet);
+        packet.flip();
+        byte[] answer = new byte[packet.remaining()];
+        packet.get(answer);
+        return answer;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmarks;
+
+import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks choosing a service with each load balancer from one thread and from many threads
+ * sharing the same load balancer, as the gateway's event loops do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LoadBalancerBenchmark {
+
+    private static final int CLIENT_COUNT = 1000;
+
+    @Param({LoadBalancers.RANDOM_LOAD_BALANCER, LoadBalancers.ROUND_ROBIN_LOAD_BALANCER,
+            LoadBalancers.STICKY_LOAD_BALANCER, LoadBalancers.LEAST_OUTSTANDING_LOAD_BALANCER,
+            LoadBalancers.POWER_OF_TWO_CHOICES_LOAD_BALANCER, LoadBalancers.EWMA_LOAD_BALANCER})
+    public String loadBalancerType;
+
+    @Param({"3", "30"})
+    public int serviceCount;
+
+    private LoadBalancer loadBalancer;
+    private LoadAwareLoadBalancer loadAwareLoadBalancer;
+    private List<String> services;
+
+    @Setup
+    public void setUp() {
+        loadBalancer = LoadBalancers.createLoadBalancer(loadBalancerType, LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            loadAwareLoadBalancer = (LoadAwareLoadBalancer) loadBalancer;
+        }
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < serviceCount; i++) {
+            list.add("http://service" + i + ".example.com:8181/");
+        }
+        services = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * The clients calling through the gateway from one thread, cycling through a fixed set of client keys
+     * so the sticky load balancer sees both cache hits and its first requests
+     */
+    @State(Scope.Thread)
+    public static class Clients {
+        private final ClientRequestFacade[] clients = new ClientRequestFacade[CLIENT_COUNT];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < clients.length; i++) {
+                final String key = "10.0." + (i / 256) + "." + (i % 256);
+                clients[i] = new ClientRequestFacade() {
+                    @Override
+                    public String getClientRequestKey() {
+                        return key;
+                    }
+                };
+            }
+        }
+
+        ClientRequestFacade next() {
+            if (++next == clients.length) {
+                next = 0;
+            }
+            return clients[next];
+        }
+    }
+
+    @Benchmark
+    public String choose(Clients clients) {
+        return loadBalancer.choose(services, clients.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String chooseContended(Clients clients) {
+        return loadBalancer.choose(services, clients.next());
+    }
+
+    /**
+     * Chooses a service and reports the request to it as the gateway does, which for the load aware
+     * load balancers also updates their shared per service statistics
+     */
+    @Benchmark
+    @Threads(8)
+    public String chooseAndCompleteContended(Clients clients) {
+        String service = loadBalancer.choose(services, clients.next());
+        if (loadAwareLoadBalancer != null) {
+            loadAwareLoadBalancer.requestStarted(service);
+            loadAwareLoadBalancer.recordResponseTime(service, 1000000L);
+            loadAwareLoadBalancer.requestCompleted(service);
+        }
+        return service;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmarks;
+
+import io.fabric8.gateway.SocketWrapper;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A socket which discards everything written to it so protocols can be benchmarked without any network IO.
+ */
+class NullSocketWrapper extends SocketWrapper {
+
+    private static final InetSocketAddress LOCAL_ADDRESS = new InetSocketAddress("127.0.0.1", 61616);
+    private static final InetSocketAddress REMOTE_ADDRESS = new InetSocketAddress("127.0.0.1", 50000);
+
+    private final NullStream stream = new NullStream();
+    private boolean closed;
+
+    @Override
+    public ReadStream readStream() {
+        return stream;
+    }
+
+    @Override
+    public WriteStream writeStream() {
+        return stream;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public Object stream() {
+        return stream;
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return LOCAL_ADDRESS;
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return REMOTE_ADDRESS;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    static class NullStream implements ReadStream<NullStream>, WriteStream<NullStream> {
+        @Override
+        public NullStream endHandler(Handler<Void> endHandler) {
+            return this;
+        }
+
+        @Override
+        public NullStream dataHandler(Handler<Buffer> handler) {
+            return this;
+        }
+
+        @Override
+        public NullStream pause() {
+            return this;
+        }
+
+        @Override
+        public NullStream resume() {
+            return this;
+        }
+
+        @Override
+        public NullStream exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public NullStream write(Buffer data) {
+            return this;
+        }
+
+        @Override
+        public NullStream setWriteQueueMaxSize(int maxSize) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return false;
+        }
+
+        @Override
+        public NullStream drainHandler(Handler<Void> handler) {
+            return this;
+        }
+    }
+}
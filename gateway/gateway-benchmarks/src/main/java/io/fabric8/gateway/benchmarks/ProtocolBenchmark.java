@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmarks;
+
+import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks how long each protocol takes to recognise its own handshake and to snoop the
+ * connection parameters used to route the connection out of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    @Param({Handshakes.MQTT, Handshakes.AMQP, Handshakes.STOMP, Handshakes.OPENWIRE, Handshakes.SSL})
+    public String protocolName;
+
+    private Protocol protocol;
+    private Buffer handshake;
+    private NullSocketWrapper socket;
+    private ConnectionParameters snooped;
+
+    private final Handler<ConnectionParameters> handler = new Handler<ConnectionParameters>() {
+        @Override
+        public void handle(ConnectionParameters parameters) {
+            snooped = parameters;
+        }
+    };
+
+    @Setup
+    public void setUp() throws Exception {
+        protocol = createProtocol(protocolName);
+        handshake = new Buffer(Handshakes.create(protocolName));
+        socket = new NullSocketWrapper();
+        if (!protocol.matches(handshake)) {
+            throw new IllegalStateException(protocolName + " does not match its own handshake");
+        }
+    }
+
+    static Protocol createProtocol(String name) {
+        if (Handshakes.MQTT.equals(name)) {
+            return new MqttProtocol();
+        } else if (Handshakes.AMQP.equals(name)) {
+            return new AmqpProtocol();
+        } else if (Handshakes.STOMP.equals(name)) {
+            return new StompProtocol();
+        } else if (Handshakes.OPENWIRE.equals(name)) {
+            return new OpenwireProtocol();
+        } else if (Handshakes.SSL.equals(name)) {
+            return new SslProtocol();
+        } else {
+            throw new IllegalArgumentException("Unknown protocol: " + name);
+        }
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return protocol.matches(handshake);
+    }
+
+    @Benchmark
+    public boolean couldMatch() {
+        return protocol.couldMatch(handshake);
+    }
+
+    @Benchmark
+    public ConnectionParameters snoopConnectionParameters() {
+        // the decoders consume and may rewrite the received buffer so each connection gets its own copy
+        snooped = null;
+        protocol.snoopConnectionParameters(socket, handshake.copy(), handler);
+        if (snooped == null) {
+            throw new IllegalStateException(protocolName + " did not snoop its connection parameters");
+        }
+        return snooped;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files, such as the results of the previous and the current release,
+ * printing the change in score of every benchmark and exiting with status 1 if any benchmark has
+ * regressed by more than the threshold.
+ * <p>
+ * Usage: <code>ResultComparison baseline.json current.json [thresholdPercent]</code>
+ */
+public class ResultComparison {
+
+    public static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    private final double thresholdPercent;
+    private final List<String> regressions = new ArrayList<String>();
+
+    public ResultComparison(double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ResultComparison baseline.json current.json [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        ResultComparison comparison = new ResultComparison(threshold);
+        comparison.compare(load(new File(args[0])), load(new File(args[1])), System.out);
+        if (!comparison.getRegressions().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads the results indexed by benchmark name and parameters
+     */
+    public static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> answer = new LinkedHashMap<String, JsonNode>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            answer.put(key(result), result);
+        }
+        return answer;
+    }
+
+    static String key(JsonNode result) {
+        StringBuilder builder = new StringBuilder(result.path("benchmark").asText());
+        JsonNode params = result.path("params");
+        if (params.size() > 0) {
+            builder.append(" {");
+            Iterator<Map.Entry<String, JsonNode>> iter = params.fields();
+            while (iter.hasNext()) {
+                Map.Entry<String, JsonNode> param = iter.next();
+                builder.append(param.getKey()).append('=').append(param.getValue().asText());
+                if (iter.hasNext()) {
+                    builder.append(", ");
+                }
+            }
+            builder.append('}');
+        }
+        return builder.toString();
+    }
+
+    public void compare(Map<String, JsonNode> baseline, Map<String, JsonNode> current, PrintStream out) {
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            String key = entry.getKey();
+            JsonNode result = entry.getValue();
+            JsonNode metric = result.path("primaryMetric");
+            String unit = metric.path("scoreUnit").asText();
+            double score = metric.path("score").asDouble();
+            JsonNode previous = baseline.get(key);
+            if (previous == null) {
+                out.println(String.format("%-100s %14.3f %-8s (new)", key, score, unit));
+                continue;
+            }
+            double previousScore = previous.path("primaryMetric").path("score").asDouble();
+            double change = previousScore != 0 ? (score - previousScore) * 100.0 / previousScore : 0.0;
+            // throughput is better when higher, times are better when lower
+            boolean higherIsBetter = "thrpt".equals(result.path("mode").asText());
+            double regression = higherIsBetter ? -change : change;
+            String status = "";
+            if (regression > thresholdPercent) {
+                status = "REGRESSION";
+                regressions.add(key);
+            } else if (-regression > thresholdPercent) {
+                status = "improved";
+            }
+            out.println(String.format("%-100s %14.3f %-8s %+7.1f%% %s", key, score, unit, change, status));
+        }
+        out.println(regressions.size() + " regression(s) of more than " + thresholdPercent + "%");
+    }
+
+    public List<String> getRegressions() {
+        return regressions;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.benchmarks.Handshakes;
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks detecting the protocol of a new connection against all the protocols in the order the
+ * fabric detecting gateway configures them.
+ * <p>
+ * Lives in the gateway package so it can drive the package private {@link ProtocolDetector} the
+ * gateway itself uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProtocolDetectorBenchmark {
+
+    @Param({Handshakes.MQTT, Handshakes.AMQP, Handshakes.STOMP, Handshakes.OPENWIRE, Handshakes.SSL})
+    public String protocolName;
+
+    private Protocol[] protocols;
+    private int maxIdentificationLength;
+    private Buffer handshake;
+
+    @Setup
+    public void setUp() throws Exception {
+        protocols = new Protocol[]{new StompProtocol(), new MqttProtocol(), new AmqpProtocol(),
+                new OpenwireProtocol(), new HttpProtocol(), new SslProtocol()};
+        for (Protocol protocol : protocols) {
+            maxIdentificationLength = Math.max(maxIdentificationLength, protocol.getMaxIdentificationLength());
+        }
+        handshake = new Buffer(Handshakes.create(protocolName));
+    }
+
+    /**
+     * The whole handshake arrives in the first read
+     */
+    @Benchmark
+    public Protocol detect() {
+        // the detector keeps the first buffer it is given so each connection needs its own
+        return detected(new ProtocolDetector(protocols, maxIdentificationLength).detect(handshake.copy()));
+    }
+
+    /**
+     * The handshake arrives a couple of bytes at a time, as it can from slow or fragmenting clients
+     */
+    @Benchmark
+    public Protocol detectFragmented() {
+        ProtocolDetector detector = new ProtocolDetector(protocols, maxIdentificationLength);
+        int length = handshake.length();
+        for (int start = 0; start < length; start += 2) {
+            Protocol protocol = detector.detect(handshake.getBuffer(start, Math.min(start + 2, length)));
+            if (protocol != null) {
+                return protocol;
+            }
+        }
+        return detected(null);
+    }
+
+    private Protocol detected(Protocol protocol) {
+        if (protocol == null || !protocol.getProtocolName().equals(protocolName)) {
+            throw new IllegalStateException("Detected " + protocol + " rather than " + protocolName);
+        }
+        return protocol;
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent log-linear latency histogram in the style of HdrHistogram.
+ * <p>
+ * Call times are recorded in microseconds into buckets where each power of two range is split into
+ * {@link #SUB_BUCKET_COUNT} linear sub buckets, so percentiles are accurate to within about 3% while
+ * recording is a couple of atomic increments with no allocation.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // values above 2^36 micros (about 19 hours) are recorded in the last bucket
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private volatile long startTime = System.currentTimeMillis();
+
+    /**
+     * Records a single call
+     *
+     * @param callTimeNanos the time the call took
+     * @param error         whether the call failed
+     */
+    public void record(long callTimeNanos, boolean error) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(callTimeNanos);
+        if (micros < 0) {
+            micros = 0;
+        } else if (micros > MAX_VALUE) {
+            micros = MAX_VALUE;
+        }
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+        if (error) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a point in time copy of the statistics recorded since the last {@link #reset()}
+     */
+    public Snapshot snapshot() {
+        long[] values = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            values[i] = buckets.get(i);
+        }
+        return new Snapshot(values, count.get(), errors.get(), totalMicros.get(), maxMicros.get(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        errors.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+        startTime = System.currentTimeMillis();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - (shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram} with all times in microseconds
+     */
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long errors;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long intervalMillis;
+
+        Snapshot(long[] buckets, long count, long errors, long totalMicros, long maxMicros, long intervalMillis) {
+            this.buckets = buckets;
+            this.count = count;
+            this.errors = errors;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.intervalMillis = intervalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "count=" + count +
+                    ", errors=" + errors +
+                    ", p50=" + getP50() +
+                    ", p99=" + getP99() +
+                    ", max=" + maxMicros +
+                    '}';
+        }
+
+        /**
+         * Returns the call time in microseconds which the given percentage of calls took no longer than
+         */
+        public long getPercentile(double percentile) {
+            if (count <= 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            if (target < 1) {
+                target = 1;
+            }
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                total += buckets[i];
+                if (total >= target) {
+                    return Math.min(bucketUpperBound(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the ratio of failed calls to all calls
+         */
+        public double getErrorRate() {
+            return count > 0 ? (double) errors / count : 0.0;
+        }
+
+        /**
+         * Returns the number of calls per second over the interval of this snapshot
+         */
+        public double getCallRate() {
+            return intervalMillis > 0 ? count * 1000.0 / intervalMillis : 0.0;
+        }
+
+        public long getMeanMicros() {
+            return count > 0 ? totalMicros / count : 0;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getP50() {
+            return getPercentile(50);
+        }
+
+        public long getP90() {
+            return getPercentile(90);
+        }
+
+        public long getP99() {
+            return getPercentile(99);
+        }
+
+        public long getP999() {
+            return getPercentile(99.9);
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+    }
+}
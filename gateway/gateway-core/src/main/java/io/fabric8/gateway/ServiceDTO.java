@@ -53,6 +53,30 @@ public class ServiceDTO implements ServiceDetails {
                 '}';
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ServiceDTO that = (ServiceDTO) o;
+
+        if (id != null ? !id.equals(that.id) : that.id != null) return false;
+        if (container != null ? !container.equals(that.container) : that.container != null) return false;
+        if (version != null ? !version.equals(that.version) : that.version != null) return false;
+        if (services != null ? !services.equals(that.services) : that.services != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (container != null ? container.hashCode() : 0);
+        result = 31 * result + (version != null ? version.hashCode() : 0);
+        result = 31 * result + (services != null ? services.hashCode() : 0);
+        return result;
+    }
+
     public String getId() {
         return id;
     }
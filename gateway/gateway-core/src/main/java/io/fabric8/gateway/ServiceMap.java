@@ -16,57 +16,125 @@
 package io.fabric8.gateway;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Maintains a mapping of services which is then use by the proxy to update in process
  * proxy handlers, or used to create new proxy handers
+ * <p>
+ * Each path maps to an immutable snapshot of its services which is replaced as a whole whenever the
+ * services change, so routing a connection just reads the current snapshot without locking or copying.
+ * Updates are rare and serialized.
  */
 public class ServiceMap {
-    private ConcurrentHashMap<String, Map<String, ServiceDetails>> map = new ConcurrentHashMap<String, Map<String, ServiceDetails>>();
+    private final ConcurrentHashMap<String, Snapshot> map = new ConcurrentHashMap<String, Snapshot>();
+    private final List<ServiceMapListener> listeners = new CopyOnWriteArrayList<ServiceMapListener>();
+    private volatile List<String> paths = Collections.emptyList();
+    private volatile long version;
 
     /**
-     * Returns a list of all the current services for the given path
+     * Returns an immutable list of all the current services for the given path
      */
     public List<ServiceDetails> getServices(String path) {
-        Map<String, ServiceDetails> pathMap = getPathMap(path);
-        return new ArrayList<ServiceDetails>(pathMap.values());
+        Snapshot snapshot = map.get(path);
+        return snapshot != null ? snapshot.services : Collections.<ServiceDetails>emptyList();
     }
 
     /**
-     * Returns a list of all the current paths for the services
+     * Returns an immutable list of all the current paths for the services
      */
     public List<String> getPaths() {
-        return new ArrayList<String>(map.keySet());
+        return paths;
+    }
+
+    /**
+     * Returns the version of the map which is incremented every time a service changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the version of the map when the services of the given path last changed or 0 if it has none
+     */
+    public long getVersion(String path) {
+        Snapshot snapshot = map.get(path);
+        return snapshot != null ? snapshot.version : 0;
     }
 
     /**
      * When a service is added or updated
      */
-    public void serviceUpdated(String path, ServiceDetails service) {
+    public synchronized void serviceUpdated(String path, ServiceDetails service) {
         // ignore services with empty services
         if (!service.getServices().isEmpty()) {
-            getPathMap(path).put(service.getId(), service);
+            Snapshot snapshot = map.get(path);
+            if (snapshot != null && service.equals(snapshot.servicesById.get(service.getId()))) {
+                return;
+            }
+            Map<String, ServiceDetails> servicesById = snapshot != null
+                    ? new LinkedHashMap<String, ServiceDetails>(snapshot.servicesById)
+                    : new LinkedHashMap<String, ServiceDetails>();
+            servicesById.put(service.getId(), service);
+            update(path, servicesById);
         }
     }
 
     /**
-     * When a service is added or updated
+     * When a service is removed
      */
-    public void serviceRemoved(String path, ServiceDetails service) {
-        getPathMap(path).remove(service.getId());
+    public synchronized void serviceRemoved(String path, ServiceDetails service) {
+        Snapshot snapshot = map.get(path);
+        if (snapshot != null && snapshot.servicesById.containsKey(service.getId())) {
+            Map<String, ServiceDetails> servicesById = new LinkedHashMap<String, ServiceDetails>(snapshot.servicesById);
+            servicesById.remove(service.getId());
+            update(path, servicesById);
+        }
+    }
+
+    public void addListener(ServiceMapListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ServiceMapListener listener) {
+        listeners.remove(listener);
+    }
 
-        // lets update any in progress proxy handlers using this service
+    private void update(String path, Map<String, ServiceDetails> servicesById) {
+        long newVersion = version + 1;
+        List<ServiceDetails> services;
+        if (servicesById.isEmpty()) {
+            map.remove(path);
+            services = Collections.emptyList();
+        } else {
+            Snapshot snapshot = new Snapshot(servicesById, newVersion);
+            map.put(path, snapshot);
+            services = snapshot.services;
+        }
+        paths = Collections.unmodifiableList(new ArrayList<String>(map.keySet()));
+        version = newVersion;
+        for (ServiceMapListener listener : listeners) {
+            listener.servicesChanged(this, path, services);
+        }
     }
 
-    protected Map<String, ServiceDetails> getPathMap(String path) {
-        Map<String, ServiceDetails> initial = new ConcurrentHashMap<String, ServiceDetails>();
-        Map<String, ServiceDetails> answer = map.putIfAbsent(path, initial);
-        if (answer == null) {
-            answer = initial;
+    /**
+     * The immutable services of a path
+     */
+    private static final class Snapshot {
+        private final Map<String, ServiceDetails> servicesById;
+        private final List<ServiceDetails> services;
+        private final long version;
+
+        Snapshot(Map<String, ServiceDetails> servicesById, long version) {
+            this.servicesById = Collections.unmodifiableMap(servicesById);
+            this.services = Collections.unmodifiableList(new ArrayList<ServiceDetails>(servicesById.values()));
+            this.version = version;
         }
-        return answer;
     }
 }
@@ -0,0 +1,34 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import java.util.List;
+
+/**
+ * Notified whenever the services of a path in a {@link ServiceMap} change so that state derived from
+ * them, such as a load balancer's cached bindings, can be invalidated.
+ */
+public interface ServiceMapListener {
+
+    /**
+     * Invoked from the thread which updated the map, in the order of the updates, so implementations
+     * should not block.
+     *
+     * @param path     the path whose services changed
+     * @param services the new services of the path; empty if it no longer has any
+     */
+    void servicesChanged(ServiceMap serviceMap, String path, List<ServiceDetails> services);
+}
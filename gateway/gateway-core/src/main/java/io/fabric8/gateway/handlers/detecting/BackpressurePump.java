@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+/**
+ * Pumps data from a read stream to a write stream, pausing the read stream whenever the write queue
+ * goes above its high watermark and resuming it once the write queue has drained below its low watermark.
+ * <p>
+ * The high watermark is the write queue max size; Vert.x signals the drain once the queue has fallen to half
+ * of that which is the low watermark. Buffers are passed through as they were read so nothing is copied.
+ * <p>
+ * The pump is only used from the event loop of the connection, the counters are volatile so they can be
+ * read from JMX.
+ */
+class BackpressurePump {
+
+    private final ReadStream<?> readStream;
+    private final WriteStream<?> writeStream;
+    private volatile long bytesPumped;
+    private volatile long pauses;
+    private volatile boolean paused;
+
+    private final Handler<Buffer> dataHandler = new Handler<Buffer>() {
+        @Override
+        public void handle(Buffer data) {
+            write(data);
+        }
+    };
+
+    private final Handler<Void> drainHandler = new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+            if (paused) {
+                paused = false;
+                readStream.resume();
+            }
+        }
+    };
+
+    /**
+     * @param writeQueueMaxSize the high watermark of the write queue in bytes or 0 to use the default
+     */
+    BackpressurePump(ReadStream<?> readStream, WriteStream<?> writeStream, int writeQueueMaxSize) {
+        this.readStream = readStream;
+        this.writeStream = writeStream;
+        if (writeQueueMaxSize > 0) {
+            writeStream.setWriteQueueMaxSize(writeQueueMaxSize);
+        }
+    }
+
+    void start() {
+        readStream.dataHandler(dataHandler);
+    }
+
+    /**
+     * Writes the data to the write stream pausing the read stream if the write queue is now full
+     */
+    void write(Buffer data) {
+        writeStream.write(data);
+        bytesPumped += data.length();
+        if (!paused && writeStream.writeQueueFull()) {
+            paused = true;
+            pauses++;
+            readStream.pause();
+            writeStream.drainHandler(drainHandler);
+        }
+    }
+
+    long getBytesPumped() {
+        return bytesPumped;
+    }
+
+    /**
+     * Returns how many times the read stream has been paused because the write stream could not keep up
+     */
+    long getPauses() {
+        return pauses;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+}
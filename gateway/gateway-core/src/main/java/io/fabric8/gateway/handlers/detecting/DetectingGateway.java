@@ -19,13 +19,16 @@ import io.fabric8.common.util.ShutdownTracker;
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.ServiceMapListener;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
 import io.fabric8.gateway.handlers.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
@@ -35,7 +38,6 @@ import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetServer;
 import org.vertx.java.core.net.NetSocket;
-import org.vertx.java.core.streams.Pump;
 import org.vertx.java.core.streams.ReadStream;
 
 import javax.net.ssl.SSLContext;
@@ -55,24 +57,39 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(DetectingGateway.class);
 
+    public static final int DEFAULT_WRITE_QUEUE_MAX_SIZE = 64 * 1024;
+
     Vertx vertx;
     ServiceMap serviceMap;
     LoadBalancer serviceLoadBalancer;
     String defaultVirtualHost;
     ArrayList<Protocol> protocols;
     int maxProtocolIdentificationLength;
+    Protocol[] protocolArray = new Protocol[0];
     ClientRequestFacadeFactory clientRequestFacadeFactory = new ClientRequestFacadeFactory("PROTOCOL_SESSION_ID, PROTOCOL_CLIENT_ID, REMOTE_ADDRESS");
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
     long connectionTimeout = 5000;
+    int writeQueueMaxSize = DEFAULT_WRITE_QUEUE_MAX_SIZE;
 
     final AtomicLong receivedConnectionAttempts = new AtomicLong();
     final AtomicLong successfulConnectionAttempts = new AtomicLong();
     final AtomicLong failedConnectionAttempts = new AtomicLong();
+    // the bytes pumped and back pressure pauses of connections which have been closed
+    final AtomicLong closedBytesFromClients = new AtomicLong();
+    final AtomicLong closedBytesToClients = new AtomicLong();
+    final AtomicLong closedBackpressurePauses = new AtomicLong();
     Set<SocketWrapper> socketsConnecting = Collections.synchronizedSet(new HashSet<SocketWrapper>());
     Set<ConnectedSocketInfo> socketsConnected = Collections.synchronizedSet(new HashSet<ConnectedSocketInfo>());
     private ShutdownTracker shutdownTacker = new ShutdownTracker();
 
+    private final ServiceMapListener serviceMapListener = new ServiceMapListener() {
+        @Override
+        public void servicesChanged(ServiceMap serviceMap, String path, List<ServiceDetails> services) {
+            retainServices(serviceMap);
+        }
+    };
+
     private int port;
     private String host;
     private NetServer server;
@@ -107,6 +124,9 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     public void destroy() {
+        if (serviceMap != null) {
+            serviceMap.removeListener(serviceMapListener);
+        }
         server.close();
         for (SocketWrapper socket : new ArrayList<>(socketsConnecting)) {
             handleConnectFailure(socket, null);
@@ -137,7 +157,31 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     public void setServiceMap(ServiceMap serviceMap) {
+        if (this.serviceMap != null) {
+            this.serviceMap.removeListener(serviceMapListener);
+        }
         this.serviceMap = serviceMap;
+        if (serviceMap != null) {
+            serviceMap.addListener(serviceMapListener);
+        }
+    }
+
+    /**
+     * Discards any state the service load balancer holds for services which are no longer in the service map
+     */
+    protected void retainServices(ServiceMap serviceMap) {
+        LoadBalancer loadBalancer = serviceLoadBalancer;
+        if (loadBalancer instanceof StickyLoadBalancer || loadBalancer instanceof LoadAwareLoadBalancer) {
+            Set<ServiceDetails> services = new HashSet<ServiceDetails>();
+            for (String path : serviceMap.getPaths()) {
+                services.addAll(serviceMap.getServices(path));
+            }
+            if (loadBalancer instanceof StickyLoadBalancer) {
+                ((StickyLoadBalancer) loadBalancer).retainServices(services);
+            } else {
+                ((LoadAwareLoadBalancer) loadBalancer).retainServices(services);
+            }
+        }
     }
 
     public LoadBalancer getServiceLoadBalancer() {
@@ -162,6 +206,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     public void setProtocols(ArrayList<Protocol> protocols) {
         this.protocols = new ArrayList<Protocol>(protocols);
+        this.protocolArray = protocols.toArray(new Protocol[protocols.size()]);
         int max = 0;
         for (Protocol protocol : protocols) {
             if( protocol.getMaxIdentificationLength() > max ) {
@@ -193,12 +238,35 @@ public class DetectingGateway implements DetectingGatewayMBean {
         private final URI url;
         private final SocketWrapper from;
         private final NetClient to;
+        private final ServiceDetails service;
+        private final BackpressurePump fromClient;
+        private final BackpressurePump toClient;
+        private final long connectedTime = System.currentTimeMillis();
 
-        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetClient to) {
+        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetClient to, ServiceDetails service,
+                                   BackpressurePump fromClient, BackpressurePump toClient) {
             this.params = params;
             this.url = url;
             this.from = from;
             this.to = to;
+            this.service = service;
+            this.fromClient = fromClient;
+            this.toClient = toClient;
+        }
+
+        @Override
+        public String toString() {
+            long elapsed = Math.max(1L, System.currentTimeMillis() - connectedTime);
+            long bytesIn = fromClient.getBytesPumped();
+            long bytesOut = toClient.getBytesPumped();
+            return from.remoteAddress() + " -> " + url +
+                    " bytesFromClient=" + bytesIn +
+                    " bytesToClient=" + bytesOut +
+                    " fromClientRate=" + (bytesIn * 1000 / elapsed) + "B/s" +
+                    " toClientRate=" + (bytesOut * 1000 / elapsed) + "B/s" +
+                    " pauses=" + (fromClient.getPauses() + toClient.getPauses()) +
+                    (fromClient.isPaused() || toClient.isPaused() ? " paused" : "") +
+                    " connectedFor=" + elapsed + "ms";
         }
     }
 
@@ -239,85 +307,84 @@ public class DetectingGateway implements DetectingGatewayMBean {
             }
         });
         readStream.dataHandler(new Handler<Buffer>() {
-            Buffer received = new Buffer();
+            final ProtocolDetector detector = new ProtocolDetector(protocolArray, maxProtocolIdentificationLength);
 
             @Override
             public void handle(Buffer event) {
-                received.appendBuffer(event);
-                for (final Protocol protocol : protocols) {
-                    if (protocol.matches(received)) {
-                        if ("ssl".equals(protocol.getProtocolName())) {
-
-                            LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    handleConnectFailure(socket, "Could initialize SSL: " + e);
-                                    return;
+                final Protocol protocol = detector.detect(event);
+                final Buffer received = detector.getReceived();
+                if (protocol != null) {
+                    if ("ssl".equals(protocol.getProtocolName())) {
+
+                        LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
+                        String disabledCypherSuites=null;
+                        String enabledCipherSuites=null;
+                        if (sslConfig != null) {
+                            disabledCypherSuites = sslConfig.getDisabledCypherSuites();
+                            enabledCipherSuites = sslConfig.getEnabledCipherSuites();
+                        }
+                        if (sslContext == null) {
+                            try {
+                                if (sslConfig != null) {
+                                    sslContext = SSLContext.getInstance(sslConfig.getProtocol());
+                                    sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
+                                } else {
+                                    sslContext = SSLContext.getDefault();
                                 }
+                            } catch (Exception e) {
+                                handleConnectFailure(socket, "Could initialize SSL: " + e);
+                                return;
                             }
+                        }
 
-                            // lets wrap it up in a SslSocketWrapper.
-                            SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
-                            sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                        // lets wrap it up in a SslSocketWrapper.
+                        SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
+                        sslSocketWrapper.putBackHeader(received);
+                        sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
 
-                            // Undo initial connection accounting since we will be redoing @ the SSL level.
-                            boolean removed = socketsConnecting.remove(socket);
-                            assert removed;
-                            receivedConnectionAttempts.decrementAndGet();
+                        // Undo initial connection accounting since we will be redoing @ the SSL level.
+                        boolean removed = socketsConnecting.remove(socket);
+                        assert removed;
+                        receivedConnectionAttempts.decrementAndGet();
 
-                            DetectingGateway.this.handle(sslSocketWrapper);
-                            return;
+                        DetectingGateway.this.handle(sslSocketWrapper);
+                        return;
 
-                        } else if ("http".equals(protocol.getProtocolName())) {
-                            InetSocketAddress target = getHttpGateway();
-                            if (target != null) {
-                                try {
-                                    URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
-                                    LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
-                                            socket.remoteAddress(), url.getHost(), url.getPort()));
-                                    ConnectionParameters params = new ConnectionParameters();
-                                    params.protocol = "http";
-                                    createClient(params, socket, url, received);
-                                    return;
-                                } catch (URISyntaxException e) {
-                                    handleConnectFailure(socket, "Could not build valid connect URI: "+e);
-                                    return;
-                                }
-                            } else {
-                                handleConnectFailure(socket, "No http gateway available for the http protocol");
+                    } else if ("http".equals(protocol.getProtocolName())) {
+                        InetSocketAddress target = getHttpGateway();
+                        if (target != null) {
+                            try {
+                                URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
+                                LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
+                                        socket.remoteAddress(), url.getHost(), url.getPort()));
+                                ConnectionParameters params = new ConnectionParameters();
+                                params.protocol = "http";
+                                createClient(params, socket, url, received, null);
+                                return;
+                            } catch (URISyntaxException e) {
+                                handleConnectFailure(socket, "Could not build valid connect URI: "+e);
                                 return;
                             }
                         } else {
-                            protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
-                                @Override
-                                public void handle(ConnectionParameters connectionParameters) {
-                                    // this will install a new dataHandler on the socket.
-                                    if (connectionParameters.protocol == null)
-                                        connectionParameters.protocol = protocol.getProtocolName();
-                                    if (connectionParameters.protocolSchemes == null)
-                                        connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
-                                    route(socket, connectionParameters, received);
-                                }
-                            });
+                            handleConnectFailure(socket, "No http gateway available for the http protocol");
                             return;
                         }
+                    } else {
+                        protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
+                            @Override
+                            public void handle(ConnectionParameters connectionParameters) {
+                                // this will install a new dataHandler on the socket.
+                                if (connectionParameters.protocol == null)
+                                    connectionParameters.protocol = protocol.getProtocolName();
+                                if (connectionParameters.protocolSchemes == null)
+                                    connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
+                                route(socket, connectionParameters, received);
+                            }
+                        });
+                        return;
                     }
                 }
-                if (received.length() >= maxProtocolIdentificationLength) {
+                if (detector.isRejected()) {
                     handleConnectFailure(socket, "Connection did not use one of the enabled protocols " + getProtocolNames());
                 }
             }
@@ -376,7 +443,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
                                           ));
                                     }
 
-                                    client = createClient(params, socket, uri, received);
+                                    client = createClient(params, socket, uri, received, serviceDetails);
                                     break;
                                 }
                             } catch (URISyntaxException e) {
@@ -396,22 +463,38 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     /**
      * Creates a new client for the given URL and handler
+     *
+     * @param service the service the client is connecting to which is reported to load aware load balancers or null
      */
-    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received) {
+    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received, final ServiceDetails service) {
         final NetClient netClient = vertx.createNetClient();
+        final LoadAwareLoadBalancer loadAwareLoadBalancer = getLoadAwareLoadBalancer(service);
+        if (loadAwareLoadBalancer != null) {
+            loadAwareLoadBalancer.requestStarted(service);
+        }
+        final long connectStart = System.nanoTime();
         return netClient.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
 
                 if( !asyncSocket.succeeded() ) {
+                    if (loadAwareLoadBalancer != null) {
+                        loadAwareLoadBalancer.requestCompleted(service);
+                    }
                     handleConnectFailure(socketFromClient, String.format("Could not connect to '%s'", url));
                 } else {
                     final NetSocket socketToServer = asyncSocket.result();
+                    if (loadAwareLoadBalancer != null) {
+                        // the connection stays outstanding until it is closed but the connect time is a good proxy for the service's latency
+                        loadAwareLoadBalancer.recordResponseTime(service, System.nanoTime() - connectStart);
+                    }
 
                     successfulConnectionAttempts.incrementAndGet();
                     boolean removed = socketsConnecting.remove(socketFromClient);
                     assert removed;
 
-                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, netClient);
+                    BackpressurePump fromClient = new BackpressurePump(socketFromClient.readStream(), socketToServer, writeQueueMaxSize);
+                    BackpressurePump toClient = new BackpressurePump(socketToServer, socketFromClient.writeStream(), writeQueueMaxSize);
+                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, netClient, service, fromClient, toClient);
                     boolean added = socketsConnected.add(connectedInfo);
                     assert added;
 
@@ -432,9 +515,9 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     socketToServer.endHandler(endHandler);
                     socketToServer.exceptionHandler(exceptionHandler);
 
-                    socketToServer.write(received);
-                    Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
-                    Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                    fromClient.write(received);
+                    toClient.start();
+                    fromClient.start();
                 }
             }
         });
@@ -445,9 +528,23 @@ public class DetectingGateway implements DetectingGatewayMBean {
             connectedInfo.from.close();
             connectedInfo.to.close();
             shutdownTacker.release();
+            closedBytesFromClients.addAndGet(connectedInfo.fromClient.getBytesPumped());
+            closedBytesToClients.addAndGet(connectedInfo.toClient.getBytesPumped());
+            closedBackpressurePauses.addAndGet(connectedInfo.fromClient.getPauses() + connectedInfo.toClient.getPauses());
+            LoadAwareLoadBalancer loadAwareLoadBalancer = getLoadAwareLoadBalancer(connectedInfo.service);
+            if (loadAwareLoadBalancer != null) {
+                loadAwareLoadBalancer.requestCompleted(connectedInfo.service);
+            }
         }
     }
 
+    private LoadAwareLoadBalancer getLoadAwareLoadBalancer(ServiceDetails service) {
+        if (service != null && serviceLoadBalancer instanceof LoadAwareLoadBalancer) {
+            return (LoadAwareLoadBalancer) serviceLoadBalancer;
+        }
+        return null;
+    }
+
     public ServiceMap getServiceMap() {
         return serviceMap;
     }
@@ -494,6 +591,58 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc.toArray(new String[rc.size()]);
     }
 
+    public String[] getConnectedClientStatistics() {
+        ArrayList<String> rc = new ArrayList<>();
+        synchronized (socketsConnected) {
+            for (ConnectedSocketInfo info : socketsConnected) {
+                rc.add(info.toString());
+            }
+        }
+        return rc.toArray(new String[rc.size()]);
+    }
+
+    public long getBytesFromClients() {
+        long answer = closedBytesFromClients.get();
+        synchronized (socketsConnected) {
+            for (ConnectedSocketInfo info : socketsConnected) {
+                answer += info.fromClient.getBytesPumped();
+            }
+        }
+        return answer;
+    }
+
+    public long getBytesToClients() {
+        long answer = closedBytesToClients.get();
+        synchronized (socketsConnected) {
+            for (ConnectedSocketInfo info : socketsConnected) {
+                answer += info.toClient.getBytesPumped();
+            }
+        }
+        return answer;
+    }
+
+    public long getBackpressurePauses() {
+        long answer = closedBackpressurePauses.get();
+        synchronized (socketsConnected) {
+            for (ConnectedSocketInfo info : socketsConnected) {
+                answer += info.fromClient.getPauses() + info.toClient.getPauses();
+            }
+        }
+        return answer;
+    }
+
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    /**
+     * Sets the high watermark in bytes of the write queue of each side of a connection above which
+     * the other side stops being read; this only applies to new connections
+     */
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -32,6 +32,12 @@ public interface DetectingGatewayMBean {
     public long getFailedConnectionAttempts();
     public String[] getConnectingClients();
     public String[] getConnectedClients();
+    public String[] getConnectedClientStatistics();
+    public long getBytesFromClients();
+    public long getBytesToClients();
+    public long getBackpressurePauses();
+    public int getWriteQueueMaxSize();
+    public void setWriteQueueMaxSize(int writeQueueMaxSize);
     public long getConnectionTimeout();
     public void setConnectionTimeout(long connectionTimeout);
 
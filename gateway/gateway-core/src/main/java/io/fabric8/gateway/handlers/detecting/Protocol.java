@@ -29,6 +29,12 @@ public interface Protocol {
     public String getProtocolName();
     public int getMaxIdentificationLength();
     public boolean matches(Buffer buffer);
+
+    /**
+     * Returns false if the given header can never match this protocol however many more bytes are received,
+     * so the protocol can be ruled out before {@link #getMaxIdentificationLength()} bytes have been read.
+     */
+    public boolean couldMatch(Buffer buffer);
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, Handler<ConnectionParameters> handler);
 
 }
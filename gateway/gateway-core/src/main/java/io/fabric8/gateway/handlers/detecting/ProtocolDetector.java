@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+/**
+ * Detects the protocol of a single connection as its data arrives.
+ * <p>
+ * Protocols are ruled out as soon as the received header can no longer match them so each later chunk is
+ * only checked against the remaining candidates. The first chunk is kept rather than copied so when the
+ * whole header arrives at once the received bytes are passed on to the back end as they were read.
+ */
+class ProtocolDetector {
+
+    private final Protocol[] candidates;
+    private final int maxIdentificationLength;
+    private int candidateCount;
+    private Buffer received;
+
+    ProtocolDetector(Protocol[] protocols, int maxIdentificationLength) {
+        this.candidates = protocols.clone();
+        this.candidateCount = protocols.length;
+        this.maxIdentificationLength = maxIdentificationLength;
+    }
+
+    /**
+     * Adds the next chunk of data received from the client and returns the matching protocol, or null if
+     * more data is needed or if no protocol can match; which can be checked with {@link #isRejected()}.
+     */
+    Protocol detect(Buffer data) {
+        if (received == null) {
+            received = data;
+        } else {
+            received.appendBuffer(data);
+        }
+        int length = received.length();
+        int remaining = 0;
+        // keep the candidates in their configured order so the first matching protocol wins
+        for (int i = 0; i < candidateCount; i++) {
+            Protocol protocol = candidates[i];
+            if (protocol.matches(received)) {
+                return protocol;
+            }
+            if (length < protocol.getMaxIdentificationLength() && protocol.couldMatch(received)) {
+                candidates[remaining++] = protocol;
+            }
+        }
+        for (int i = remaining; i < candidateCount; i++) {
+            candidates[i] = null;
+        }
+        candidateCount = remaining;
+        return null;
+    }
+
+    /**
+     * Returns true if the data received so far does not match any of the protocols
+     */
+    boolean isRejected() {
+        return candidateCount == 0 || (received != null && received.length() >= maxIdentificationLength);
+    }
+
+    /**
+     * Returns all the data received so far
+     */
+    Buffer getReceived() {
+        return received;
+    }
+}
@@ -80,6 +80,20 @@ public class BufferSupport {
         return indexOf(self, start, start+needle.length(), needle) == 0;
     }
 
+    /**
+     * Returns true if the bytes received so far are consistent with the buffer starting with the needle;
+     * that is either the buffer starts with the needle or the buffer is a prefix of the needle.
+     */
+    static public boolean startsWithPrefixOf(Buffer self, Buffer needle) {
+        int length = Math.min(self.length(), needle.length());
+        for (int i = 0; i < length; i++) {
+            if( self.getByte(i) != needle.getByte(i) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static public int indexOf(Buffer self, int start, Buffer needle) {
         return indexOf(self, start, self.length(), needle);
     }
@@ -83,7 +83,8 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
 
     public T read() throws IOException {
         T command = null;
-        if (buff !=null && readEnd < buff.length() ) {
+        // the pending action needs at least readEnd bytes so retry it as soon as they have all arrived
+        if (buff !=null && readEnd <= buff.length() ) {
             if( nextDecodeAction == null ) {
                 nextDecodeAction = initialDecodeAction();
             }
@@ -149,6 +150,23 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
         }
     }
 
+    /**
+     * Consumes the given number of bytes like {@link #readBytes(int)} but returns the offset of the bytes
+     * in {@link #buff} instead of copying them, or -1 if they have not all been received yet.
+     * The bytes are only valid until the current decode action returns.
+     */
+    protected int readBytesOffset(int length) {
+        readEnd = readStart + length;
+        if (buff.length() < readEnd) {
+            return -1;
+        } else {
+            bytesDecoded += readEnd-readStart;
+            int offset = readStart;
+            readStart = readEnd;
+            return offset;
+        }
+    }
+
     protected Buffer peekBytes(int length) {
         readEnd = readStart + length;
         if (buff.length() < readEnd) {
@@ -63,6 +63,11 @@ public class AmqpProtocol implements Protocol {
       }
     }
 
+    @Override
+    public boolean couldMatch(Buffer header) {
+        return startsWithPrefixOf(header, PROTOCOL_MAGIC);
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, final Buffer received, final Handler<ConnectionParameters> handler) {
 
@@ -26,6 +26,7 @@ import org.vertx.java.core.buffer.Buffer;
 
 import static io.fabric8.gateway.handlers.detecting.protocol.Ascii.ascii;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
+import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWithPrefixOf;
 
 /**
  */
@@ -40,6 +41,7 @@ public class HttpProtocol implements Protocol {
     final Ascii OPTIONS = ascii("OPTIONS ");
     final Ascii HEAD = ascii("HEAD ");
     final Ascii TRACE = ascii("TRACE ");
+    final Ascii[] METHODS = new Ascii[]{ GET, HEAD, POST, PUT, DELETE, OPTIONS, TRACE, CONNECT };
 
     @Override
     public String getProtocolName() {
@@ -71,6 +73,16 @@ public class HttpProtocol implements Protocol {
             startsWith(header, 0, CONNECT.toBuffer());
     }
 
+    @Override
+    public boolean couldMatch(Buffer header) {
+        for (Ascii method : METHODS) {
+            if (startsWithPrefixOf(header, method.toBuffer())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
         handler.handle(new ConnectionParameters());
@@ -69,6 +69,11 @@ public class MqttProtocol implements Protocol {
         }
     }
 
+    @Override
+    public boolean couldMatch(Buffer header) {
+        return BufferSupport.startsWithPrefixOf(header, HEAD_MAGIC);
+    }
+
     static void append(Buffer self, MQTTFrame value) {
         MQTTFrame frame = (MQTTFrame) value;
         self.appendByte(frame.header());
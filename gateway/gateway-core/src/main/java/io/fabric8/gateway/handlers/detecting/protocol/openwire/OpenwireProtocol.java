@@ -16,7 +16,6 @@
 package io.fabric8.gateway.handlers.detecting.protocol.openwire;
 
 import io.fabric8.gateway.handlers.detecting.Protocol;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.Command;
 import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.SocketWrapper;
@@ -25,8 +24,6 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
-import java.io.IOException;
-
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.indexOf;
 
 /**
@@ -60,6 +57,12 @@ public class OpenwireProtocol implements Protocol {
         return buffer.length() >= 4 + MAGIC.length() && indexOf(buffer, 5, MAGIC) >= 0;
     }
 
+    @Override
+    public boolean couldMatch(Buffer buffer) {
+        // the first command after the size prefix is always the WireFormatInfo
+        return buffer.length() < 5 || buffer.getByte(4) == WireFormatInfo.DATA_STRUCTURE_TYPE;
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
 
@@ -71,22 +74,10 @@ public class OpenwireProtocol implements Protocol {
                 socket.close();
             }
         });
-        h.codecHandler(new Handler<Command>() {
+        h.codecHandler(new Handler<ConnectionParameters>() {
             @Override
-            public void handle(Command event) {
-                if( event instanceof WireFormatInfo){
-                    WireFormatInfo info = (WireFormatInfo) event;
-                    ConnectionParameters parameters = new ConnectionParameters();
-                    try {
-                        parameters.protocolVirtualHost = info.getHost();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    handler.handle(parameters);
-                } else {
-                    LOG.info("Expected a WireFormatInfo frame");
-                    socket.close();
-                }
+            public void handle(ConnectionParameters parameters) {
+                handler.handle(parameters);
             }
         });
         socket.readStream().dataHandler(h);
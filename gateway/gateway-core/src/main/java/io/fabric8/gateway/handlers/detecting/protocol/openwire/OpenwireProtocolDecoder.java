@@ -16,8 +16,7 @@
 package io.fabric8.gateway.handlers.detecting.protocol.openwire;
 
 import io.fabric8.gateway.handlers.detecting.protocol.ProtocolDecoder;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.Command;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.buffer.Buffer;
@@ -27,13 +26,15 @@ import java.net.ProtocolException;
 
 /**
  * Implements protocol decoding for the Openwire protocol.
+ * <p>
+ * Only the connection parameters needed to route the connection are decoded from the
+ * WireFormatInfo the client sends first; the frame is read in place rather than being
+ * copied and unmarshalled into a command.
  */
-class OpenwireProtocolDecoder extends ProtocolDecoder<Command> {
+class OpenwireProtocolDecoder extends ProtocolDecoder<ConnectionParameters> {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(OpenwireProtocolDecoder.class);
 
-    OpenWireFormat format = new OpenWireFormat(1);
-
     private final OpenwireProtocol protocol;
     public boolean trim = false;
 
@@ -42,31 +43,29 @@ class OpenwireProtocolDecoder extends ProtocolDecoder<Command> {
     }
 
     @Override
-    protected Action<Command> initialDecodeAction() {
+    protected Action<ConnectionParameters> initialDecodeAction() {
         return read_action;
     }
 
-    final Action<Command> read_action = new Action<Command>() {
-        public Command apply() throws IOException {
+    final Action<ConnectionParameters> read_action = new Action<ConnectionParameters>() {
+        public ConnectionParameters apply() throws IOException {
             Buffer header = peekBytes(4);
             if( header==null ) {
               return null;
             } else {
               final int length = header.getInt(0);
-              if( length > protocol.maxFrameSize ) {
+              if( length < 0 || length > protocol.maxFrameSize ) {
                   throw new ProtocolException("Max frame size exceeded.");
               }
-              nextDecodeAction = new Action<Command>() {
-                public Command apply() throws IOException {
-                  Buffer frame = readBytes(4+length) ;
-                  if( frame==null ) {
+              nextDecodeAction = new Action<ConnectionParameters>() {
+                public ConnectionParameters apply() throws IOException {
+                  int offset = readBytesOffset(4+length);
+                  if( offset < 0 ) {
                     return null;
                   } else {
-                    // TODO: avoid this conversion.
-                    org.fusesource.hawtbuf.Buffer buffer = new org.fusesource.hawtbuf.Buffer(frame.getBytes());
-                    Command command = (Command) format.unmarshal(buffer);
+                    ConnectionParameters parameters = WireFormatInfoSniffer.sniff(buff, offset, 4+length);
                     nextDecodeAction = read_action;
-                    return command;
+                    return parameters;
                   }
                 }
               };
@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.support.MarshallingSupport;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.net.ProtocolException;
+
+/**
+ * Reads the connection parameters needed for routing straight out of the loosely encoded
+ * {@link WireFormatInfo} frame a client sends first, without unmarshalling the command or its
+ * properties map and without copying the frame.
+ */
+final class WireFormatInfoSniffer {
+
+    private static final byte[] HOST_KEY = new byte[]{'H', 'o', 's', 't'};
+    // the frame comes from a client which has not been authenticated yet so bound the recursion on nested maps and lists
+    static final int MAX_NESTING_DEPTH = 8;
+
+    private WireFormatInfoSniffer() {
+    }
+
+    /**
+     * @param frame  the buffer holding the frame
+     * @param offset the offset of the frame in the buffer, starting with its size prefix
+     * @param length the length of the frame including its size prefix
+     */
+    static ConnectionParameters sniff(Buffer frame, int offset, int length) throws ProtocolException {
+        Reader reader = new Reader(frame, offset + 4, offset + length);
+        if (reader.readByte() != WireFormatInfo.DATA_STRUCTURE_TYPE) {
+            throw new ProtocolException("Expected a WireFormatInfo frame");
+        }
+        // magic and version
+        reader.skip(8 + 4);
+        ConnectionParameters parameters = new ConnectionParameters();
+        if (reader.readByte() != 0) {
+            int size = reader.readInt();
+            Reader properties = new Reader(frame, reader.position, reader.position + size);
+            reader.skip(size);
+            parameters.protocolVirtualHost = findString(properties, HOST_KEY);
+        }
+        return parameters;
+    }
+
+    /**
+     * Scans a marshalled primitive map for the string value of the given key skipping over the other entries
+     */
+    private static String findString(Reader reader, byte[] key) throws ProtocolException {
+        int count = reader.readInt();
+        for (int i = 0; i < count; i++) {
+            int keyLength = reader.readUnsignedShort();
+            boolean matches = reader.matches(key, keyLength);
+            reader.skip(keyLength);
+            if (matches) {
+                byte type = reader.readByte();
+                if (type == MarshallingSupport.STRING_TYPE) {
+                    return reader.readString(reader.readUnsignedShort());
+                } else if (type == MarshallingSupport.BIG_STRING_TYPE) {
+                    return reader.readString(reader.readInt());
+                }
+                return null;
+            }
+            skipPrimitive(reader, 0);
+        }
+        return null;
+    }
+
+    private static void skipPrimitive(Reader reader, int depth) throws ProtocolException {
+        byte type = reader.readByte();
+        switch (type) {
+        case MarshallingSupport.NULL:
+            break;
+        case MarshallingSupport.BOOLEAN_TYPE:
+        case MarshallingSupport.BYTE_TYPE:
+            reader.skip(1);
+            break;
+        case MarshallingSupport.CHAR_TYPE:
+        case MarshallingSupport.SHORT_TYPE:
+            reader.skip(2);
+            break;
+        case MarshallingSupport.INTEGER_TYPE:
+        case MarshallingSupport.FLOAT_TYPE:
+            reader.skip(4);
+            break;
+        case MarshallingSupport.LONG_TYPE:
+        case MarshallingSupport.DOUBLE_TYPE:
+            reader.skip(8);
+            break;
+        case MarshallingSupport.STRING_TYPE:
+            reader.skip(reader.readUnsignedShort());
+            break;
+        case MarshallingSupport.BYTE_ARRAY_TYPE:
+        case MarshallingSupport.BIG_STRING_TYPE:
+            reader.skip(reader.readInt());
+            break;
+        case MarshallingSupport.MAP_TYPE:
+            checkDepth(depth);
+            int entries = reader.readInt();
+            for (int i = 0; i < entries; i++) {
+                reader.skip(reader.readUnsignedShort());
+                skipPrimitive(reader, depth + 1);
+            }
+            break;
+        case MarshallingSupport.LIST_TYPE:
+            checkDepth(depth);
+            int elements = reader.readInt();
+            for (int i = 0; i < elements; i++) {
+                skipPrimitive(reader, depth + 1);
+            }
+            break;
+        default:
+            throw new ProtocolException("Unknown primitive type: " + type);
+        }
+    }
+
+    private static void checkDepth(int depth) throws ProtocolException {
+        if (depth >= MAX_NESTING_DEPTH) {
+            throw new ProtocolException("WireFormatInfo properties nested too deeply");
+        }
+    }
+
+    /**
+     * A bounds checked big endian cursor over a region of a buffer
+     */
+    private static final class Reader {
+        private final Buffer buffer;
+        private final int limit;
+        private int position;
+
+        Reader(Buffer buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        private int advance(int length) throws ProtocolException {
+            if (length < 0 || position + length > limit) {
+                throw new ProtocolException("Truncated WireFormatInfo frame");
+            }
+            int answer = position;
+            position += length;
+            return answer;
+        }
+
+        void skip(int length) throws ProtocolException {
+            advance(length);
+        }
+
+        byte readByte() throws ProtocolException {
+            return buffer.getByte(advance(1));
+        }
+
+        int readUnsignedShort() throws ProtocolException {
+            return buffer.getShort(advance(2)) & 0xFFFF;
+        }
+
+        int readInt() throws ProtocolException {
+            return buffer.getInt(advance(4));
+        }
+
+        String readString(int length) throws ProtocolException {
+            int start = advance(length);
+            return buffer.getString(start, start + length, "UTF-8");
+        }
+
+        boolean matches(byte[] value, int length) {
+            if (length != value.length || position + length > limit) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer.getByte(position + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
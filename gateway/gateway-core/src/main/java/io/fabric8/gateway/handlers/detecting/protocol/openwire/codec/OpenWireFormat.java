@@ -31,10 +31,13 @@ import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 
+ * The OpenWire codec.
+ * <p>
+ * A format holds the marshalling caches and buffers of a single connection so it is not thread safe;
+ * each connection should use its own instance from its own event loop. The large value caches are only
+ * allocated once caching has been negotiated so creating a format per connection is cheap.
  */
 public final class OpenWireFormat {
 
@@ -58,13 +61,14 @@ public final class OpenWireFormat {
     // The following fields are used for value caching
     private short nextMarshallCacheIndex;
     private short nextMarshallCacheEvictionIndex;
-    private Map<DataStructure, Short> marshallCacheMap = new HashMap<DataStructure, Short>();
-    private DataStructure marshallCache[] = new DataStructure[MARSHAL_CACHE_SIZE];
-    private DataStructure unmarshallCache[] = new DataStructure[MARSHAL_CACHE_SIZE];
-    private DataByteArrayOutputStream bytesOut = new DataByteArrayOutputStream();
-    private DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
+    private Map<DataStructure, Short> marshallCacheMap;
+    private DataStructure marshallCache[];
+    private DataStructure unmarshallCache[];
+    // reused for every command marshalled by this format
+    private DataByteArrayOutputStream bytesOut;
+    private final DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
 
-    private AtomicBoolean receivingMessage = new AtomicBoolean(false);
+    private boolean receivingMessage;
 
     public OpenWireFormat() {
         this(DEFAULT_VERSION);
@@ -80,11 +84,10 @@ public final class OpenWireFormat {
     }
 
     public OpenWireFormat copy() {
-        OpenWireFormat answer = new OpenWireFormat();
-        answer.version = version;
+        OpenWireFormat answer = new OpenWireFormat(version);
         answer.stackTraceEnabled = stackTraceEnabled;
         answer.tcpNoDelayEnabled = tcpNoDelayEnabled;
-        answer.cacheEnabled = cacheEnabled;
+        answer.setCacheEnabled(cacheEnabled);
         answer.tightEncodingEnabled = tightEncodingEnabled;
         answer.sizePrefixDisabled = sizePrefixDisabled;
         return answer;
@@ -114,7 +117,8 @@ public final class OpenWireFormat {
         return WIREFORMAT_NAME;
     }
 
-    public synchronized Buffer marshal(Object command) throws IOException {
+    public Buffer marshal(Object command) throws IOException {
+        DataByteArrayOutputStream bytesOut = getBytesOut();
 
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
@@ -171,10 +175,13 @@ public final class OpenWireFormat {
 
                     if (!sizePrefixDisabled) {
                         size = sequence.getLength() - 4;
+                        // the editor consumes the buffer as it writes so restore its length too
                         int pos = sequence.offset;
+                        int length = sequence.length;
                         sequence.offset = 0;
                         BufferEditor.big(sequence).writeInt(size);
                         sequence.offset = pos;
+                        sequence.length = length;
                     }
                 }
 
@@ -192,7 +199,7 @@ public final class OpenWireFormat {
         return sequence;
     }
 
-    public synchronized Object unmarshal(Buffer sequence) throws IOException {
+    public Object unmarshal(Buffer sequence) throws IOException {
         bytesIn.restart(sequence);
         // DataByteArrayInputStreamStream dis = new DataByteArrayInputStreamStream(new
         // ByteArrayInputStream(sequence));
@@ -219,7 +226,7 @@ public final class OpenWireFormat {
         return command;
     }
 
-    public synchronized void marshal(Object o, DataByteArrayOutputStream dataOut) throws IOException {
+    public void marshal(Object o, DataByteArrayOutputStream dataOut) throws IOException {
 
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
@@ -250,7 +257,9 @@ public final class OpenWireFormat {
             } else {
                 DataByteArrayOutputStream looseOut = dataOut;
 
+                DataByteArrayOutputStream bytesOut = null;
                 if (!sizePrefixDisabled) {
+                    bytesOut = getBytesOut();
                     bytesOut.restart();
                     looseOut = bytesOut;
                 }
@@ -366,7 +375,7 @@ public final class OpenWireFormat {
 
     public Object doUnmarshal(DataByteArrayInputStream dis) throws IOException {
         byte dataType = dis.readByte();
-        receivingMessage.set(true);
+        receivingMessage = true;
         if (dataType != NULL_TYPE) {
             DataStreamMarshaller dsm = (DataStreamMarshaller) dataMarshallers[dataType & 0xFF];
             if (dsm == null) {
@@ -380,10 +389,10 @@ public final class OpenWireFormat {
             } else {
                 dsm.looseUnmarshal(this, data, dis);
             }
-            receivingMessage.set(false);
+            receivingMessage = false;
             return data;
         } else {
-            receivingMessage.set(false);
+            receivingMessage = false;
             return null;
         }
     }
@@ -511,6 +520,21 @@ public final class OpenWireFormat {
         }
     }
 
+    private DataByteArrayOutputStream getBytesOut() {
+        if (bytesOut == null) {
+            bytesOut = new DataByteArrayOutputStream();
+        }
+        return bytesOut;
+    }
+
+    private void createCaches(int size) {
+        marshallCache = new DataStructure[size];
+        unmarshallCache = new DataStructure[size];
+        nextMarshallCacheIndex = 0;
+        nextMarshallCacheEvictionIndex = 0;
+        marshallCacheMap = new HashMap<DataStructure, Short>();
+    }
+
     public void runMarshallCacheEvictionSweep() {
         // Do we need to start evicting??
         while (marshallCacheMap.size() > marshallCache.length - MARSHAL_CACHE_FREE_SPACE) {
@@ -586,6 +610,9 @@ public final class OpenWireFormat {
 
     public void setCacheEnabled(boolean cacheEnabled) {
         this.cacheEnabled = cacheEnabled;
+        if (cacheEnabled && marshallCache == null) {
+            createCaches(MARSHAL_CACHE_SIZE);
+        }
     }
 
     public boolean isTightEncodingEnabled() {
@@ -648,11 +675,7 @@ public final class OpenWireFormat {
                 size = MARSHAL_CACHE_SIZE;
             }
 
-            marshallCache = new DataStructure[size];
-            unmarshallCache = new DataStructure[size];
-            nextMarshallCacheIndex = 0;
-            nextMarshallCacheEvictionIndex = 0;
-            marshallCacheMap = new HashMap<DataStructure, Short>();
+            createCaches(size);
         } else {
             marshallCache = null;
             unmarshallCache = null;
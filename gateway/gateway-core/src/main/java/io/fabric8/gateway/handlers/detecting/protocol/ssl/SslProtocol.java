@@ -75,6 +75,15 @@ public class SslProtocol implements Protocol {
         }
     }
 
+    @Override
+    public boolean couldMatch(Buffer buffer) {
+        if (buffer.length() == 0) {
+            return true;
+        }
+        byte contentType = buffer.getByte(0);
+        return contentType == 0x16 || (contentType & 0xC0) == 0x80;
+    }
+
     private boolean isSSLVerions(byte ver) {
         switch (ver) {  // Minor version
             case 0: // SSLv3
@@ -0,0 +1,311 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one keep-alive {@link HttpClient} per back end service (host:port) so that proxied
+ * requests reuse the connections vert.x pools inside each client rather than paying for a new
+ * TCP (and TLS) handshake on every request.
+ * <p>
+ * A vert.x {@link HttpClient} is bound to the context it was created on, so clients are
+ * acquired and released on the gateway server's context and idle eviction is run on the
+ * context of each client. When several contexts acquire a client for the same back end at
+ * once only one of the clients they create is kept, the others are closed straight away.
+ */
+public class HttpClientPool {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_BACKEND = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000L;
+
+    private final Vertx vertx;
+    private final ConcurrentMap<String, PooledHttpClient> clients = new ConcurrentHashMap<String, PooledHttpClient>();
+    private boolean keepAlive = true;
+    private boolean pipelining = false;
+    private int maxConnectionsPerBackend = DEFAULT_MAX_CONNECTIONS_PER_BACKEND;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long evictionTimerId = -1;
+
+    private final AtomicLong createdClients = new AtomicLong();
+    private final AtomicLong evictedClients = new AtomicLong();
+    private final AtomicLong inFlightRequests = new AtomicLong();
+    private final AtomicLong completedRequests = new AtomicLong();
+    private final AtomicLong totalWaitTimeNanos = new AtomicLong();
+    private final AtomicLong maxWaitTimeNanos = new AtomicLong();
+
+    public HttpClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientPool{" +
+                "backends=" + clients.keySet() +
+                ", keepAlive=" + keepAlive +
+                ", pipelining=" + pipelining +
+                ", maxConnectionsPerBackend=" + maxConnectionsPerBackend +
+                '}';
+    }
+
+    public void init() {
+        if (idleTimeout > 0 && evictionTimerId < 0) {
+            long period = Math.max(1000L, idleTimeout / 2);
+            evictionTimerId = vertx.setPeriodic(period, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    public void destroy() {
+        if (evictionTimerId >= 0) {
+            vertx.cancelTimer(evictionTimerId);
+            evictionTimerId = -1;
+        }
+        for (PooledHttpClient client : clients.values()) {
+            clients.remove(client.getKey());
+            client.close();
+        }
+    }
+
+    /**
+     * Returns the pooled client for the host and port of the given URL creating it if need be.
+     * The caller must {@link PooledHttpClient#release(long)} the client once the request completes.
+     */
+    public PooledHttpClient acquire(URL url) {
+        String host = url.getHost();
+        int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+        String key = host + ":" + port;
+        PooledHttpClient answer = clients.get(key);
+        if (answer == null) {
+            HttpClient client = vertx.createHttpClient();
+            client.setHost(host);
+            client.setPort(port);
+            client.setKeepAlive(keepAlive);
+            client.setPipelining(pipelining);
+            client.setMaxPoolSize(maxConnectionsPerBackend);
+            if ("https".equals(url.getProtocol())) {
+                client.setSSL(true);
+            }
+            PooledHttpClient created = new PooledHttpClient(key, client, vertx.currentContext());
+            answer = clients.putIfAbsent(key, created);
+            if (answer == null) {
+                answer = created;
+                createdClients.incrementAndGet();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Created pooled HTTP client for backend " + key);
+                }
+            } else {
+                // another context created a client for this back end at the same time
+                created.close();
+            }
+        }
+        answer.retain();
+        return answer;
+    }
+
+    protected void evictIdleClients() {
+        final long now = System.currentTimeMillis();
+        for (final PooledHttpClient client : clients.values()) {
+            if (client.isIdleSince(now - idleTimeout)) {
+                Context context = client.getContext();
+                if (context != null) {
+                    // re-check on the client's own context so we never race an acquire
+                    context.runOnContext(new Handler<Void>() {
+                        @Override
+                        public void handle(Void event) {
+                            evictIfIdle(client, now);
+                        }
+                    });
+                } else {
+                    evictIfIdle(client, now);
+                }
+            }
+        }
+    }
+
+    private void evictIfIdle(PooledHttpClient client, long now) {
+        if (client.isIdleSince(now - idleTimeout) && clients.remove(client.getKey()) != null) {
+            evictedClients.incrementAndGet();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Evicting idle pooled HTTP client for backend " + client.getKey());
+            }
+            client.close();
+        }
+    }
+
+    protected void recordWaitTime(long waitTimeNanos) {
+        completedRequests.incrementAndGet();
+        totalWaitTimeNanos.addAndGet(waitTimeNanos);
+        long max = maxWaitTimeNanos.get();
+        while (waitTimeNanos > max && !maxWaitTimeNanos.compareAndSet(max, waitTimeNanos)) {
+            max = maxWaitTimeNanos.get();
+        }
+    }
+
+    public void resetStatistics() {
+        createdClients.set(0);
+        evictedClients.set(0);
+        completedRequests.set(0);
+        totalWaitTimeNanos.set(0);
+        maxWaitTimeNanos.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    /**
+     * Returns the number of back end services we currently hold a client for
+     */
+    public int getPoolSize() {
+        return clients.size();
+    }
+
+    public long getCreatedClients() {
+        return createdClients.get();
+    }
+
+    public long getEvictedClients() {
+        return evictedClients.get();
+    }
+
+    public long getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * Returns the average time between sending a request to a back end and receiving its response headers,
+     * which includes the time spent waiting for a free pooled connection
+     */
+    public long getAverageWaitTimeNanos() {
+        long count = completedRequests.get();
+        return count > 0 ? totalWaitTimeNanos.get() / count : 0L;
+    }
+
+    public long getMaxWaitTimeNanos() {
+        return maxWaitTimeNanos.get();
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    public int getMaxConnectionsPerBackend() {
+        return maxConnectionsPerBackend;
+    }
+
+    public void setMaxConnectionsPerBackend(int maxConnectionsPerBackend) {
+        this.maxConnectionsPerBackend = maxConnectionsPerBackend;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds a back end client may be unused before it is closed; zero or less disables eviction
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * A client to a single back end which counts the requests currently using it
+     */
+    public class PooledHttpClient {
+        private final String key;
+        private final HttpClient client;
+        private final Context context;
+        private final AtomicLong inFlight = new AtomicLong();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledHttpClient(String key, HttpClient client, Context context) {
+            this.key = key;
+            this.client = client;
+            this.context = context;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public HttpClient getClient() {
+            return client;
+        }
+
+        Context getContext() {
+            return context;
+        }
+
+        void retain() {
+            inFlight.incrementAndGet();
+            inFlightRequests.incrementAndGet();
+            lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * Releases the client after a request has completed
+         *
+         * @param waitTimeNanos the time spent waiting for the back end response or a negative value if unknown
+         */
+        public void release(long waitTimeNanos) {
+            inFlight.decrementAndGet();
+            inFlightRequests.decrementAndGet();
+            lastUsed = System.currentTimeMillis();
+            if (waitTimeNanos >= 0) {
+                recordWaitTime(waitTimeNanos);
+            }
+        }
+
+        boolean isIdleSince(long time) {
+            return inFlight.get() <= 0 && lastUsed < time;
+        }
+
+        void close() {
+            try {
+                client.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close HTTP client for " + key + ". " + e, e);
+            }
+        }
+    }
+}
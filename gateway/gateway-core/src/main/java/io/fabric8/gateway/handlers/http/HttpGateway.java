@@ -43,6 +43,11 @@ public interface HttpGateway {
      */
     Map<String, MappedServices> getMappedServices();
 
+    /**
+     * Returns the current index of the mapped services which is used to find the longest matching URI prefix of a request
+     */
+    MappingIndex getMappingIndex();
+
     /**
      * Returns true if the mapping index is enabled which by default
      * returns a JSON document describing the mapping of URI prefixes to services
@@ -58,4 +63,14 @@ public interface HttpGateway {
      * Adds a CallDetailRecord for reporting purposes
      */
     public void addCallDetailRecord(CallDetailRecord cdr);
+
+    /**
+     * Records the outcome of a call for reporting purposes without allocating a {@link CallDetailRecord}
+     *
+     * @param mappingPath   the mapping rule URI prefix the call was routed by or null if it was not proxied
+     * @param serviceUrl    the back end service the call was proxied to or null if it was not proxied
+     * @param callTimeNanos the time the call took
+     * @param error         the error if the call failed, including back end responses with a 5xx status, or null if it succeeded
+     */
+    public void recordCall(String mappingPath, String serviceUrl, long callTimeNanos, String error);
 }
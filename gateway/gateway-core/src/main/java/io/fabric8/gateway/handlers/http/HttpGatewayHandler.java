@@ -23,21 +23,17 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.HttpServerResponse;
 
-import io.fabric8.gateway.CallDetailRecord;
-
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -49,33 +45,38 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
     private final Vertx vertx;
     private final HttpGateway httpGateway;
+    private final HttpClientPool clientPool;
     private final ObjectMapper mapper = new ObjectMapper();
 
     public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway) {
+        this(vertx, httpGateway, new HttpClientPool(vertx));
+    }
+
+    public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway, HttpClientPool clientPool) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientPool = clientPool;
     }
 
     @Override
     public void handle(final HttpServerRequest request) {
     	long callStart = System.nanoTime();
         String uri = request.uri();
-        String uri2 = null;
-        if (!uri.endsWith("/")) {
-            uri2 = uri + "/";
-        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Proxying request: " + uri);
         }
 
         // lets map the request URI to map to the service URI and then the renaming URI
         // using mapping rules...
-        HttpClient client = null;
+        HttpClientPool.PooledHttpClient client = null;
         String remaining = null;
         String prefix = null;
         String proxyServiceUrl = null;
         String reverseServiceUrl = null;
-        Map<String, MappedServices> mappingRules = httpGateway.getMappedServices();
+        String mappingPath = null;
+        BackendCall proxiedCall = null;
+        MappingIndex mappingIndex = httpGateway.getMappingIndex();
+        Map<String, MappedServices> mappingRules = mappingIndex.getMappedServices();
         try {
             if (isMappingIndexRequest(request)) {
                 // lets return the JSON of all the results
@@ -84,39 +85,39 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                 response.headers().set("ContentType", "application/json");
                 response.end(json);
                 response.setStatusCode(200);
+                httpGateway.recordCall(null, null, System.nanoTime() - callStart, null);
             } else {
                 MappedServices mappedServices = null;
                 URL clientURL = null;
-                Set<Map.Entry<String, MappedServices>> entries = mappingRules.entrySet();
-                for (Map.Entry<String, MappedServices> entry : entries) {
-                    String path = entry.getKey();
-                    mappedServices = entry.getValue();
-
-                    String pathPrefix = path;
-                    if (uri.startsWith(pathPrefix) || (uri2 != null && uri2.startsWith(pathPrefix))) {
-                        int pathPrefixLength = pathPrefix.length();
-                        if (pathPrefixLength < uri.length()) {
-                            remaining = uri.substring(pathPrefixLength);
-                        } else {
-                            remaining = null;
-                        }
+                // try the longest matching prefix first then fall back to shorter ones
+                for (MappingIndex.Entry entry = mappingIndex.find(uri); entry != null; entry = entry.getParent()) {
+                    String pathPrefix = entry.getPath();
+                    int remainingOffset = entry.remainingOffset(uri);
+                    if (remainingOffset < uri.length()) {
+                        remaining = uri.substring(remainingOffset);
+                    } else {
+                        remaining = null;
+                    }
 
-                        // now lets pick a service for this path
-                        proxyServiceUrl = mappedServices.chooseService(request);
-                        if (proxyServiceUrl != null) {
-                            // lets create a client for this request...
-                            try {
-                                clientURL = new URL(proxyServiceUrl);
-                                client = createClient(clientURL);
-                                prefix = clientURL.getPath();
-                                reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
-                                if (reverseServiceUrl.endsWith("/")) {
-                                    reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
-                                }
-                                break;
-                            } catch (MalformedURLException e) {
-                                LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                    // now lets pick a service for this path
+                    proxyServiceUrl = entry.getMappedServices().chooseService(request);
+                    if (proxyServiceUrl != null) {
+                        // lets create a client for this request...
+                        try {
+                            clientURL = new URL(proxyServiceUrl);
+                            mappedServices = entry.getMappedServices();
+                            mappingPath = pathPrefix;
+                            client = createClient(clientURL);
+                            // track the call straight away so the client is released whatever happens next
+                            proxiedCall = new BackendCall(client, mappedServices, mappingPath, proxyServiceUrl, callStart);
+                            prefix = clientURL.getPath();
+                            reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
+                            if (reverseServiceUrl.endsWith("/")) {
+                                reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
                             }
+                            break;
+                        } catch (MalformedURLException e) {
+                            LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
                         }
                     }
                 }
@@ -132,9 +133,17 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     }
 
                     LOG.info("Proxying request " + uri + " to service path: " + servicePath + " on service: " + proxyServiceUrl + " reverseServiceUrl: " + reverseServiceUrl);
-                    final HttpClient finalClient = client;
+                    final BackendCall backendCall = proxiedCall;
+                    request.response().closeHandler(new VoidHandler() {
+                        public void handle() {
+                            if (backendCall.release("Connection closed by client")) {
+                                LOG.debug("Client closed the connection before the response from " + backendCall.getClient().getKey() + " completed");
+                            }
+                        }
+                    });
                     Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
                         public void handle(HttpClientResponse clientResponse) {
+                            backendCall.responseStarted();
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Proxying response: " + clientResponse.statusCode());
                             }
@@ -149,10 +158,20 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                                     request.response().write(data);
                                 }
                             });
+                            clientResponse.exceptionHandler(new Handler<Throwable>() {
+                                public void handle(Throwable e) {
+                                    LOG.warn("Failed to proxy response from " + backendCall.getClient().getKey() + ". " + e, e);
+                                    if (backendCall.release(e.toString())) {
+                                        request.response().close();
+                                    }
+                                }
+                            });
+                            final int statusCode = clientResponse.statusCode();
                             clientResponse.endHandler(new VoidHandler() {
                                 public void handle() {
                                     request.response().end();
-                                    finalClient.close();
+                                    // server errors of the back end count as failed calls
+                                    backendCall.release(statusCode >= 500 ? "HTTP " + statusCode : null);
                                 }
                             });
                         }
@@ -161,9 +180,18 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                         ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
                         responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
                     }
-                    final HttpClientRequest clientRequest = client.request(request.method(), servicePath, responseHandler);
+                    final HttpClientRequest clientRequest = client.getClient().request(request.method(), servicePath, responseHandler);
                     clientRequest.headers().set(request.headers());
                     clientRequest.setChunked(true);
+                    clientRequest.exceptionHandler(new Handler<Throwable>() {
+                        public void handle(Throwable e) {
+                            LOG.warn("Failed to proxy request to " + backendCall.getClient().getKey() + ". " + e, e);
+                            if (backendCall.release(e.toString())) {
+                                request.response().setStatusCode(502);
+                                request.response().close();
+                            }
+                        }
+                    });
                     request.dataHandler(new Handler<Buffer>() {
                         public void handle(Buffer data) {
                             if (LOG.isDebugEnabled()) {
@@ -186,14 +214,16 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingRules.keySet());
                     request.response().setStatusCode(404);
                     request.response().close();
+                    httpGateway.recordCall(null, null, System.nanoTime() - callStart, null);
                 }
             }
-            CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, null);
-            httpGateway.addCallDetailRecord(cdr);
         } catch (Throwable e) {
             LOG.error("Caught: " + e, e);
-            CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, new Date() + ":" + e.getMessage());
-            httpGateway.addCallDetailRecord(cdr);
+            if (proxiedCall != null) {
+                proxiedCall.release(e.toString());
+            } else {
+                httpGateway.recordCall(mappingPath, proxyServiceUrl, System.nanoTime() - callStart, e.toString());
+            }
             request.response().setStatusCode(404);
             StringWriter buffer = new StringWriter();
             e.printStackTrace(new PrintWriter(buffer));
@@ -223,13 +253,60 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         return uri == null || uri.length() == 0 || uri.equals("/");
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+    protected HttpClientPool.PooledHttpClient createClient(URL url) throws MalformedURLException {
+        // lets reuse the keep-alive client for this back end
+        return clientPool.acquire(url);
+    }
+
+    public HttpClientPool getClientPool() {
+        return clientPool;
+    }
+
+    /**
+     * Tracks a single proxied request so the pooled client is released and the call recorded exactly once
+     */
+    private class BackendCall {
+        private final HttpClientPool.PooledHttpClient client;
+        private final MappedServices mappedServices;
+        private final String mappingPath;
+        private final String serviceUrl;
+        private final long callStart;
+        private final long start = System.nanoTime();
+        private long waitTimeNanos = -1;
+        private boolean released;
+
+        BackendCall(HttpClientPool.PooledHttpClient client, MappedServices mappedServices, String mappingPath, String serviceUrl, long callStart) {
+            this.client = client;
+            this.mappedServices = mappedServices;
+            this.mappingPath = mappingPath;
+            this.serviceUrl = serviceUrl;
+            this.callStart = callStart;
+            if (mappedServices != null) {
+                mappedServices.requestStarted(serviceUrl);
+            }
+        }
+
+        HttpClientPool.PooledHttpClient getClient() {
+            return client;
+        }
+
+        void responseStarted() {
+            waitTimeNanos = System.nanoTime() - start;
+        }
 
+        boolean release(String error) {
+            if (released) {
+                return false;
+            }
+            released = true;
+            client.release(waitTimeNanos);
+            if (mappedServices != null) {
+                // only successful responses are used to weight the services by response time
+                mappedServices.requestCompleted(serviceUrl, error == null ? waitTimeNanos : -1);
+            }
+            httpGateway.recordCall(mappingPath, serviceUrl, System.nanoTime() - callStart, error);
+            return true;
+        }
     }
 
 }
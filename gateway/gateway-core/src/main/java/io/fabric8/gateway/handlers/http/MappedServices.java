@@ -17,6 +17,7 @@ package io.fabric8.gateway.handlers.http;
 
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.http.HttpClientResponse;
@@ -56,6 +57,28 @@ public class MappedServices {
         return loadBalancer.choose(serviceUrls, new HttpClientRequestFacade(request));
     }
 
+    /**
+     * Notifies a load aware load balancer that a request has been sent to the given service
+     */
+    public void requestStarted(String serviceUrl) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).requestStarted(serviceUrl);
+        }
+    }
+
+    /**
+     * Notifies a load aware load balancer that a request to the given service has completed
+     *
+     * @param responseTimeNanos the time until the service started responding or -1 if it failed to respond
+     */
+    public void requestCompleted(String serviceUrl, long responseTimeNanos) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            LoadAwareLoadBalancer loadAwareLoadBalancer = (LoadAwareLoadBalancer) loadBalancer;
+            loadAwareLoadBalancer.requestCompleted(serviceUrl);
+            loadAwareLoadBalancer.recordResponseTime(serviceUrl, responseTimeNanos);
+        }
+    }
+
     /**
      * Provides a hook so we can wrap a client response handler in a policy such
      * as to reverse the URIs {@link io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy} or
@@ -90,6 +113,10 @@ public class MappedServices {
         return reverseHeaders;
     }
 
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
     public ServiceDetails getServiceDetails() {
         return serviceDetails;
     }
@@ -0,0 +1,287 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable path segment trie of the {@link MappedServices} indexed by URI prefix so that the
+ * {@link HttpGatewayHandler} can find the longest matching prefix of a request URI in a single pass
+ * over the URI without allocating any strings.
+ * <p>
+ * Prefixes match on whole path segments; so <code>/cxf/crm/</code> matches <code>/cxf/crm</code>,
+ * <code>/cxf/crm/customers</code> and <code>/cxf/crm?wsdl</code> but not <code>/cxf/crmfoo</code>.
+ * <p>
+ * A new index is built whenever the mapping rules change and is then published atomically so
+ * requests never see a partially updated index.
+ */
+public final class MappingIndex {
+    public static final MappingIndex EMPTY = build(Collections.<String, MappedServices>emptyMap());
+
+    private final Map<String, MappedServices> mappedServices;
+    private final Node root;
+
+    private MappingIndex(Map<String, MappedServices> mappedServices, Node root) {
+        this.mappedServices = mappedServices;
+        this.root = root;
+    }
+
+    /**
+     * Builds a new index of the given mapped services indexed by URI prefix
+     */
+    public static MappingIndex build(Map<String, MappedServices> mappedServices) {
+        Map<String, MappedServices> copy = Collections.unmodifiableMap(new HashMap<String, MappedServices>(mappedServices));
+        Builder root = new Builder("", 0);
+        for (Map.Entry<String, MappedServices> entry : copy.entrySet()) {
+            root.add(entry.getKey(), entry.getValue());
+        }
+        return new MappingIndex(copy, root.build(null));
+    }
+
+    @Override
+    public String toString() {
+        return "MappingIndex{" +
+                "paths=" + mappedServices.keySet() +
+                '}';
+    }
+
+    /**
+     * Returns the mapped services this index was built from indexed by URI prefix
+     */
+    public Map<String, MappedServices> getMappedServices() {
+        return mappedServices;
+    }
+
+    public boolean isEmpty() {
+        return mappedServices.isEmpty();
+    }
+
+    /**
+     * Returns the entry with the longest prefix matching the given URI or null if there is no match.
+     * If the entry cannot be used then {@link Entry#getParent()} returns the next shorter match.
+     */
+    public Entry find(String uri) {
+        Node node = root;
+        Entry answer = root.entry;
+        int length = uri.length();
+        int start = 0;
+        if (start < length && uri.charAt(start) == '/') {
+            start++;
+        }
+        while (start < length) {
+            int end = start;
+            int hash = 0;
+            char ch = 0;
+            while (end < length) {
+                ch = uri.charAt(end);
+                if (ch == '/' || ch == '?' || ch == '#') {
+                    break;
+                }
+                hash = 31 * hash + ch;
+                end++;
+            }
+            node = node.child(uri, start, end - start, hash);
+            if (node == null) {
+                break;
+            }
+            if (node.entry != null) {
+                answer = node.entry;
+            }
+            if (end >= length || ch != '/') {
+                break;
+            }
+            start = end + 1;
+        }
+        return answer;
+    }
+
+    /**
+     * A URI prefix and the services mapped to it
+     */
+    public static final class Entry {
+        private final String path;
+        private final MappedServices mappedServices;
+        private final int prefixLength;
+        private final Entry parent;
+
+        Entry(String path, MappedServices mappedServices, int prefixLength, Entry parent) {
+            this.path = path;
+            this.mappedServices = mappedServices;
+            this.prefixLength = prefixLength;
+            this.parent = parent;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "path='" + path + '\'' +
+                    ", mappedServices=" + mappedServices +
+                    '}';
+        }
+
+        /**
+         * Returns the URI prefix as it was configured in the mapping rules
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public MappedServices getMappedServices() {
+            return mappedServices;
+        }
+
+        /**
+         * Returns the entry for the next shorter matching prefix or null if there is none
+         */
+        public Entry getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the index into the matched URI of the remaining path after this prefix
+         */
+        public int remainingOffset(String uri) {
+            int offset = Math.min(prefixLength, uri.length());
+            if (offset < uri.length() && uri.charAt(offset) == '/') {
+                offset++;
+            }
+            return offset;
+        }
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final int[] NO_HASHES = new int[0];
+
+        private final String segment;
+        private final Entry entry;
+        private final int[] hashes;
+        private final Node[] children;
+
+        Node(String segment, Entry entry, int[] hashes, Node[] children) {
+            this.segment = segment;
+            this.entry = entry;
+            this.hashes = hashes;
+            this.children = children;
+        }
+
+        Node child(String uri, int offset, int length, int hash) {
+            int[] hashes = this.hashes;
+            int low = 0;
+            int high = hashes.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = hashes[mid];
+                if (value < hash) {
+                    low = mid + 1;
+                } else if (value > hash) {
+                    high = mid - 1;
+                } else {
+                    // scan the run of children with the same hash
+                    int i = mid;
+                    while (i > 0 && hashes[i - 1] == hash) {
+                        i--;
+                    }
+                    for (; i < hashes.length && hashes[i] == hash; i++) {
+                        String segment = children[i].segment;
+                        if (segment.length() == length && uri.regionMatches(offset, segment, 0, length)) {
+                            return children[i];
+                        }
+                    }
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A mutable node used while building the index
+     */
+    private static final class Builder {
+        private final String segment;
+        private final int prefixLength;
+        private final Map<String, Builder> children = new HashMap<String, Builder>();
+        private String path;
+        private MappedServices mappedServices;
+
+        Builder(String segment, int prefixLength) {
+            this.segment = segment;
+            this.prefixLength = prefixLength;
+        }
+
+        void add(String path, MappedServices value) {
+            Builder node = this;
+            int length = path.length();
+            int start = 0;
+            if (start < length && path.charAt(start) == '/') {
+                start++;
+            }
+            while (start < length) {
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = length;
+                }
+                String segment = path.substring(start, end);
+                Builder child = node.children.get(segment);
+                if (child == null) {
+                    child = new Builder(segment, node.prefixLength + 1 + segment.length());
+                    node.children.put(segment, child);
+                }
+                node = child;
+                start = end + 1;
+            }
+            // if both /foo and /foo/ are mapped then prefer the one ending in a slash
+            if (node.path == null || path.endsWith("/")) {
+                node.path = path;
+                node.mappedServices = value;
+            }
+        }
+
+        Node build(Entry parentEntry) {
+            Entry entry = parentEntry;
+            if (mappedServices != null) {
+                entry = new Entry(path, mappedServices, prefixLength, parentEntry);
+            }
+            if (children.isEmpty()) {
+                return new Node(segment, mappedServices != null ? entry : null, Node.NO_HASHES, Node.NO_CHILDREN);
+            }
+            List<Builder> sorted = new ArrayList<Builder>(children.values());
+            Collections.sort(sorted, new Comparator<Builder>() {
+                @Override
+                public int compare(Builder b1, Builder b2) {
+                    int h1 = b1.segment.hashCode();
+                    int h2 = b2.segment.hashCode();
+                    return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+                }
+            });
+            int size = sorted.size();
+            int[] hashes = new int[size];
+            Node[] nodes = new Node[size];
+            for (int i = 0; i < size; i++) {
+                Builder child = sorted.get(i);
+                hashes[i] = child.segment.hashCode();
+                nodes[i] = child.build(entry);
+            }
+            return new Node(segment, mappedServices != null ? entry : null, hashes, nodes);
+        }
+    }
+}
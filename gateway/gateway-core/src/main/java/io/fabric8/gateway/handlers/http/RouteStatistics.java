@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a {@link LatencyHistogram} for each back end service of each mapping rule path so that
+ * the tail latency and error rate of a degrading back end can be seen.
+ */
+public class RouteStatistics {
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> routes = new ConcurrentHashMap<String, ConcurrentMap<String, LatencyHistogram>>();
+
+    /**
+     * Records a call to the given back end service via the given mapping rule path
+     */
+    public void record(String mappingPath, String serviceUrl, long callTimeNanos, boolean error) {
+        if (mappingPath == null) {
+            return;
+        }
+        if (serviceUrl == null) {
+            serviceUrl = "";
+        }
+        ConcurrentMap<String, LatencyHistogram> services = routes.get(mappingPath);
+        if (services == null) {
+            ConcurrentMap<String, LatencyHistogram> newServices = new ConcurrentHashMap<String, LatencyHistogram>();
+            services = routes.putIfAbsent(mappingPath, newServices);
+            if (services == null) {
+                services = newServices;
+            }
+        }
+        LatencyHistogram histogram = services.get(serviceUrl);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = services.putIfAbsent(serviceUrl, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        histogram.record(callTimeNanos, error);
+    }
+
+    /**
+     * Returns a snapshot of the statistics indexed by mapping rule path then back end service URL
+     */
+    public Map<String, Map<String, LatencyHistogram.Snapshot>> snapshot() {
+        Map<String, Map<String, LatencyHistogram.Snapshot>> answer = new TreeMap<String, Map<String, LatencyHistogram.Snapshot>>();
+        for (Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> route : routes.entrySet()) {
+            Map<String, LatencyHistogram.Snapshot> services = new TreeMap<String, LatencyHistogram.Snapshot>();
+            for (Map.Entry<String, LatencyHistogram> service : route.getValue().entrySet()) {
+                services.put(service.getKey(), service.getValue().snapshot());
+            }
+            answer.put(route.getKey(), services);
+        }
+        return answer;
+    }
+
+    /**
+     * Discards all the recorded statistics
+     */
+    public void reset() {
+        routes.clear();
+    }
+}
@@ -228,6 +228,11 @@ public class ExtendedBurnIn {
                 return mappedServices;
             }
 
+            @Override
+            public MappingIndex getMappingIndex() {
+                return MappingIndex.build(mappedServices);
+            }
+
             @Override
             public boolean isEnableIndex() {
                 return true;
@@ -241,6 +246,10 @@ public class ExtendedBurnIn {
 			@Override
 			public void addCallDetailRecord(CallDetailRecord cdr) {
 			}
+
+			@Override
+			public void recordCall(String mappingPath, String serviceUrl, long callTimeNanos, String error) {
+			}
         });
         websocketHandler.setPathPrefix("");
         httpGatewayServer = new HttpGatewayServer(vertx, handler, websocketHandler, 8080);
@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() throws Exception {
+        long previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue("value " + value + " should be within its bucket upper bound " + upper, value <= upper);
+            assertTrue("bucket upper bound should be within 1/32 of " + value, upper - value <= value / LatencyHistogram.SUB_BUCKET_COUNT);
+            assertTrue("buckets should be increasing", index >= previous);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i), i % 100 == 0);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals("count", 1000, snapshot.getCount());
+        assertEquals("errors", 10, snapshot.getErrors());
+        assertEquals("error rate", 0.01, snapshot.getErrorRate(), 0.0001);
+        assertEquals("max", 1000000, snapshot.getMaxMicros());
+        assertEquals("mean", 500500, snapshot.getMeanMicros());
+        assertApproximately("p50", 500000, snapshot.getP50());
+        assertApproximately("p90", 900000, snapshot.getP90());
+        assertApproximately("p99", 990000, snapshot.getP99());
+        assertApproximately("p99.9", 999000, snapshot.getP999());
+
+        histogram.reset();
+        snapshot = histogram.snapshot();
+        assertEquals("count", 0, snapshot.getCount());
+        assertEquals("p99", 0, snapshot.getP99());
+    }
+
+    protected void assertApproximately(String message, long expected, long actual) {
+        assertTrue(message + " expected about " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class ServiceMapTest {
+
+    @Test
+    public void testSnapshotsAreSwappedOnUpdate() throws Exception {
+        ServiceMap serviceMap = new ServiceMap();
+        assertTrue(serviceMap.getServices("broker1").isEmpty());
+
+        ServiceDTO a = createService("a", "tcp://localhost:61616");
+        serviceMap.serviceUpdated("broker1", a);
+        List<ServiceDetails> services = serviceMap.getServices("broker1");
+        assertEquals(Arrays.<ServiceDetails>asList(a), services);
+        assertSame("reads should not copy", services, serviceMap.getServices("broker1"));
+        assertEquals(Arrays.asList("broker1"), serviceMap.getPaths());
+        long version = serviceMap.getVersion("broker1");
+
+        ServiceDTO b = createService("b", "tcp://localhost:61617");
+        serviceMap.serviceUpdated("broker1", b);
+        assertEquals("the old snapshot is unchanged", 1, services.size());
+        assertEquals(Arrays.<ServiceDetails>asList(a, b), serviceMap.getServices("broker1"));
+        assertTrue(serviceMap.getVersion("broker1") > version);
+        try {
+            serviceMap.getServices("broker1").clear();
+            fail("snapshots should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        serviceMap.serviceRemoved("broker1", a);
+        serviceMap.serviceRemoved("broker1", b);
+        assertTrue(serviceMap.getServices("broker1").isEmpty());
+        assertTrue(serviceMap.getPaths().isEmpty());
+    }
+
+    @Test
+    public void testListenersAreNotifiedOfChanges() throws Exception {
+        ServiceMap serviceMap = new ServiceMap();
+        final List<String> changes = new ArrayList<String>();
+        serviceMap.addListener(new ServiceMapListener() {
+            @Override
+            public void servicesChanged(ServiceMap serviceMap, String path, List<ServiceDetails> services) {
+                changes.add(path + "=" + services.size());
+            }
+        });
+
+        ServiceDTO a = createService("a", "tcp://localhost:61616");
+        serviceMap.serviceUpdated("broker1", a);
+        serviceMap.serviceUpdated("broker1", createService("a", "tcp://localhost:61616"));
+        serviceMap.serviceUpdated("broker1", createService("empty"));
+        serviceMap.serviceRemoved("broker2", a);
+        assertEquals("unchanged services should not be notified", Arrays.asList("broker1=1"), changes);
+
+        long version = serviceMap.getVersion();
+        serviceMap.serviceUpdated("broker1", createService("a", "tcp://localhost:61618"));
+        serviceMap.serviceRemoved("broker1", a);
+        assertEquals(Arrays.asList("broker1=1", "broker1=1", "broker1=0"), changes);
+        assertEquals(version + 2, serviceMap.getVersion());
+    }
+
+    protected ServiceDTO createService(String id, String... urls) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setId(id);
+        answer.setContainer("container-" + id);
+        answer.setVersion("1.0");
+        answer.setServices(Arrays.asList(urls));
+        return answer;
+    }
+}
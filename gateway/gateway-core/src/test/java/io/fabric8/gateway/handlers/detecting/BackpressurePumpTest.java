@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class BackpressurePumpTest {
+
+    @Test
+    public void testPausesReadsWhileWriteQueueIsFull() throws Exception {
+        FakeReadStream readStream = new FakeReadStream();
+        FakeWriteStream writeStream = new FakeWriteStream();
+        BackpressurePump pump = new BackpressurePump(readStream, writeStream, 10);
+        assertEquals(10, writeStream.maxSize);
+
+        pump.write(new Buffer("abcd"));
+        pump.start();
+        readStream.dataHandler.handle(new Buffer("efgh"));
+        assertFalse(readStream.paused);
+        assertEquals(8, pump.getBytesPumped());
+
+        readStream.dataHandler.handle(new Buffer("ijkl"));
+        assertTrue("Should pause once the write queue is full", readStream.paused);
+        assertTrue(pump.isPaused());
+        assertEquals(1, pump.getPauses());
+
+        writeStream.drain();
+        assertFalse("Should resume once the write queue has drained", readStream.paused);
+        assertFalse(pump.isPaused());
+        assertEquals(12, pump.getBytesPumped());
+    }
+
+    static class FakeReadStream implements ReadStream<FakeReadStream> {
+        Handler<Buffer> dataHandler;
+        boolean paused;
+
+        @Override
+        public FakeReadStream dataHandler(Handler<Buffer> handler) {
+            dataHandler = handler;
+            return this;
+        }
+
+        @Override
+        public FakeReadStream pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public FakeReadStream resume() {
+            paused = false;
+            return this;
+        }
+
+        @Override
+        public FakeReadStream exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public FakeReadStream endHandler(Handler<Void> endHandler) {
+            return this;
+        }
+    }
+
+    static class FakeWriteStream implements WriteStream<FakeWriteStream> {
+        Buffer queue = new Buffer();
+        Handler<Void> drainHandler;
+        int maxSize;
+
+        @Override
+        public FakeWriteStream write(Buffer data) {
+            queue.appendBuffer(data);
+            return this;
+        }
+
+        @Override
+        public FakeWriteStream setWriteQueueMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return queue.length() >= maxSize;
+        }
+
+        @Override
+        public FakeWriteStream drainHandler(Handler<Void> handler) {
+            drainHandler = handler;
+            return this;
+        }
+
+        @Override
+        public FakeWriteStream exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        void drain() {
+            queue = new Buffer();
+            if (drainHandler != null) {
+                drainHandler.handle(null);
+            }
+        }
+    }
+}
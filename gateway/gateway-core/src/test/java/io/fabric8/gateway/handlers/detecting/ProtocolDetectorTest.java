@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ProtocolDetectorTest {
+
+    protected Protocol[] protocols = new Protocol[]{
+        new MqttProtocol(),
+        new StompProtocol(),
+        new AmqpProtocol(),
+        new OpenwireProtocol(),
+        new HttpProtocol(),
+        new SslProtocol()
+    };
+
+    @Test
+    public void testDetectsProtocolInSingleChunkWithoutCopying() throws Exception {
+        ProtocolDetector detector = createDetector();
+        Buffer data = new Buffer("GET /index.html HTTP/1.1\r\n");
+        Protocol protocol = detector.detect(data);
+        assertEquals("http", protocol.getProtocolName());
+        assertSame(data, detector.getReceived());
+    }
+
+    @Test
+    public void testDetectsProtocolAcrossChunks() throws Exception {
+        ProtocolDetector detector = createDetector();
+        assertNull(detector.detect(new Buffer("CO")));
+        assertFalse(detector.isRejected());
+        assertNull(detector.detect(new Buffer("NNE")));
+        assertFalse(detector.isRejected());
+        Protocol protocol = detector.detect(new Buffer("CT\naccept-version:1.2\n"));
+        assertEquals("stomp", protocol.getProtocolName());
+        assertEquals("CONNECT\naccept-version:1.2\n", detector.getReceived().toString());
+    }
+
+    @Test
+    public void testRejectsUnknownProtocolEarly() throws Exception {
+        ProtocolDetector detector = createDetector();
+        assertNull(detector.detect(new Buffer("XYZZY")));
+        assertTrue("Should reject before the maximum identification length", detector.isRejected());
+
+        detector = createDetector();
+        assertNull(detector.detect(new Buffer("GE")));
+        assertFalse(detector.isRejected());
+        assertNull(detector.detect(new Buffer("X /x")));
+        assertTrue("Should reject once no method can match", detector.isRejected());
+    }
+
+    protected ProtocolDetector createDetector() {
+        int max = 0;
+        for (Protocol protocol : protocols) {
+            max = Math.max(max, protocol.getMaxIdentificationLength());
+        }
+        return new ProtocolDetector(protocols, max);
+    }
+}
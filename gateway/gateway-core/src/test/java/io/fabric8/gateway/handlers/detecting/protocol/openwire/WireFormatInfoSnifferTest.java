@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.support.MarshallingSupport;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class WireFormatInfoSnifferTest {
+
+    @Test
+    public void testSniffsHostFromWireFormatInfo() throws Exception {
+        Buffer frame = createWireFormatInfoFrame("broker1");
+        assertEquals("broker1", WireFormatInfoSniffer.sniff(frame, 0, frame.length()).protocolVirtualHost);
+    }
+
+    @Test
+    public void testSniffsWithoutHost() throws Exception {
+        Buffer frame = createWireFormatInfoFrame(null);
+        assertNull(WireFormatInfoSniffer.sniff(frame, 0, frame.length()).protocolVirtualHost);
+    }
+
+    @Test
+    public void testRejectsDeeplyNestedProperties() throws Exception {
+        Buffer frame = createWireFormatInfoFrame(null);
+        // rewrite the properties as a single entry which is a list nested deeper than allowed
+        int propertiesOffset = 4 + 1 + 8 + 4 + 1 + 4;
+        Buffer nested = frame.getBuffer(0, propertiesOffset);
+        nested.appendInt(1);
+        nested.appendShort((short) 1).appendByte((byte) 'x');
+        for (int i = 0; i <= WireFormatInfoSniffer.MAX_NESTING_DEPTH; i++) {
+            nested.appendByte(MarshallingSupport.LIST_TYPE).appendInt(1);
+        }
+        nested.appendByte(MarshallingSupport.NULL);
+        nested.setInt(propertiesOffset - 4, nested.length() - propertiesOffset);
+        nested.setInt(0, nested.length() - 4);
+        try {
+            WireFormatInfoSniffer.sniff(nested, 0, nested.length());
+            fail("Expected a ProtocolException");
+        } catch (ProtocolException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDecoderHandlesFramesSplitAcrossReads() throws Exception {
+        Buffer frame = createWireFormatInfoFrame("broker2");
+        final List<ConnectionParameters> results = new ArrayList<ConnectionParameters>();
+        OpenwireProtocolDecoder decoder = new OpenwireProtocolDecoder(new OpenwireProtocol());
+        decoder.codecHandler(new Handler<ConnectionParameters>() {
+            @Override
+            public void handle(ConnectionParameters parameters) {
+                results.add(parameters);
+            }
+        });
+        decoder.handle(frame.getBuffer(0, 3));
+        decoder.handle(frame.getBuffer(3, 20));
+        assertEquals(0, results.size());
+        decoder.handle(frame.getBuffer(20, frame.length()));
+        assertEquals(1, results.size());
+        assertEquals("broker2", results.get(0).protocolVirtualHost);
+    }
+
+    protected Buffer createWireFormatInfoFrame(String host) throws Exception {
+        WireFormatInfo info = new WireFormatInfo();
+        info.setVersion(1);
+        info.setStackTraceEnabled(true);
+        info.setCacheEnabled(true);
+        info.setCacheSize(1024);
+        info.setMaxFrameSize(OpenWireFormat.DEFAULT_MAX_FRAME_SIZE);
+        info.setProperty("ProviderName", "ActiveMQ");
+        info.setProperty("PlatformDetails", Arrays.asList("JVM", 1.7));
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("bytes", new byte[]{1, 2, 3});
+        nested.put("char", 'c');
+        info.setProperty("Nested", nested);
+        if (host != null) {
+            info.setHost(host);
+        }
+        org.fusesource.hawtbuf.Buffer marshalled = new OpenWireFormat(1).marshal(info);
+        return new Buffer(marshalled.toByteArray());
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire.codec;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.ActiveMQQueue;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.ProducerId;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.ProducerInfo;
+import org.fusesource.hawtbuf.Buffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class OpenWireFormatTest {
+
+    @Test
+    public void testMarshalThroughCopyWithCacheEnabled() throws Exception {
+        OpenWireFormat format = new OpenWireFormat(1);
+        format.setCacheEnabled(true);
+        OpenWireFormat sender = format.copy();
+        OpenWireFormat receiver = format.copy();
+        assertTrue(sender.isCacheEnabled());
+
+        for (int i = 0; i < 2; i++) {
+            ProducerInfo info = new ProducerInfo(new ProducerId("ID:test:1:1:" + i));
+            info.setDestination(new ActiveMQQueue("TEST"));
+            Buffer marshalled = sender.marshal(info);
+            ProducerInfo unmarshalled = (ProducerInfo) receiver.unmarshal(marshalled);
+            assertEquals(info.getProducerId(), unmarshalled.getProducerId());
+            assertEquals(info.getDestination(), unmarshalled.getDestination());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class HttpClientPoolTest {
+
+    protected Vertx vertx;
+    protected HttpClientPool pool;
+
+    @Before
+    public void init() {
+        vertx = VertxFactory.newVertx();
+        pool = new HttpClientPool(vertx);
+    }
+
+    @After
+    public void destroy() {
+        pool.destroy();
+        vertx.stop();
+    }
+
+    @Test
+    public void testClientsAreReusedPerBackend() throws Exception {
+        HttpClientPool.PooledHttpClient foo = pool.acquire(new URL("http://localhost:8181/foo"));
+        HttpClientPool.PooledHttpClient bar = pool.acquire(new URL("http://localhost:8181/bar"));
+        HttpClientPool.PooledHttpClient other = pool.acquire(new URL("http://localhost:8182/foo"));
+
+        assertSame("Same host and port should share a client", foo, bar);
+        assertNotSame("Different ports should use different clients", foo, other);
+        assertEquals("pool size", 2, pool.getPoolSize());
+        assertEquals("created clients", 2, pool.getCreatedClients());
+        assertEquals("in flight requests", 3, pool.getInFlightRequests());
+
+        foo.release(100);
+        bar.release(300);
+        other.release(-1);
+        assertEquals("in flight requests", 0, pool.getInFlightRequests());
+        assertEquals("average wait time", 200, pool.getAverageWaitTimeNanos());
+        assertEquals("max wait time", 300, pool.getMaxWaitTimeNanos());
+    }
+
+    @Test
+    public void testConcurrentAcquiresShareOneClient() throws Exception {
+        final URL url = new URL("http://localhost:8181/foo");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<HttpClientPool.PooledHttpClient>> tasks = new ArrayList<Callable<HttpClientPool.PooledHttpClient>>();
+            for (int i = 0; i < 32; i++) {
+                tasks.add(new Callable<HttpClientPool.PooledHttpClient>() {
+                    @Override
+                    public HttpClientPool.PooledHttpClient call() throws Exception {
+                        return pool.acquire(url);
+                    }
+                });
+            }
+            List<Future<HttpClientPool.PooledHttpClient>> results = executor.invokeAll(tasks);
+            HttpClientPool.PooledHttpClient first = results.get(0).get();
+            for (Future<HttpClientPool.PooledHttpClient> result : results) {
+                assertSame("All acquires should share the client", first, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("pool size", 1, pool.getPoolSize());
+        assertEquals("created clients", 1, pool.getCreatedClients());
+        assertEquals("in flight requests", 32, pool.getInFlightRequests());
+    }
+
+    @Test
+    public void testIdleClientsAreEvicted() throws Exception {
+        pool.setIdleTimeout(1);
+        HttpClientPool.PooledHttpClient busy = pool.acquire(new URL("http://localhost:8181/foo"));
+        HttpClientPool.PooledHttpClient idle = pool.acquire(new URL("http://localhost:8182/foo"));
+        idle.release(-1);
+        Thread.sleep(10);
+
+        pool.evictIdleClients();
+
+        assertEquals("pool size", 1, pool.getPoolSize());
+        assertEquals("evicted clients", 1, pool.getEvictedClients());
+        assertSame("busy client should be kept", busy, pool.acquire(new URL("http://localhost:8181/bar")));
+    }
+}
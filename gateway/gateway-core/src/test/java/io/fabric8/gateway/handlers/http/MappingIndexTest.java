@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class MappingIndexTest {
+
+    protected Map<String, MappedServices> mappedServices = new HashMap<String, MappedServices>();
+
+    @Test
+    public void testLongestPrefixWins() throws Exception {
+        addMapping("/cxf/", "http://localhost:8181/cxf");
+        addMapping("/cxf/crm/", "http://localhost:8182/cxf/crm");
+        addMapping("/cxf/crm/admin/", "http://localhost:8183/cxf/crm/admin");
+        MappingIndex index = MappingIndex.build(mappedServices);
+
+        assertMatch(index, "/cxf/crm/customers/123", "/cxf/crm/", "customers/123");
+        assertMatch(index, "/cxf/crm/admin/", "/cxf/crm/admin/", null);
+        assertMatch(index, "/cxf/crm", "/cxf/crm/", null);
+        assertMatch(index, "/cxf/crm?wsdl", "/cxf/crm/", "?wsdl");
+        assertMatch(index, "/cxf/crmfoo", "/cxf/", "crmfoo");
+        assertMatch(index, "/cxf/HelloWorld", "/cxf/", "HelloWorld");
+        assertNull("Should not match", index.find("/other/cxf/crm"));
+
+        MappingIndex.Entry entry = index.find("/cxf/crm/admin/users");
+        assertEquals("/cxf/crm/admin/", entry.getPath());
+        assertEquals("/cxf/crm/", entry.getParent().getPath());
+        assertEquals("/cxf/", entry.getParent().getParent().getPath());
+        assertNull(entry.getParent().getParent().getParent());
+    }
+
+    @Test
+    public void testRootMapping() throws Exception {
+        addMapping("/", "http://localhost:8181/");
+        addMapping("/foo/", "http://localhost:8182/foo");
+        MappingIndex index = MappingIndex.build(mappedServices);
+
+        assertMatch(index, "/", "/", null);
+        assertMatch(index, "/bar/thing", "/", "bar/thing");
+        assertMatch(index, "/foo/thing", "/foo/", "thing");
+    }
+
+    @Test
+    public void testEmptyIndex() throws Exception {
+        assertNull(MappingIndex.EMPTY.find("/foo"));
+        assertEquals(0, MappingIndex.EMPTY.getMappedServices().size());
+    }
+
+    protected void assertMatch(MappingIndex index, String uri, String expectedPath, String expectedRemaining) {
+        MappingIndex.Entry entry = index.find(uri);
+        assertEquals("path for " + uri, expectedPath, entry != null ? entry.getPath() : null);
+        int offset = entry.remainingOffset(uri);
+        String remaining = offset < uri.length() ? uri.substring(offset) : null;
+        assertEquals("remaining for " + uri, expectedRemaining, remaining);
+    }
+
+    protected void addMapping(String path, String service) {
+        ServiceDTO serviceDetails = new ServiceDTO();
+        serviceDetails.setContainer("local");
+        serviceDetails.setVersion("1");
+        mappedServices.put(path, new MappedServices(service, serviceDetails, new RoundRobinLoadBalancer(), false));
+    }
+}
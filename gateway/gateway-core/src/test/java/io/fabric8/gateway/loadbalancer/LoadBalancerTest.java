@@ -103,6 +103,114 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    public void testStickyLoadBalancerRebindsWhenServiceRemoved() throws Exception {
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer();
+        String first = loadBalancer.choose(services, clientRequestFacade);
+        assertEquals(first, loadBalancer.choose(services, clientRequestFacade));
+
+        List<String> remaining = new ArrayList<String>(services);
+        remaining.remove(first);
+        String second = loadBalancer.choose(remaining, clientRequestFacade);
+        assertTrue("Should have chosen a remaining service but got: " + second, remaining.contains(second));
+        assertEquals(second, loadBalancer.choose(remaining, clientRequestFacade));
+
+        assertEquals("cache hits", 2, loadBalancer.getCacheHits());
+        assertEquals("cache misses", 2, loadBalancer.getCacheMisses());
+
+        loadBalancer.retainServices(Collections.singletonList(first));
+        assertEquals("cache size", 0, loadBalancer.getCacheSize());
+    }
+
+    @Test
+    public void testStickyLoadBalancerEvictsLeastRecentlyUsed() throws Exception {
+        int cacheSize = 64;
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer(cacheSize);
+        int numberOfClients = cacheSize * 4;
+        for (int i = 0; i < numberOfClients; i++) {
+            clientRequestKey = "newClient:" + i;
+            loadBalancer.choose(services, clientRequestFacade);
+        }
+        assertTrue("Cache should be bounded but was: " + loadBalancer.getCacheSize(), loadBalancer.getCacheSize() <= cacheSize);
+        assertEquals("cache evictions", numberOfClients - loadBalancer.getCacheSize(), loadBalancer.getCacheEvictions());
+        assertEquals("cache misses", numberOfClients, loadBalancer.getCacheMisses());
+    }
+
+    @Test
+    public void testLeastOutstandingLoadBalancer() throws Exception {
+        LeastOutstandingLoadBalancer loadBalancer = new LeastOutstandingLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // with no load the requests should be spread over all the services
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertEquals("Should have all of the values: " + set, services.size(), set.size());
+
+        // keep all but the last service busy
+        for (int i = 0; i < services.size() - 1; i++) {
+            loadBalancer.requestStarted(services.get(i));
+        }
+        String idle = services.get(services.size() - 1);
+        for (int i = 0; i < requestCount; i++) {
+            assertEquals("Should choose the idle service", idle, loadBalancer.choose(services, clientRequestFacade));
+        }
+
+        loadBalancer.requestStarted(idle);
+        loadBalancer.requestStarted(idle);
+        loadBalancer.requestCompleted(services.get(0));
+        assertEquals(services.get(0), loadBalancer.choose(services, clientRequestFacade));
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesLoadBalancer() throws Exception {
+        PowerOfTwoChoicesLoadBalancer loadBalancer = new PowerOfTwoChoicesLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // the busiest service can never win a choice between two distinct services
+        String busy = services.get(0);
+        loadBalancer.requestStarted(busy);
+        for (int i = 0; i < 100; i++) {
+            String chosen = loadBalancer.choose(services, clientRequestFacade);
+            assertTrue("Should not choose the busy service", !busy.equals(chosen));
+        }
+
+        List<String> pair = Arrays.asList(services.get(0), services.get(1));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(services.get(1), loadBalancer.choose(pair, clientRequestFacade));
+        }
+    }
+
+    @Test
+    public void testEwmaLoadBalancer() throws Exception {
+        EwmaLoadBalancer loadBalancer = new EwmaLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        String slow = services.get(0);
+        for (String service : services) {
+            loadBalancer.recordResponseTime(service, service.equals(slow) ? 50000000L : 1000000L);
+        }
+        for (int i = 0; i < requestCount; i++) {
+            String chosen = loadBalancer.choose(services, clientRequestFacade);
+            assertTrue("Should not choose the slow service", !slow.equals(chosen));
+        }
+
+        // a fast service with many outstanding requests costs more than the slow one
+        for (int i = 1; i < services.size(); i++) {
+            for (int j = 0; j < 100; j++) {
+                loadBalancer.requestStarted(services.get(i));
+            }
+        }
+        assertEquals(slow, loadBalancer.choose(services, clientRequestFacade));
+
+        // services which have not responded yet are tried first
+        List<String> withNewService = new ArrayList<String>(services);
+        withNewService.add("http://localhost:8186/foo");
+        assertEquals("http://localhost:8186/foo", loadBalancer.choose(withNewService, clientRequestFacade));
+
+        loadBalancer.retainServices(Collections.singletonList(slow));
+        assertEquals(0, loadBalancer.getOutstanding(services.get(1)));
+        assertEquals(0.0, loadBalancer.getAverageResponseTime(services.get(1)), 0.0);
+    }
+
     protected List<String> performRequests(LoadBalancer loadBalancer) {
         List<String> answer = new ArrayList<String>();
         for (int i = 0; i < requestCount; i++) {
@@ -20,13 +20,16 @@ import io.fabric8.zookeeper.internal.SimplePathTemplate;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -150,10 +153,30 @@ public class HttpMappingRuleBase implements HttpMappingRule {
                     }
                 }
             }
+            if (remove) {
+                retainServices();
+            }
         }
         fireMappingRulesChanged();
     }
 
+    /**
+     * Discards any state the load balancer, which all the mapping rules share, holds for services which are no longer mapped
+     */
+    protected void retainServices() {
+        if (loadBalancer instanceof StickyLoadBalancer || loadBalancer instanceof LoadAwareLoadBalancer) {
+            Set<String> services = new HashSet<String>();
+            for (MappedServices mappedServices : mappingRules.values()) {
+                services.addAll(mappedServices.getServiceUrls());
+            }
+            if (loadBalancer instanceof StickyLoadBalancer) {
+                ((StickyLoadBalancer) loadBalancer).retainServices(services);
+            } else {
+                ((LoadAwareLoadBalancer) loadBalancer).retainServices(services);
+            }
+        }
+    }
+
     @Override
     public void addChangeListener(Runnable listener) {
         changeListeners.add(listener);
@@ -118,7 +118,10 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_OUTSTANDING_LOAD_BALANCER, value = "Least Outstanding"),
+                    @PropertyOption(name = LoadBalancers.POWER_OF_TWO_CHOICES_LOAD_BALANCER, value = "Power of Two Choices"),
+                    @PropertyOption(name = LoadBalancers.EWMA_LOAD_BALANCER, value = "Response Time (EWMA)")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy to use when multiple endpoints can service the client conneciton")
     private String loadBalancerType;
@@ -127,6 +130,10 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "writeQueueMaxSize", intValue = DetectingGateway.DEFAULT_WRITE_QUEUE_MAX_SIZE,
+            label = "Write Queue Max Size", description = "The number of bytes which may be queued to be written to a client or broker before the gateway stops reading from the other side of the connection")
+    private int writeQueueMaxSize = DetectingGateway.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+
     @Property(name = "sslProtocol", value="TLS",
             label = "SSL Protocol", description = "Example: SSL, TLS, TLSv1, TLSv2 etc.")
     private String sslProtocol;
@@ -274,6 +281,7 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         gateway.setShutdownTacker(shutdownTacker);
         gateway.setServiceLoadBalancer(serviceLoadBalancer);
         gateway.setDefaultVirtualHost(defaultVirtualHost);
+        gateway.setWriteQueueMaxSize(writeQueueMaxSize);
         return gateway;
     }
 
@@ -48,11 +48,13 @@ import org.apache.felix.scr.annotations.Service;
 
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.detecting.DetectingGatewayWebSocketHandler;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
 import io.fabric8.gateway.handlers.http.HttpGateway;
 import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.handlers.http.MappingIndex;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +86,18 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Property(name = "websocketGatewayPrefix", label = "Web Socket Path Prefix", description = "The prefix a websocket requests must have")
     private String websocketGatewayPrefix = "";
 
+    @Property(name = "backendKeepAlive", boolValue = true, label = "Back end keep alive", description = "If enabled then connections to the back end services are kept alive and reused across proxied requests")
+    private boolean backendKeepAlive = true;
+
+    @Property(name = "backendPipelining", boolValue = false, label = "Back end pipelining", description = "If enabled then HTTP pipelining is used on the connections to the back end services")
+    private boolean backendPipelining = false;
+
+    @Property(name = "backendMaxConnections", intValue = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_BACKEND, label = "Back end max connections", description = "The maximum number of pooled connections to each back end service (host and port)")
+    private int backendMaxConnections = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_BACKEND;
+
+    @Property(name = "backendIdleTimeout", longValue = HttpClientPool.DEFAULT_IDLE_TIMEOUT, label = "Back end idle timeout", description = "The number of milliseconds a back end client can be unused before its connections are closed")
+    private long backendIdleTimeout = HttpClientPool.DEFAULT_IDLE_TIMEOUT;
+
     @Reference
     private Configurer configurer;
 
@@ -100,9 +114,17 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     
     private HttpGatewayServer server;
     private HttpGatewayHandler handler;
+    private HttpClientPool clientPool;
     private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
+    private volatile MappingIndex mappingIndex = MappingIndex.EMPTY;
+    private final Runnable mappingRulesChangeListener = new Runnable() {
+        @Override
+        public void run() {
+            rebuildMappingIndex();
+        }
+    };
 
     ShutdownTracker shutdownTracker = new ShutdownTracker();
     private FabricHTTPGatewayInfo fabricHTTPGatewayInfoMBean;
@@ -131,7 +153,13 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         configurer.configure(configuration, this);
 
         Vertx vertx = getVertx();
-        handler = new HttpGatewayHandler(vertx, this);
+        clientPool = new HttpClientPool(vertx);
+        clientPool.setKeepAlive(backendKeepAlive);
+        clientPool.setPipelining(backendPipelining);
+        clientPool.setMaxConnectionsPerBackend(backendMaxConnections);
+        clientPool.setIdleTimeout(backendIdleTimeout);
+        clientPool.init();
+        handler = new HttpGatewayHandler(vertx, this, clientPool);
         websocketHandler.setPathPrefix(websocketGatewayPrefix);
         server = new HttpGatewayServer(vertx, handler, enableWebSocketGateway ? websocketHandler : null, port);
         server.init();
@@ -141,37 +169,58 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         if (server != null) {
             server.destroy();
         }
+        if (clientPool != null) {
+            clientPool.destroy();
+        }
     }
     
     @Override
     public void addCallDetailRecord(CallDetailRecord cdr) {
-    	fabricHTTPGatewayInfoMBean.setLastCallDate(cdr.getCallDate().toString());
-    	fabricHTTPGatewayInfoMBean.registerCall(cdr.getCallTimeNanos());
-    	if (cdr.getError()!=null) {
-    		fabricHTTPGatewayInfoMBean.setLastError(cdr.getError());
-    	}
+        fabricHTTPGatewayInfoMBean.registerCall(null, null, cdr.getCallTime(), cdr.getCallTimeNanos(), cdr.getError());
+    }
+
+    @Override
+    public void recordCall(String mappingPath, String serviceUrl, long callTimeNanos, String error) {
+        fabricHTTPGatewayInfoMBean.registerCall(mappingPath, serviceUrl, System.currentTimeMillis(), callTimeNanos, error);
     }
 
     @Override
     public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
         mappingRuleConfigurations.add(mappingRuleConfiguration);
+        mappingRuleConfiguration.addChangeListener(mappingRulesChangeListener);
+        rebuildMappingIndex();
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
+        mappingRuleConfiguration.removeChangeListener(mappingRulesChangeListener);
         mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        rebuildMappingIndex();
     }
 
     @Override
     public Map<String, MappedServices> getMappedServices() {
         assertValid();
+        return mappingIndex.getMappedServices();
+    }
+
+    @Override
+    public MappingIndex getMappingIndex() {
+        assertValid();
+        return mappingIndex;
+    }
+
+    /**
+     * Rebuilds the index of mapped services from all the mapping rules and swaps it in atomically
+     */
+    synchronized void rebuildMappingIndex() {
         Map<String, MappedServices> answer = new HashMap<String, MappedServices>();
         for (HttpMappingRule mappingRuleConfiguration : mappingRuleConfigurations) {
             mappingRuleConfiguration.appendMappedServices(answer);
         }
-        return answer;
+        mappingIndex = MappingIndex.build(answer);
     }
 
     @Override
@@ -209,6 +258,10 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     int getPort() {
         return port;
     }
+
+    HttpClientPool getClientPool() {
+        return clientPool;
+    }
     
     String getHost() {
     	return host;
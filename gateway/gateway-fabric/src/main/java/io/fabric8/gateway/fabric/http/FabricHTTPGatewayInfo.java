@@ -17,12 +17,19 @@ package io.fabric8.gateway.fabric.http;
 
 import io.fabric8.common.util.ShutdownTracker;
 import io.fabric8.gateway.fabric.jmx.FabricGatewayInfoMBean;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
+import io.fabric8.gateway.handlers.http.RouteStatistics;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,10 +41,12 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
 
     private final FabricHTTPGateway fabricHTTPGateway;
     private ObjectName objectName;
-    private long numberOfInvocations = 0l;
-    private long averageCallTimeNanos = 0l;
-    private String lastError;
-    private String lastCallDate;
+    private final AtomicLong numberOfInvocations = new AtomicLong();
+    private final AtomicLong totalCallTimeNanos = new AtomicLong();
+    private final RouteStatistics routeStatistics = new RouteStatistics();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private volatile String lastError;
+    private volatile long lastCallTime;
     
     public FabricHTTPGatewayInfo(FabricHTTPGateway fabricHTTPGateway) {
 		super();
@@ -86,11 +95,20 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
 
     @Override
 	public long getNumberOfInvocations() {
-		return numberOfInvocations;
+		return numberOfInvocations.get();
 	}
-    
-    public void registerCall(long callTimeNanos) {
-    	averageCallTimeNanos = (averageCallTimeNanos * numberOfInvocations + callTimeNanos)/++numberOfInvocations;
+
+    /**
+     * Records a call against the overall statistics and, if it was proxied, the statistics of its route
+     */
+    public void registerCall(String mappingPath, String serviceUrl, long callTime, long callTimeNanos, String error) {
+        numberOfInvocations.incrementAndGet();
+        totalCallTimeNanos.addAndGet(callTimeNanos);
+        lastCallTime = callTime;
+        if (error != null) {
+            setLastError(new Date(callTime) + ":" + error);
+        }
+        routeStatistics.record(mappingPath, serviceUrl, callTimeNanos, error != null);
     }
     
     public void setLastError(String error) {
@@ -102,29 +120,83 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
     	return lastError;
     }
     
-    public void setLastCallDate(String callDate) {
-    	lastCallDate = callDate;
-    }
-    
     @Override
     public String getLastCallDate() {
-    	if (lastCallDate!=null)
-    		return lastCallDate.toString();
+        long callTime = lastCallTime;
+    	if (callTime > 0)
+    		return new Date(callTime).toString();
     	else
     		return null;
     }
     
     @Override 
     public long getAvarageCallTimeNanos() {
-    	return averageCallTimeNanos;
+        long count = numberOfInvocations.get();
+    	return count > 0 ? totalCallTimeNanos.get() / count : 0l;
+    }
+
+    @Override
+    public String routeStatisticsAsJson() {
+        try {
+            return mapper.writeValueAsString(routeStatistics.snapshot());
+        } catch (IOException e) {
+            LOG.warn("Failed to render route statistics as JSON: " + e, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void resetRouteStatistics() {
+        routeStatistics.reset();
     }
     
+    @Override
+    public int getBackendClientPoolSize() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getPoolSize() : 0;
+    }
+
+    @Override
+    public long getBackendClientsCreated() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getCreatedClients() : 0L;
+    }
+
+    @Override
+    public long getBackendClientsEvicted() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getEvictedClients() : 0L;
+    }
+
+    @Override
+    public long getBackendInFlightRequests() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getInFlightRequests() : 0L;
+    }
+
+    @Override
+    public long getBackendAverageWaitTimeNanos() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getAverageWaitTimeNanos() : 0L;
+    }
+
+    @Override
+    public long getBackendMaxWaitTimeNanos() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getMaxWaitTimeNanos() : 0L;
+    }
+
     @Override
     public void resetStatistics() {
-    	averageCallTimeNanos = 0l;
-    	numberOfInvocations = 0l;
-    	lastCallDate = null;
+    	totalCallTimeNanos.set(0l);
+    	numberOfInvocations.set(0l);
+    	lastCallTime = 0l;
     	lastError = null;
+        routeStatistics.reset();
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        if (pool != null) {
+            pool.resetStatistics();
+        }
     }
    
     public ObjectName getObjectName() throws MalformedObjectNameException {
@@ -77,7 +77,10 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_OUTSTANDING_LOAD_BALANCER, value = "Least Outstanding"),
+                    @PropertyOption(name = LoadBalancers.POWER_OF_TWO_CHOICES_LOAD_BALANCER, value = "Power of Two Choices"),
+                    @PropertyOption(name = LoadBalancers.EWMA_LOAD_BALANCER, value = "Response Time (EWMA)")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy used")
     private String loadBalancerType;
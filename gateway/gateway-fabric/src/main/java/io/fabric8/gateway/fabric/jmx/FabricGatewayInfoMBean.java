@@ -30,5 +30,19 @@ public interface FabricGatewayInfoMBean {
     String getLastError();
     String getLastCallDate();
     long getAvarageCallTimeNanos();
+    int getBackendClientPoolSize();
+    long getBackendClientsCreated();
+    long getBackendClientsEvicted();
+    long getBackendInFlightRequests();
+    long getBackendAverageWaitTimeNanos();
+    long getBackendMaxWaitTimeNanos();
+
+    /**
+     * Returns the latency percentiles (in microseconds), error counts and rates of each back end service
+     * indexed by mapping rule path since the route statistics were last reset
+     */
+    String routeStatisticsAsJson();
+
+    void resetRouteStatistics();
     void resetStatistics();
 }
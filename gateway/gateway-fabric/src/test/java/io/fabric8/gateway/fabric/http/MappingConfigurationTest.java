@@ -23,6 +23,7 @@ import java.util.Map;
 import io.fabric8.gateway.ServiceDTO;
 import io.fabric8.gateway.fabric.support.http.HttpMappingRuleBase;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.loadbalancer.LeastOutstandingLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
 import io.fabric8.zookeeper.internal.SimplePathTemplate;
@@ -106,6 +107,22 @@ public class MappingConfigurationTest {
         assertEquals("mapping size",  2, httpGateway.getMappedServices().size());
     }
 
+    @Test
+    public void testRemovedServicesAreDiscardedByTheLoadBalancer() throws Exception {
+        LeastOutstandingLoadBalancer leastOutstanding = new LeastOutstandingLoadBalancer();
+        loadBalancer = leastOutstanding;
+        setUriTemplate("{contextPath}/", oldVersion);
+
+        addQuickstartServices();
+        leastOutstanding.requestStarted("http://localhost:8182/cxf/crm");
+        leastOutstanding.requestStarted("http://localhost:8183/cxf/HelloWorld");
+
+        removeService("rest/CustomerService/crm/1.0/resty", "http://localhost:8182/cxf/crm", oldVersion);
+
+        assertEquals(0, leastOutstanding.getOutstanding("http://localhost:8182/cxf/crm"));
+        assertEquals(1, leastOutstanding.getOutstanding("http://localhost:8183/cxf/HelloWorld"));
+    }
+
     protected void setUriTemplate(String uriTemplate, String version) {
         config = new HttpMappingRuleBase(
                 new SimplePathTemplate(uriTemplate), version, enabledVersion, loadBalancer, reverseHeaders);
@@ -123,6 +140,14 @@ public class MappingConfigurationTest {
         config.updateMappingRules(false, path, Arrays.asList(service), params, serviceDetails);
     }
 
+    protected void removeService(String path, String service, String version) {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("version", version);
+        ServiceDTO serviceDetails = new ServiceDTO();
+        serviceDetails.setVersion(version);
+        config.updateMappingRules(true, path, Arrays.asList(service), params, serviceDetails);
+    }
+
     protected void assertMapping(String path, String service) {
         Map<String, MappedServices> mappingRules = httpGateway.getMappedServices();
         assertTrue("Should have some mapping rules", mappingRules.size() > 0);
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A base class for load balancers which take into account the current load on each service.
+ * <p>
+ * The gateway reports the lifecycle of each request or connection it routes to a service via
+ * {@link #requestStarted(Object)}, {@link #requestCompleted(Object)} and
+ * {@link #recordResponseTime(Object, long)} which are used to keep track of the number of
+ * outstanding requests and an exponentially weighted moving average of the response time of each service.
+ */
+public abstract class LoadAwareLoadBalancer implements LoadBalancer {
+    public static final long DEFAULT_DECAY_TIME_MILLIS = 10 * 1000L;
+
+    private final ConcurrentMap<Object, ServiceLoad> loads = new ConcurrentHashMap<Object, ServiceLoad>();
+    private final long decayTimeNanos;
+
+    protected LoadAwareLoadBalancer() {
+        this(DEFAULT_DECAY_TIME_MILLIS);
+    }
+
+    /**
+     * @param decayTimeMillis the time over which older response time samples lose most of their weight
+     */
+    protected LoadAwareLoadBalancer(long decayTimeMillis) {
+        this.decayTimeNanos = Math.max(1L, decayTimeMillis) * 1000000L;
+    }
+
+    /**
+     * Invoked when a request or connection has been routed to the given service
+     */
+    public void requestStarted(Object service) {
+        if (service != null) {
+            getServiceLoad(service).outstanding.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invoked when a request or connection to the given service has completed or failed
+     */
+    public void requestCompleted(Object service) {
+        if (service != null) {
+            ServiceLoad load = loads.get(service);
+            if (load != null && load.outstanding.decrementAndGet() < 0) {
+                load.outstanding.set(0);
+            }
+        }
+    }
+
+    /**
+     * Records how long the given service took to respond to a request or accept a connection
+     */
+    public void recordResponseTime(Object service, long responseTimeNanos) {
+        if (service != null && responseTimeNanos >= 0) {
+            getServiceLoad(service).observe(responseTimeNanos, decayTimeNanos);
+        }
+    }
+
+    /**
+     * Discards the load statistics of any service not in the given services
+     */
+    public void retainServices(Collection<?> services) {
+        loads.keySet().retainAll(services);
+    }
+
+    /**
+     * Returns the number of requests or connections currently outstanding on the given service
+     */
+    public int getOutstanding(Object service) {
+        ServiceLoad load = loads.get(service);
+        return load != null ? load.outstanding.get() : 0;
+    }
+
+    /**
+     * Returns the moving average response time of the given service in nanoseconds or 0 if it is not yet known
+     */
+    public double getAverageResponseTime(Object service) {
+        ServiceLoad load = loads.get(service);
+        return load != null ? load.getAverage() : 0.0;
+    }
+
+    protected ServiceLoad getServiceLoad(Object service) {
+        ServiceLoad answer = loads.get(service);
+        if (answer == null) {
+            ServiceLoad newLoad = new ServiceLoad();
+            answer = loads.putIfAbsent(service, newLoad);
+            if (answer == null) {
+                answer = newLoad;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * The outstanding request count and moving average response time of a service
+     */
+    protected static final class ServiceLoad {
+        private final AtomicInteger outstanding = new AtomicInteger();
+        // the average is stored as the raw bits of a double so it can be updated with a CAS
+        private final AtomicLong average = new AtomicLong(Double.doubleToRawLongBits(0.0));
+        private volatile long lastObserved;
+
+        void observe(long responseTimeNanos, long decayTimeNanos) {
+            long now = System.nanoTime();
+            long elapsed = lastObserved == 0 ? decayTimeNanos : now - lastObserved;
+            lastObserved = now;
+            double weight = 1.0 - Math.exp(-(double) Math.max(0L, elapsed) / decayTimeNanos);
+            while (true) {
+                long bits = average.get();
+                double current = Double.longBitsToDouble(bits);
+                double next = current == 0.0 ? responseTimeNanos : current + weight * (responseTimeNanos - current);
+                if (average.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                    return;
+                }
+            }
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public double getAverage() {
+            return Double.longBitsToDouble(average.get());
+        }
+    }
+}
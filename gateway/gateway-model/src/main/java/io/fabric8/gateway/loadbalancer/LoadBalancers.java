@@ -28,6 +28,9 @@ public class LoadBalancers {
     public static final String RANDOM_LOAD_BALANCER = "random";
     public static final String ROUND_ROBIN_LOAD_BALANCER = "roundrobin";
     public static final String STICKY_LOAD_BALANCER = "sticky";
+    public static final String LEAST_OUTSTANDING_LOAD_BALANCER = "leastoutstanding";
+    public static final String POWER_OF_TWO_CHOICES_LOAD_BALANCER = "poweroftwochoices";
+    public static final String EWMA_LOAD_BALANCER = "ewma";
 
     public static final int STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE = 10000;
 
@@ -38,6 +41,12 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer();
         } else if (STICKY_LOAD_BALANCER.equals(loadBalancerType)) {
             return new StickyLoadBalancer(stickyLoadBalancerCacheSize);
+        } else if (LEAST_OUTSTANDING_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new LeastOutstandingLoadBalancer();
+        } else if (POWER_OF_TWO_CHOICES_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new PowerOfTwoChoicesLoadBalancer();
+        } else if (EWMA_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new EwmaLoadBalancer();
         } else {
             if (Strings.isNotBlank(loadBalancerType)) {
                 LOG.warn("Ignored invalid load balancer type: " + loadBalancerType);
@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks two services at random and chooses the one with fewer outstanding requests or connections.
+ * <p>
+ * This avoids the herding of {@link LeastOutstandingLoadBalancer} when many gateways or event loops
+ * see the same load at once while still steering traffic away from saturated services.
+ */
+public class PowerOfTwoChoicesLoadBalancer extends LoadAwareLoadBalancer {
+
+    @Override
+    public String toString() {
+        return "PowerOfTwoChoicesLoadBalancer{}";
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 1) {
+            return services.get(0);
+        } else if (size > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            T service1 = services.get(first);
+            T service2 = services.get(second);
+            return getOutstanding(service2) < getOutstanding(service1) ? service2 : service1;
+        }
+        return null;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,11 +25,16 @@ import java.util.Map;
  * Implements a sticky load balancer where a unique client ID String is requested from the
  * {@link ClientRequestFacade} and used to keep track of which
  * service was used last time and to use that if its possible and keep a cache of requests to
+ * <p>
+ * The cache is split into a number of independently locked LRU stripes selected by the hash of
+ * the client ID so that concurrent event loops rarely contend on the same lock.
  */
 public class StickyLoadBalancer implements LoadBalancer {
+    private static final int MAXIMUM_STRIPES = 16;
+
     private final LoadBalancer firstRequestLoadBalancer;
     private final int maximumCacheSize;
-    private final Map<String, Object> requestCache;
+    private final Stripe[] stripes;
 
     public StickyLoadBalancer() {
         this(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
@@ -40,12 +47,15 @@ public class StickyLoadBalancer implements LoadBalancer {
     public StickyLoadBalancer(int maximumCacheSize, LoadBalancer firstRequestLoadBalancer) {
         this.firstRequestLoadBalancer = firstRequestLoadBalancer;
         this.maximumCacheSize = maximumCacheSize;
-        this.requestCache = new LinkedHashMap(maximumCacheSize + 1, .75F, true) {
-            // This method is called just after a new entry has been added
-            public boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > StickyLoadBalancer.this.maximumCacheSize;
-            }
-        };
+        int stripeCount = 1;
+        while (stripeCount < MAXIMUM_STRIPES && stripeCount * 2 <= maximumCacheSize) {
+            stripeCount *= 2;
+        }
+        int stripeSize = (maximumCacheSize + stripeCount - 1) / stripeCount;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeSize);
+        }
     }
 
     @Override
@@ -58,25 +68,132 @@ public class StickyLoadBalancer implements LoadBalancer {
     @Override
     public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
         String clientKey = requestFacade.getClientRequestKey();
+        Stripe stripe = stripeFor(clientKey);
         T answer;
-        synchronized (requestCache) {
-            answer = (T) requestCache.get(clientKey);
+        synchronized (stripe) {
+            answer = (T) stripe.get(clientKey);
+            if (answer != null && !services.contains(answer)) {
+                // the service we were stuck to has gone away so lets pick another
+                stripe.remove(clientKey);
+                answer = null;
+            }
             if (answer == null) {
+                stripe.misses++;
                 answer = firstRequestLoadBalancer.choose(services, requestFacade);
                 if (answer != null) {
-                    requestCache.put(clientKey, answer);
+                    stripe.put(clientKey, answer);
                 }
+            } else {
+                stripe.hits++;
             }
         }
         return answer;
     }
 
+    /**
+     * Removes any cached client IDs which are bound to a service which is not in the given services
+     */
+    public void retainServices(Collection<?> services) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Object> iter = stripe.values().iterator();
+                while (iter.hasNext()) {
+                    if (!services.contains(iter.next())) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Clears the cache of request client IDs to the bound service
      */
     public void flush() {
-        synchronized (requestCache) {
-            requestCache.clear();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of client IDs currently bound to a service
+     */
+    public int getCacheSize() {
+        int answer = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                answer += stripe.size();
+            }
+        }
+        return answer;
+    }
+
+    public long getCacheHits() {
+        long answer = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                answer += stripe.hits;
+            }
+        }
+        return answer;
+    }
+
+    public long getCacheMisses() {
+        long answer = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                answer += stripe.misses;
+            }
+        }
+        return answer;
+    }
+
+    public long getCacheEvictions() {
+        long answer = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                answer += stripe.evictions;
+            }
+        }
+        return answer;
+    }
+
+    public int getMaximumCacheSize() {
+        return maximumCacheSize;
+    }
+
+    private Stripe stripeFor(String clientKey) {
+        int hash = clientKey != null ? clientKey.hashCode() : 0;
+        // spread the hash bits as the stripe count is a power of 2
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    /**
+     * An access ordered LRU map of client IDs to services along with its statistics which are all
+     * guarded by the stripe's own monitor
+     */
+    private static final class Stripe extends LinkedHashMap<String, Object> {
+        private final int maximumSize;
+        long hits;
+        long misses;
+        long evictions;
+
+        Stripe(int maximumSize) {
+            super(maximumSize + 1, .75F, true);
+            this.maximumSize = maximumSize;
+        }
+
+        // This method is called just after a new entry has been added
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            if (size() > maximumSize) {
+                evictions++;
+                return true;
+            }
+            return false;
         }
     }
 }
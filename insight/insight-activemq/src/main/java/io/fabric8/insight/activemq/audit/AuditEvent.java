@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.activemq.audit;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.activemq.command.Message;
+
+/**
+ * An immutable snapshot of the headers of an audited message which is rendered by the auditor's workers
+ * once the broker has moved on. Its properties are the ones the templates use as <code>message</code>.
+ */
+public final class AuditEvent {
+
+    private final String event;
+    private final long timestamp;
+    private final String messageId;
+    private final String destination;
+    private final Map<String, Object> properties;
+
+    AuditEvent(String event, long timestamp, Message message, String destination) throws IOException {
+        this.event = event;
+        this.timestamp = timestamp;
+        this.messageId = String.valueOf(message.getMessageId());
+        this.destination = destination;
+        Map<String, Object> messageProperties = message.getProperties();
+        this.properties = messageProperties.isEmpty()
+                ? Collections.<String, Object>emptyMap()
+                : Collections.unmodifiableMap(new HashMap<String, Object>(messageProperties));
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+}
@@ -16,13 +16,24 @@
 package io.fabric8.insight.activemq.audit;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import io.fabric8.common.util.IOHelpers;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.ProducerBrokerExchange;
@@ -30,6 +41,7 @@ import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.broker.region.Subscription;
 import org.apache.activemq.command.Message;
 import io.fabric8.insight.activemq.base.SwichtableBrokerPlugin;
+import io.fabric8.insight.metrics.model.MetricsJSON;
 import io.fabric8.insight.storage.StorageService;
 import org.mvel2.ParserContext;
 import org.mvel2.templates.CompiledTemplate;
@@ -41,11 +53,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Audits the messages going through the broker.
+ * <p>
+ * The broker threads only take an immutable snapshot of the headers of the messages which are sampled and put it
+ * on a bounded queue, a pool of worker threads renders them to JSON and stores them. When the queue is full the
+ * events are dropped and counted.
  */
 public class Auditor extends SwichtableBrokerPlugin implements ManagedService, AuditorMBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Auditor.class);
 
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_WORKERS = 1;
+
     private StorageService storage;
     private String type = "activemq";
 
@@ -55,6 +75,20 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     private Map<URL, String> sources = new ConcurrentHashMap<URL, String>();
     private URL defaultTemplateUrl = getClass().getResource("default.mvel");
 
+    private volatile boolean useTemplates;
+    private volatile double sampleRate = 1.0;
+    private volatile Map<String, Double> destSampleRates = Collections.emptyMap();
+    private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+    private volatile int workers = DEFAULT_WORKERS;
+    private volatile BlockingQueue<AuditEvent> queue = new ArrayBlockingQueue<AuditEvent>(queueSize);
+    private volatile ExecutorService executor;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
     public Auditor(StorageService storage) {
         super(false);
         this.storage = storage;
@@ -66,11 +100,74 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         }
     }
 
+    @Override
+    public void stop() throws Exception {
+        try {
+            super.stop();
+        } finally {
+            stopWorkers();
+        }
+    }
+
+    protected synchronized void startWorkers() {
+        if (executor == null) {
+            if (queue.remainingCapacity() + queue.size() != queueSize) {
+                BlockingQueue<AuditEvent> old = queue;
+                queue = new ArrayBlockingQueue<AuditEvent>(queueSize);
+                old.drainTo(queue, queueSize);
+                dropped.addAndGet(old.size());
+                old.clear();
+            }
+            final AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "InsightAuditor-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            for (int i = 0; i < workers; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        processEvents();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Applies a new queue size or number of workers, restarting the workers if they are running.
+     * The queued events are kept as long as they fit in the new queue.
+     */
+    protected synchronized void updateWorkers(int queueSize, int workers) {
+        if (queueSize == this.queueSize && workers == this.workers) {
+            return;
+        }
+        this.queueSize = queueSize;
+        this.workers = workers;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            startWorkers();
+        }
+    }
+
+    protected synchronized void stopWorkers() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            dropped.addAndGet(queue.size());
+            queue.clear();
+        }
+    }
+
     @Override
     public void send(ProducerBrokerExchange producerExchange, Message messageSend) throws Exception {
         if (isEnabled(messageSend)) {
-            String json = toJson("Sent", messageSend);
-            storage.store(type, System.currentTimeMillis(), json);
+            capture("Sent", messageSend);
         }
         super.send(producerExchange, messageSend);
     }
@@ -78,8 +175,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void messageConsumed(ConnectionContext context, MessageReference messageReference) {
         if (isEnabled(messageReference)) {
-            String json = toJson("Consumed", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            capture("Consumed", messageReference);
         }
         super.messageConsumed(context, messageReference);
     }
@@ -87,8 +183,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void messageDelivered(ConnectionContext context, MessageReference messageReference) {
         if (isEnabled(messageReference)) {
-            String json = toJson("Delivered", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            capture("Delivered", messageReference);
         }
         super.messageDelivered(context, messageReference);
     }
@@ -96,8 +191,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     @Override
     public void messageDiscarded(ConnectionContext context, Subscription sub, MessageReference messageReference) {
         if (isEnabled(messageReference)) {
-            String json = toJson("Discarded", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            capture("Discarded", messageReference);
         }
         super.messageDiscarded(context, sub, messageReference);
     }
@@ -107,17 +201,112 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         this.properties = properties;
     }
 
-    protected String toJson(String eventType, MessageReference messageReference) {
+    @Override
+    public void update(Map<String, String> properties) {
+        super.update(properties);
+        double sampleRate = 1.0;
+        int queueSize = DEFAULT_QUEUE_SIZE;
+        int workers = DEFAULT_WORKERS;
+        Map<String, Double> destSampleRates = new HashMap<String, Double>();
+        if (properties != null) {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                String key = entry.getKey();
+                String val = entry.getValue();
+                try {
+                    if ("sampleRate".equals(key)) {
+                        sampleRate = Double.parseDouble(val);
+                    } else if (key.startsWith("sampleRate.")) {
+                        destSampleRates.put(key.substring("sampleRate.".length()), Double.parseDouble(val));
+                    } else if ("queueSize".equals(key)) {
+                        queueSize = Integer.parseInt(val);
+                    } else if ("workers".equals(key)) {
+                        workers = Integer.parseInt(val);
+                    } else if ("useTemplates".equals(key)) {
+                        useTemplates = Boolean.parseBoolean(val);
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Invalid value " + val + " for " + key);
+                }
+            }
+        }
+        if (queueSize <= 0) {
+            LOGGER.warn("Invalid value " + queueSize + " for queueSize");
+            queueSize = this.queueSize;
+        }
+        if (workers <= 0) {
+            LOGGER.warn("Invalid value " + workers + " for workers");
+            workers = this.workers;
+        }
+        updateWorkers(queueSize, workers);
+        this.sampleRate = sampleRate;
+        this.destSampleRates = destSampleRates;
+    }
+
+    /**
+     * Takes a snapshot of the message if it is sampled and queues it for the workers, this runs on the broker threads
+     */
+    protected void capture(String eventType, MessageReference messageReference) {
+        Message message = messageReference.getMessage();
+        String destination = String.valueOf(message.getDestination());
+        Double destSampleRate = destSampleRates.get(destination);
+        double rate = destSampleRate != null ? destSampleRate : sampleRate;
+        if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            sampledOut.incrementAndGet();
+            return;
+        }
+        if (executor == null) {
+            startWorkers();
+        }
+        AuditEvent event;
+        try {
+            event = new AuditEvent(eventType, System.currentTimeMillis(), message, destination);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the properties of message " + message.getMessageId(), e);
+            failed.incrementAndGet();
+            return;
+        }
+        if (queue.offer(event)) {
+            captured.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void processEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            AuditEvent event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                storage.store(type, event.getTimestamp(), toJson(event));
+                stored.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                LOGGER.warn("Unable to store audit event of message " + event.getMessageId(), e);
+            }
+        }
+    }
+
+    protected String toJson(AuditEvent event) {
+        if (!useTemplates && getTemplateUrl(event.getEvent()) == null) {
+            try {
+                return serialize(event);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not serialize audit event of message " + event.getMessageId(), e);
+            }
+        }
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(Auditor.class.getClassLoader());
-            CompiledTemplate template = getTemplate(eventType, messageReference);
+            CompiledTemplate template = getTemplate(event.getEvent());
             Map<String, Object> vars = new HashMap<String, Object>();
-            vars.put("event", eventType);
+            vars.put("event", event.getEvent());
             vars.put("host", System.getProperty("runtime.id"));
-            vars.put("timestamp", new Date());
-            vars.put("message", messageReference.getMessage());
-            vars.put("messageReference", messageReference);
+            vars.put("timestamp", new Date(event.getTimestamp()));
+            vars.put("message", event);
 
             return TemplateRuntime.execute(template, context, vars).toString();
         } finally {
@@ -125,8 +314,32 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         }
     }
 
-    private CompiledTemplate getTemplate(String event, MessageReference message) {
-        String source = getTemplateSource(event, message);
+    /**
+     * Streams the event as the same JSON document as the default template
+     */
+    protected String serialize(AuditEvent event) throws IOException {
+        StringWriter writer = new StringWriter(512);
+        JsonGenerator jgen = ScriptUtils.createGenerator(writer);
+        try {
+            jgen.writeStartObject();
+            jgen.writeStringField("host", String.valueOf(System.getProperty("runtime.id")));
+            jgen.writeStringField("@timestamp", MetricsJSON.toIso(new Date(event.getTimestamp())));
+            jgen.writeStringField("event", event.getEvent());
+            jgen.writeObjectFieldStart("message");
+            jgen.writeStringField("id", event.getMessageId());
+            jgen.writeStringField("destination", String.valueOf(event.getDestination()));
+            jgen.writeFieldName("properties");
+            MetricsJSON.writeJson(jgen, event.getProperties());
+            jgen.writeEndObject();
+            jgen.writeEndObject();
+        } finally {
+            jgen.close();
+        }
+        return writer.toString();
+    }
+
+    private CompiledTemplate getTemplate(String event) {
+        String source = getTemplateSource(event);
         CompiledTemplate template = templates.get(source);
         if (template == null) {
             template = TemplateCompiler.compileTemplate(source, context);
@@ -135,9 +348,9 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         return template;
     }
 
-    private String getTemplateSource(String event, MessageReference message) {
+    private String getTemplateSource(String event) {
         String source = null;
-        URL url = getTemplateUrl(event, message);
+        URL url = getTemplateUrl(event);
         if (url != null) {
             try {
                 source = loadSource(url);
@@ -155,7 +368,7 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         return source;
     }
 
-    private URL getTemplateUrl(String event, MessageReference message) {
+    private URL getTemplateUrl(String event) {
         return null;
     }
 
@@ -168,4 +381,63 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         return source;
     }
 
+    @Override
+    public long getCapturedCount() {
+        return captured.get();
+    }
+
+    @Override
+    public long getSampledOutCount() {
+        return sampledOut.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public boolean isUseTemplates() {
+        return useTemplates;
+    }
+
+    @Override
+    public void setUseTemplates(boolean useTemplates) {
+        this.useTemplates = useTemplates;
+    }
+
+    @Override
+    public void resetStatistics() {
+        captured.set(0);
+        sampledOut.set(0);
+        dropped.set(0);
+        stored.set(0);
+        failed.set(0);
+    }
+
 }
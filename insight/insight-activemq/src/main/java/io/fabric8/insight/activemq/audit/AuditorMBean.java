@@ -18,4 +18,41 @@ package io.fabric8.insight.activemq.audit;
 import io.fabric8.insight.activemq.base.SwichtableBrokerPluginMBean;
 
 public interface AuditorMBean extends SwichtableBrokerPluginMBean {
+
+    /**
+     * @return the number of events queued for the workers
+     */
+    long getCapturedCount();
+
+    /**
+     * @return the number of events which were not sampled
+     */
+    long getSampledOutCount();
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    long getDroppedCount();
+
+    long getStoredCount();
+
+    long getFailedCount();
+
+    int getQueueSize();
+
+    /**
+     * @return the ratio of the events audited for the destinations without a sample rate of their own
+     */
+    double getSampleRate();
+
+    void setSampleRate(double sampleRate);
+
+    /**
+     * @return true if the events are rendered with the default template instead of being streamed as JSON
+     */
+    boolean isUseTemplates();
+
+    void setUseTemplates(boolean useTemplates);
+
+    void resetStatistics();
 }
@@ -15,27 +15,26 @@
  */
 package io.fabric8.insight.activemq.audit;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.insight.metrics.model.MetricsJSON;
 
 public final class ScriptUtils {
 
-    private static final SimpleDateFormat format;
     private static final ObjectMapper mapper;
 
     static {
-        format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
         mapper = new ObjectMapper();
-        mapper.getSerializationConfig()
-                      .with(format);
     }
 
     public static String toIso(Date d) {
-        return format.format(d);
+        return MetricsJSON.toIso(d);
     }
 
     public static String toJson(Object o) {
@@ -76,6 +75,10 @@ public final class ScriptUtils {
         }
     }
 
+    public static JsonGenerator createGenerator(Writer writer) throws IOException {
+        return mapper.getFactory().createGenerator(writer);
+    }
+
     public static Map parseJson(String str) {
         try {
             return mapper.readValue(str, Map.class);
@@ -15,12 +15,16 @@
  */
 package io.fabric8.insight.camel.audit;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.IOHelpers;
 import io.fabric8.insight.camel.base.SwitchableContainerStrategy;
+import io.fabric8.insight.metrics.model.MetricsJSON;
 import io.fabric8.insight.storage.StorageService;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.MessageHistory;
 import org.apache.camel.api.management.ManagedResource;
 import org.apache.camel.management.event.AbstractExchangeEvent;
 import org.apache.camel.management.event.ExchangeSendingEvent;
@@ -33,6 +37,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
 import java.util.Date;
 import java.util.EventObject;
@@ -51,6 +56,7 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
     private ValidatingReference<StorageService> storage;
     private String type = "camel";
 
+    private boolean useTemplates;
     private boolean ignoreExchangeCreatedEvent;
     private boolean ignoreExchangeCompletedEvent;
     private boolean ignoreExchangeFailedEvents;
@@ -123,6 +129,14 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
             eventType = eventType.substring("Exchange".length());
             eventType = eventType.substring(0, eventType.length() - "Event".length());
 
+            if (!useTemplates && getTemplateUrl(eventType, event.getExchange()) == null) {
+                try {
+                    return serialize(eventType, event.getExchange());
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not serialize exchange " + event.getExchange().getExchangeId(), e);
+                }
+            }
+
             CompiledTemplate template = getTemplate(eventType, event.getExchange());
             Map<String, Object> vars = new HashMap<String, Object>();
             vars.put("event", eventType);
@@ -136,6 +150,52 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         }
     }
 
+    /**
+     * Streams the exchange as the same JSON document as the default template
+     */
+    protected String serialize(String event, Exchange exchange) throws IOException {
+        StringWriter writer = new StringWriter(1024);
+        JsonGenerator jgen = ScriptUtils.createGenerator(writer);
+        try {
+            jgen.writeStartObject();
+            jgen.writeStringField("host", String.valueOf(System.getProperty("runtime.id")));
+            jgen.writeStringField("@timestamp", MetricsJSON.toIso(new Date()));
+            jgen.writeStringField("event", event);
+            jgen.writeObjectFieldStart("exchange");
+            jgen.writeStringField("id", String.valueOf(exchange.getExchangeId()));
+            jgen.writeStringField("routeId", String.valueOf(exchange.getFromRouteId()));
+            jgen.writeStringField("contextId", String.valueOf(exchange.getContext().getName()));
+            jgen.writeStringField("fromEndpoint", String.valueOf(exchange.getFromEndpoint()));
+            jgen.writeStringField("pattern", String.valueOf(exchange.getPattern()));
+            jgen.writeFieldName("properties");
+            MetricsJSON.writeJson(jgen, exchange.getProperties(), MessageHistory.class);
+            if (exchange.getException() != null) {
+                jgen.writeStringField("exception", exchange.getException().toString());
+            }
+            writeMessage(jgen, "in", exchange.getIn());
+            if (exchange.hasOut()) {
+                writeMessage(jgen, "out", exchange.getOut());
+            }
+            jgen.writeEndObject();
+            jgen.writeEndObject();
+        } finally {
+            jgen.close();
+        }
+        return writer.toString();
+    }
+
+    private void writeMessage(JsonGenerator jgen, String name, Message message) throws IOException {
+        jgen.writeObjectFieldStart(name);
+        jgen.writeStringField("messageId", String.valueOf(message.getMessageId()));
+        jgen.writeFieldName("headers");
+        MetricsJSON.writeJson(jgen, message.getHeaders(), MessageHistory.class);
+        if (message.getBody() != null) {
+            jgen.writeFieldName("body");
+            MetricsJSON.writeJson(jgen, message.getBody(), MessageHistory.class);
+        }
+        jgen.writeEndObject();
+    }
+
     private CompiledTemplate getTemplate(String event, Exchange exchange) {
         String source = getTemplateSource(event, exchange);
         CompiledTemplate template = templates.get(source);
@@ -212,6 +272,17 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
     public void setIgnoreExchangeEvents(boolean ignoreExchangeEvents) {
     }
 
+    public boolean isUseTemplates() {
+        return useTemplates;
+    }
+
+    /**
+     * Renders the exchanges with the default template instead of streaming them as JSON
+     */
+    public void setUseTemplates(boolean useTemplates) {
+        this.useTemplates = useTemplates;
+    }
+
     public boolean isIgnoreExchangeCreatedEvent() {
         return ignoreExchangeCreatedEvent;
     }
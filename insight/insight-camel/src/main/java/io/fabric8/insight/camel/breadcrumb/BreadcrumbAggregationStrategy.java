@@ -25,17 +25,27 @@ import java.util.Set;
  */
 public class BreadcrumbAggregationStrategy implements AggregationStrategy {
 
+    private final Breadcrumbs breadcrumbs;
     private final AggregationStrategy delegate;
 
     public BreadcrumbAggregationStrategy(AggregationStrategy delegate) {
+        this(null, delegate);
+    }
+
+    public BreadcrumbAggregationStrategy(Breadcrumbs breadcrumbs, AggregationStrategy delegate) {
+        this.breadcrumbs = breadcrumbs;
         this.delegate = delegate;
     }
 
     @Override
     public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
         Exchange e = delegate.aggregate(oldExchange, newExchange);
-        Set<String> breadcrumbs = Breadcrumbs.getBreadcrumbs(e, oldExchange, newExchange);
-        Breadcrumbs.setBreadcrumbs(e, breadcrumbs);
+        if (breadcrumbs != null) {
+            breadcrumbs.aggregateBreadcrumbs(e, oldExchange, newExchange);
+        } else {
+            Set<String> merged = Breadcrumbs.getBreadcrumbs(e, oldExchange, newExchange);
+            Breadcrumbs.setBreadcrumbs(e, merged);
+        }
         return e;
     }
 }
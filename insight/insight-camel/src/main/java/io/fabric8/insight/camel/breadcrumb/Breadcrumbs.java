@@ -20,26 +20,104 @@ import org.apache.camel.CamelContext;
 import org.apache.camel.CamelContextAware;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
 import org.apache.camel.api.management.ManagedResource;
 import org.apache.camel.model.ProcessorDefinition;
 import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Records the ids of the exchanges an exchange comes from in its {@link #BREADCRUMB} header.
+ * <p>
+ * The breadcrumbs are bounded: the first one, which identifies where the flow started, is always kept
+ * along with the most recent ones. When a transport turns the header into a string it becomes a comma
+ * separated list of ids, which is parsed back into breadcrumbs on the other side.
  */
 @ManagedResource(description = "Breadcrumbs")
 public class Breadcrumbs extends SwitchableContainerStrategy implements BreadcrumbsMBean {
 
+    private static final transient Logger LOG = LoggerFactory.getLogger(Breadcrumbs.class);
+
     public static final String BREADCRUMB = "ExtendedBreadcrumb";
 
+    public static final int DEFAULT_MAX_BREADCRUMBS = 64;
+
+    private volatile int maxBreadcrumbs = DEFAULT_MAX_BREADCRUMBS;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong totalSize = new AtomicLong();
+    private final AtomicLong largestSize = new AtomicLong();
+
     public Breadcrumbs() {
         enable();
     }
 
+    @Override
+    public void update(Map<String, String> properties) {
+        super.update(properties);
+        int maxBreadcrumbs = DEFAULT_MAX_BREADCRUMBS;
+        if (properties != null && properties.containsKey("maxBreadcrumbs")) {
+            String val = properties.get("maxBreadcrumbs");
+            try {
+                maxBreadcrumbs = Integer.parseInt(val);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value " + val + " for maxBreadcrumbs");
+            }
+        }
+        if (maxBreadcrumbs >= 0) {
+            setMaxBreadcrumbs(maxBreadcrumbs);
+        } else {
+            LOG.warn("Invalid value " + maxBreadcrumbs + " for maxBreadcrumbs");
+            setMaxBreadcrumbs(DEFAULT_MAX_BREADCRUMBS);
+        }
+    }
+
+    @ManagedAttribute(description = "Maximum number of breadcrumbs kept on an exchange, 0 for no limit")
+    public int getMaxBreadcrumbs() {
+        return maxBreadcrumbs;
+    }
+
+    @ManagedAttribute(description = "Maximum number of breadcrumbs kept on an exchange, 0 for no limit")
+    public void setMaxBreadcrumbs(int maxBreadcrumbs) {
+        if (maxBreadcrumbs < 0) {
+            throw new IllegalArgumentException("The maximum number of breadcrumbs must not be negative, was: " + maxBreadcrumbs);
+        }
+        this.maxBreadcrumbs = maxBreadcrumbs;
+    }
+
+    @ManagedAttribute(description = "Number of breadcrumbs dropped because an exchange had too many")
+    public long getDroppedBreadcrumbs() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute(description = "Largest number of breadcrumbs seen on an exchange")
+    public long getLargestBreadcrumbs() {
+        return largestSize.get();
+    }
+
+    @ManagedAttribute(description = "Average number of breadcrumbs on the exchanges")
+    public double getAverageBreadcrumbs() {
+        long count = recorded.get();
+        return count > 0 ? (double) totalSize.get() / count : 0.0;
+    }
+
+    @ManagedOperation(description = "Resets the breadcrumbs statistics")
+    public void resetStatistics() {
+        dropped.set(0);
+        recorded.set(0);
+        totalSize.set(0);
+        largestSize.set(0);
+    }
+
     @Override
     public void manage(CamelContext context) throws Exception {
         final ProcessorFactory delegate = context.getProcessorFactory();
@@ -71,14 +149,57 @@ public class Breadcrumbs extends SwitchableContainerStrategy implements Breadcru
         return breadcrumbsProcessor;
     }
 
+    /**
+     * Adds the id of the exchange to its breadcrumbs
+     */
+    void addBreadcrumb(Exchange exchange) {
+        Set<String> breadcrumbs = getBreadcrumbs(exchange, maxBreadcrumbs, dropped);
+        breadcrumbs.add(exchange.getExchangeId());
+        record(breadcrumbs);
+    }
+
+    /**
+     * Sets the breadcrumbs of the aggregated exchange to the breadcrumbs of the exchanges it was aggregated from
+     */
+    void aggregateBreadcrumbs(Exchange aggregated, Exchange oldExchange, Exchange newExchange) {
+        Set<String> breadcrumbs = new BreadcrumbSet(maxBreadcrumbs, dropped);
+        for (Exchange exchange : new Exchange[] {aggregated, oldExchange, newExchange}) {
+            if (exchange != null) {
+                breadcrumbs.addAll(getBreadcrumbs(exchange, maxBreadcrumbs, dropped));
+            }
+        }
+        setBreadcrumbs(aggregated, breadcrumbs);
+        record(breadcrumbs);
+    }
+
+    private void record(Set<String> breadcrumbs) {
+        int size = breadcrumbs.size();
+        recorded.incrementAndGet();
+        totalSize.addAndGet(size);
+        for (long largest = largestSize.get(); size > largest; largest = largestSize.get()) {
+            if (largestSize.compareAndSet(largest, size)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the breadcrumbs of the exchange as they are, only breadcrumbs which are not bounded yet get the default maximum
+     */
     public static Set<String> getBreadcrumbs(Exchange exchange) {
         Object val = exchange.getIn().getHeader(BREADCRUMB);
-        Set<String> breadcrumbs;
         if (val instanceof BreadcrumbSet) {
             return (BreadcrumbSet) val;
         }
-        breadcrumbs = new BreadcrumbSet();
-        exchange.getIn().setHeader(BREADCRUMB, breadcrumbs);
+        return getBreadcrumbs(exchange, DEFAULT_MAX_BREADCRUMBS, null);
+    }
+
+    private static Set<String> getBreadcrumbs(Exchange exchange, int maxBreadcrumbs, AtomicLong dropped) {
+        Object val = exchange.getIn().getHeader(BREADCRUMB);
+        if (val instanceof BreadcrumbSet && ((BreadcrumbSet) val).max == maxBreadcrumbs) {
+            return (BreadcrumbSet) val;
+        }
+        Set<String> breadcrumbs = new BreadcrumbSet(maxBreadcrumbs, dropped);
         if (val instanceof Iterable) {
             for (Object o : ((Iterable) val)) {
                 if (o != null) {
@@ -86,27 +207,84 @@ public class Breadcrumbs extends SwitchableContainerStrategy implements Breadcru
                 }
             }
         } else if (val != null) {
-            breadcrumbs.add(val.toString());
+            // the breadcrumbs came through a transport which turned them into a string
+            String ids = val.toString();
+            if (ids.startsWith("[") && ids.endsWith("]")) {
+                ids = ids.substring(1, ids.length() - 1);
+            }
+            for (String id : ids.split(",")) {
+                id = id.trim();
+                if (id.length() > 0) {
+                    breadcrumbs.add(id);
+                }
+            }
         }
+        exchange.getIn().setHeader(BREADCRUMB, breadcrumbs);
         return breadcrumbs;
     }
 
+    /**
+     * Returns the breadcrumbs of all the exchanges, bounded like those of the first exchange
+     */
     public static Set<String> getBreadcrumbs(Exchange... exchanges) {
-        Set<String> breadcrumbs = new BreadcrumbSet();
+        BreadcrumbSet breadcrumbs = null;
         for (Exchange exchange : exchanges) {
             if (exchange != null) {
-                breadcrumbs.addAll(getBreadcrumbs(exchange));
+                BreadcrumbSet existing = (BreadcrumbSet) getBreadcrumbs(exchange);
+                if (breadcrumbs == null) {
+                    breadcrumbs = new BreadcrumbSet(existing.max, existing.dropped);
+                }
+                breadcrumbs.addAll(existing);
             }
         }
-        return breadcrumbs;
+        return breadcrumbs != null ? breadcrumbs : new BreadcrumbSet(DEFAULT_MAX_BREADCRUMBS, null);
     }
 
     public static void setBreadcrumbs(Exchange exchange, Set<String> breadcrumbs) {
         exchange.getIn().setHeader(BREADCRUMB, breadcrumbs);
     }
 
+    /**
+     * Keeps the first breadcrumb and the most recent ones, dropping the oldest others once the set is full
+     */
     private static class BreadcrumbSet extends LinkedHashSet<String> {
 
+        private final int max;
+        private final transient AtomicLong dropped;
+
+        BreadcrumbSet(int max, AtomicLong dropped) {
+            this.max = max;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public boolean add(String id) {
+            if (!super.add(id)) {
+                return false;
+            }
+            if (max > 0 && size() > max) {
+                Iterator<String> it = iterator();
+                it.next();
+                it.next();
+                it.remove();
+                if (dropped != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (String id : this) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(id);
+            }
+            return sb.toString();
+        }
     }
 
 }
@@ -21,4 +21,17 @@ import io.fabric8.insight.camel.base.SwitchableContainerStrategyMBean;
  *
  */
 public interface BreadcrumbsMBean extends SwitchableContainerStrategyMBean {
+
+    int getMaxBreadcrumbs();
+
+    void setMaxBreadcrumbs(int maxBreadcrumbs);
+
+    long getDroppedBreadcrumbs();
+
+    long getLargestBreadcrumbs();
+
+    double getAverageBreadcrumbs();
+
+    void resetStatistics();
+
 }
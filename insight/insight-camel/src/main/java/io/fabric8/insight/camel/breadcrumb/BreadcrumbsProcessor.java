@@ -19,16 +19,13 @@ import org.apache.camel.*;
 import org.apache.camel.processor.DelegateAsyncProcessor;
 import org.apache.camel.processor.aggregate.AggregateProcessor;
 import org.apache.camel.processor.aggregate.AggregationStrategy;
-import io.fabric8.insight.camel.base.SwitchableContainerStrategy;
-
-import java.util.Set;
 
 /**
  *
  */
 public class BreadcrumbsProcessor extends DelegateAsyncProcessor implements CamelContextAware {
 
-    private final SwitchableContainerStrategy breadcrumbs;
+    private final Breadcrumbs breadcrumbs;
     private CamelContext camelContext;
 
     public BreadcrumbsProcessor(Breadcrumbs breadcrumbs, Processor processor) {
@@ -48,14 +45,13 @@ public class BreadcrumbsProcessor extends DelegateAsyncProcessor implements Came
     }
 
     protected AggregationStrategy wrap(AggregationStrategy strategy) {
-        return new BreadcrumbAggregationStrategy(strategy);
+        return new BreadcrumbAggregationStrategy(breadcrumbs, strategy);
     }
 
     @Override
     public boolean process(Exchange exchange, AsyncCallback callback) {
         if (breadcrumbs.isEnabled(exchange)) {
-            Set<String> breadcrumbs = Breadcrumbs.getBreadcrumbs(exchange);
-            breadcrumbs.add(exchange.getExchangeId());
+            breadcrumbs.addBreadcrumb(exchange);
         }
         return processor.process(exchange, callback);
     }
@@ -28,11 +28,19 @@ import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
 import org.apache.camel.util.StringHelper;
 
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  *
@@ -40,7 +48,15 @@ import java.util.concurrent.ConcurrentHashMap;
 @ManagedResource(description = "Profiler")
 public class Profiler extends SwitchableContainerStrategy implements ProfilerMBean {
 
-    private final Map<ProcessorDefinition<?>, Stats> statistics = new LinkedHashMap<ProcessorDefinition<?>, Stats>();
+    private static final String[] STATS_ITEMS = {"index", "routeId", "id", "parentIndex", "definition", "label",
+            "count", "self", "total", "p50", "p90", "p99"};
+    private static final OpenType<?>[] STATS_TYPES = {SimpleType.INTEGER, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER,
+            SimpleType.STRING, SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+            SimpleType.LONG, SimpleType.LONG};
+
+    private final ConcurrentMap<ProcessorDefinition<?>, Stats> statistics = new ConcurrentHashMap<ProcessorDefinition<?>, Stats>();
+    // the statistics of the routes, each one is the root of the tree of the statistics of its processors
+    private final List<Stats> routeStatistics = new CopyOnWriteArrayList<Stats>();
     private final Map<String, ExchangeData> exchanges = new ConcurrentHashMap<String, ExchangeData>();
 
     public Profiler() {
@@ -85,21 +101,17 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
     }
 
     public String dumpStatsAsXml(String routeId) {
-        Set<RouteDefinition> routes = new HashSet<RouteDefinition>();
-        for (ProcessorDefinition<?> definition : statistics.keySet()) {
-            RouteDefinition route = ProcessorDefinitionHelper.getRoute(definition);
-            routes.add(route);
-        }
         StringBuilder sb = new StringBuilder();
         sb.append("<profiling>");
-        for (RouteDefinition route : routes) {
+        for (Stats stats : routeStatistics) {
+            ProcessorDefinition<?> route = stats.getDefinition();
             if (routeId == null || routeId.equals(route.getId())) {
                 sb.append("<route");
                 if (route.getId() != null) {
                     sb.append(" id=\"").append(route.getId()).append("\"");
                 }
                 sb.append(">");
-                appendStats(sb, route);
+                appendStats(sb, stats);
                 sb.append("</route>");
             }
         }
@@ -111,40 +123,154 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
         return dumpStatsAsXml(null);
     }
 
-    protected void appendStats(StringBuilder sb, ProcessorDefinition<?> definition) {
-        Stats stats = statistics.get(definition);
-        if (stats != null) {
-            sb.append("<processor");
-            if (definition.getId() != null) {
-                sb.append(" id=\"").append(definition.getId()).append("\"");
+    protected void appendStats(StringBuilder sb, Stats stats) {
+        ProcessorDefinition<?> definition = stats.getDefinition();
+        sb.append("<processor");
+        if (definition.getId() != null) {
+            sb.append(" id=\"").append(definition.getId()).append("\"");
+        }
+        sb.append(" definition=\"").append(StringHelper.xmlEncode(definition.toString())).append("\"");
+        if (definition.getLabel() != null) {
+            sb.append(" label=\"").append(definition.getLabel()).append("\"");
+        }
+        sb.append(" count=\"").append(stats.getCount()).append("\"");
+        sb.append(" self=\"").append(stats.getSelf()).append("\"");
+        sb.append(" total=\"").append(stats.getTotal()).append("\"");
+        sb.append(">");
+        for (Stats child : stats.getChildren()) {
+            appendStats(sb, child);
+        }
+        sb.append("</processor>");
+    }
+
+    public String dumpStatsAsJson(String routeId) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"routes\":[");
+        boolean first = true;
+        for (Stats stats : routeStatistics) {
+            ProcessorDefinition<?> route = stats.getDefinition();
+            if (routeId == null || routeId.equals(route.getId())) {
+                if (!first) {
+                    sb.append(",");
+                }
+                first = false;
+                sb.append("{\"id\":");
+                appendJsonString(sb, route.getId());
+                sb.append(",\"processor\":");
+                appendJsonStats(sb, stats);
+                sb.append("}");
             }
-            sb.append(" definition=\"").append(StringHelper.xmlEncode(definition.toString())).append("\"");
-            if (definition.getLabel() != null) {
-                sb.append(" label=\"").append(definition.getLabel()).append("\"");
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    public String dumpAllStatsAsJson() {
+        return dumpStatsAsJson(null);
+    }
+
+    protected void appendJsonStats(StringBuilder sb, Stats stats) {
+        ProcessorDefinition<?> definition = stats.getDefinition();
+        sb.append("{\"id\":");
+        appendJsonString(sb, definition.getId());
+        sb.append(",\"definition\":");
+        appendJsonString(sb, definition.toString());
+        sb.append(",\"label\":");
+        appendJsonString(sb, definition.getLabel());
+        sb.append(",\"count\":").append(stats.getCount());
+        sb.append(",\"self\":").append(stats.getSelf());
+        sb.append(",\"total\":").append(stats.getTotal());
+        sb.append(",\"p50\":").append(stats.getPercentile(0.5));
+        sb.append(",\"p90\":").append(stats.getPercentile(0.9));
+        sb.append(",\"p99\":").append(stats.getPercentile(0.99));
+        sb.append(",\"children\":[");
+        boolean first = true;
+        for (Stats child : stats.getChildren()) {
+            if (!first) {
+                sb.append(",");
             }
-            sb.append(" count=\"").append(stats.getCount()).append("\"");
-            sb.append(" self=\"").append(stats.getSelf()).append("\"");
-            sb.append(" total=\"").append(stats.getTotal()).append("\"");
-            sb.append(">");
-            for (ProcessorDefinition<?> child : statistics.keySet()) {
-                if (child.getParent() == definition) {
-                    appendStats(sb, child);
-                }
+            first = false;
+            appendJsonStats(sb, child);
+        }
+        sb.append("]}");
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
             }
-            sb.append("</processor>");
+        }
+        sb.append('"');
+    }
+
+    public TabularData dumpStatsAsTabularData() throws OpenDataException {
+        CompositeType rowType = new CompositeType("ProcessorStats", "The statistics of a processor", STATS_ITEMS, STATS_ITEMS, STATS_TYPES);
+        TabularDataSupport answer = new TabularDataSupport(new TabularType("ProcessorStatsTable",
+                "The statistics of the processors", rowType, new String[]{"index"}));
+        for (Stats stats : routeStatistics) {
+            addRows(answer, rowType, stats.getDefinition().getId(), stats, -1);
+        }
+        return answer;
+    }
+
+    private void addRows(TabularDataSupport table, CompositeType rowType, String routeId, Stats stats, int parentIndex) throws OpenDataException {
+        ProcessorDefinition<?> definition = stats.getDefinition();
+        int index = table.size();
+        table.put(new CompositeDataSupport(rowType, STATS_ITEMS, new Object[]{index, routeId, definition.getId(), parentIndex,
+                definition.toString(), definition.getLabel(), stats.getCount(), stats.getSelf(), stats.getTotal(),
+                stats.getPercentile(0.5), stats.getPercentile(0.9), stats.getPercentile(0.99)}));
+        for (Stats child : stats.getChildren()) {
+            addRows(table, rowType, routeId, child, index);
         }
     }
 
     public Stats getStats(ProcessorDefinition<?> definition) {
         if (definition != null) {
-            synchronized (statistics) {
-                Stats stats = statistics.get(definition);
-                if (stats == null) {
-                    stats = new Stats(definition, getStats(definition.getParent()));
-                    statistics.put(definition, stats);
+            Stats stats = statistics.get(definition);
+            if (stats == null) {
+                synchronized (statistics) {
+                    stats = statistics.get(definition);
+                    if (stats == null) {
+                        Stats parent = getStats(definition.getParent());
+                        stats = new Stats(definition, parent);
+                        // link the new statistics into the tree so dumping never has to search for the children
+                        if (parent != null) {
+                            parent.children.add(stats);
+                        } else {
+                            routeStatistics.add(stats);
+                        }
+                        statistics.put(definition, stats);
+                    }
                 }
-                return stats;
             }
+            return stats;
         }
         return null;
     }
@@ -17,6 +17,9 @@ package io.fabric8.insight.camel.profiler;
 
 import io.fabric8.insight.camel.base.SwitchableContainerStrategyMBean;
 
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
 /**
  *
  */
@@ -26,4 +29,13 @@ public interface ProfilerMBean extends SwitchableContainerStrategyMBean {
 
     String dumpStatsAsXml(String routeId);
 
+    String dumpAllStatsAsJson();
+
+    String dumpStatsAsJson(String routeId);
+
+    /**
+     * @return a row for each processor with the index of the row of its parent, or -1 for the routes
+     */
+    TabularData dumpStatsAsTabularData() throws OpenDataException;
+
 }
@@ -17,52 +17,145 @@ package io.fabric8.insight.camel.profiler;
 
 import org.apache.camel.model.ProcessorDefinition;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- *
+ * The statistics of a processor.
+ * <p>
+ * The counters are striped by thread, each stripe on its own cache lines, so exchanges completing on different
+ * threads do not contend; the values are summed when read. The total time of each exchange is also recorded
+ * in a histogram of power of two microsecond buckets which is striped the same way.
  */
 public class Stats {
-    final AtomicLong count = new AtomicLong();
-    final AtomicLong self = new AtomicLong();
-    final AtomicLong total = new AtomicLong();
+    private static final int STRIPES = stripes();
+    static final int BUCKETS = 32;
+    // count, self and total of a stripe followed by its histogram buckets and padding up to a multiple of 64 bytes
+    private static final int COUNT = 0;
+    private static final int SELF = 1;
+    private static final int TOTAL = 2;
+    private static final int BUCKET = 3;
+    private static final int STRIDE = (BUCKET + BUCKETS + 7) & ~7;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
     final Stats parent;
     final ProcessorDefinition definition;
+    final List<Stats> children = new CopyOnWriteArrayList<Stats>();
 
     public Stats(ProcessorDefinition definition, Stats parent) {
         this.definition = definition;
         this.parent = parent;
     }
 
-    public synchronized void addTime(long self, long total) {
-        this.count.incrementAndGet();
-        this.self.addAndGet(self);
-        this.total.addAndGet(total);
+    public void addTime(long self, long total) {
+        int cell = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+        cells.incrementAndGet(cell + COUNT);
+        cells.addAndGet(cell + SELF, self);
+        cells.addAndGet(cell + TOTAL, total);
+        cells.incrementAndGet(cell + BUCKET + bucket(total));
     }
 
     public Stats getParent() {
         return parent;
     }
 
+    public ProcessorDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * @return the statistics of the child processors in the order they were created
+     */
+    public List<Stats> getChildren() {
+        return children;
+    }
+
     public long getCount() {
-        return count.get();
+        return sum(COUNT);
     }
 
     public long getSelf() {
-        return self.get();
+        return sum(SELF);
     }
 
     public long getTotal() {
-        return total.get();
+        return sum(TOTAL);
+    }
+
+    /**
+     * @return the number of exchanges in each bucket of the histogram, see {@link #bucketUpperBound(int)}
+     */
+    public long[] getHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = sum(BUCKET + i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound of the total time in nanoseconds within which the given ratio of the exchanges completed
+     *
+     * @param ratio between 0 and 1, for example 0.99 for the 99th percentile
+     */
+    public long getPercentile(double ratio) {
+        long[] counts = getHistogram();
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(ratio * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKETS - 1);
     }
 
     public void reset() {
-        count.set(0);
-        self.set(0);
-        total.set(0);
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
     }
 
     public String toString() {
         return "Stats[" + definition.toString() + "]";
     }
+
+    private long sum(int offset) {
+        long answer = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            answer += cells.get(i * STRIDE + offset);
+        }
+        return answer;
+    }
+
+    /**
+     * Bucket 0 holds times under a microsecond and bucket n the times under 2^n microseconds
+     */
+    static int bucket(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    static long bucketUpperBound(int bucket) {
+        return TimeUnit.MICROSECONDS.toNanos(1L << bucket);
+    }
+
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int answer = 1;
+        while (answer < processors * 2 && answer < 64) {
+            answer <<= 1;
+        }
+        return answer;
+    }
 }
@@ -0,0 +1,182 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the latest traced messages of each node in a lock free ring of its own, so tracing never waits
+ * on other threads and the messages of a node are dumped without going through the messages of the others.
+ * A resized ring keeps reading the messages of the ring it replaced until it is full, so the messages
+ * still being added to the old ring are not lost.
+ */
+class TraceBuffer {
+
+    private static final Comparator<TracerEventMessage> BY_UID = new Comparator<TracerEventMessage>() {
+        @Override
+        public int compare(TracerEventMessage m1, TracerEventMessage m2) {
+            return m1.getUid() < m2.getUid() ? -1 : m1.getUid() == m2.getUid() ? 0 : 1;
+        }
+    };
+
+    private final ConcurrentMap<String, Ring> rings = new ConcurrentHashMap<String, Ring>();
+    private volatile int capacity;
+
+    private static final class Slot {
+        final long seq;
+        final TracerEventMessage message;
+
+        Slot(long seq, TracerEventMessage message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    static final class Ring {
+        private final AtomicReferenceArray<Slot> slots;
+        private final AtomicLong sequence = new AtomicLong();
+        private volatile Ring previous;
+
+        Ring(int capacity) {
+            this(capacity, null);
+        }
+
+        Ring(int capacity, Ring previous) {
+            this.slots = new AtomicReferenceArray<Slot>(capacity);
+            this.previous = previous;
+        }
+
+        int capacity() {
+            return slots.length();
+        }
+
+        void add(TracerEventMessage message) {
+            publish(reserve(), message);
+        }
+
+        long reserve() {
+            return sequence.getAndIncrement();
+        }
+
+        /**
+         * Stores the message in the slot of its sequence unless a writer which got a later sequence already did
+         */
+        void publish(long seq, TracerEventMessage message) {
+            int index = (int) (seq % slots.length());
+            Slot slot = new Slot(seq, message);
+            while (true) {
+                Slot current = slots.get(index);
+                if (current != null && current.seq > seq) {
+                    return;
+                }
+                if (slots.compareAndSet(index, current, slot)) {
+                    break;
+                }
+            }
+            if (seq >= slots.length() && previous != null) {
+                previous = null;
+            }
+        }
+
+        void collect(List<TracerEventMessage> answer) {
+            int start = answer.size();
+            long end = sequence.get();
+            int length = slots.length();
+            for (long seq = Math.max(0, end - length); seq < end; seq++) {
+                Slot slot = slots.get((int) (seq % length));
+                if (slot != null && slot.seq == seq) {
+                    answer.add(slot.message);
+                }
+            }
+            Ring prev = previous;
+            int missing = length - (answer.size() - start);
+            if (prev != null && missing > 0) {
+                List<TracerEventMessage> older = new ArrayList<TracerEventMessage>();
+                prev.collect(older);
+                Collections.sort(older, BY_UID);
+                answer.addAll(older.subList(Math.max(0, older.size() - missing), older.size()));
+            }
+        }
+    }
+
+    TraceBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets how many messages are kept per node, the rings are resized the next time they are traced
+     */
+    void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void add(TracerEventMessage message) {
+        String node = String.valueOf(message.getToNode());
+        Ring ring = rings.get(node);
+        while (ring == null || ring.capacity() != capacity) {
+            if (ring == null) {
+                Ring created = new Ring(capacity);
+                ring = rings.putIfAbsent(node, created);
+                if (ring == null) {
+                    ring = created;
+                }
+            } else {
+                Ring resized = new Ring(capacity, ring);
+                ring = rings.replace(node, ring, resized) ? resized : rings.get(node);
+            }
+        }
+        ring.add(message);
+    }
+
+    /**
+     * Returns the messages of the given node ordered as they were traced
+     */
+    List<TracerEventMessage> get(String node) {
+        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
+        Ring ring = rings.get(node);
+        if (ring != null) {
+            ring.collect(answer);
+            Collections.sort(answer, BY_UID);
+        }
+        return answer;
+    }
+
+    /**
+     * Removes and returns the messages of all the nodes ordered as they were traced
+     */
+    List<TracerEventMessage> drain() {
+        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
+        for (Map.Entry<String, Ring> entry : rings.entrySet()) {
+            if (rings.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().collect(answer);
+            }
+        }
+        Collections.sort(answer, BY_UID);
+        return answer;
+    }
+
+    void remove(String node) {
+        rings.remove(String.valueOf(node));
+    }
+}
@@ -17,6 +17,7 @@ package io.fabric8.insight.camel.trace;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.api.management.ManagedAttribute;
 import org.apache.camel.api.management.ManagedOperation;
@@ -29,24 +30,34 @@ import org.apache.camel.spi.NodeIdFactory;
 import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
 import io.fabric8.insight.camel.base.SwitchableContainerStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Traces the exchanges going through the processors of the routes.
+ * <p>
+ * The latest messages of each node are kept in a ring of their own, see {@link TraceBuffer}. Only a sample of
+ * the exchanges is traced when the sample rate is below 1, and the bodies are truncated before being formatted.
  */
 @ManagedResource(description = "Tracer")
 public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
 
+    private static final transient Logger LOG = LoggerFactory.getLogger(Tracer.class);
+
+    public static final int DEFAULT_BODY_MAX_CHARS = 128 * 1024;
+
     private final AtomicLong traceCounter = new AtomicLong(0);
-    private Queue<TracerEventMessage> queue =  new ArrayBlockingQueue<TracerEventMessage>(1000);
-    private int queueSize = 10;
+    private final AtomicLong sampledOutCounter = new AtomicLong(0);
+    private volatile int queueSize = 10;
+    private volatile double sampleRate = 1.0;
+    private volatile int bodyMaxChars = DEFAULT_BODY_MAX_CHARS;
+    private final TraceBuffer buffer = new TraceBuffer(queueSize);
     // remember the processors we are tracing, which we need later
     private final Set<ProcessorDefinition<?>> processors = new HashSet<ProcessorDefinition<?>>();
     private final Set<RouteContext> routeContexts = new HashSet<RouteContext>();
@@ -91,7 +102,7 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
         }
         routeContexts.add(routeContext);
         processors.add(definition);
-        TraceProcessor traceProcessor = new TraceProcessor(queue, processor, definition, route, first, this);
+        TraceProcessor traceProcessor = new TraceProcessor(processor, definition, route, first, this);
         traceProcessor.setCamelContext(routeContext.getCamelContext());
         if (processor instanceof CamelContextAware) {
             ((CamelContextAware) processor).setCamelContext(routeContext.getCamelContext());
@@ -110,17 +121,90 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
         }
     }
 
-    @ManagedAttribute(description = "Number of traced messages to keep in FIFO queue")
+    @Override
+    public void update(Map<String, String> properties) {
+        super.update(properties);
+        int queueSize = 10;
+        double sampleRate = 1.0;
+        int bodyMaxChars = DEFAULT_BODY_MAX_CHARS;
+        if (properties != null) {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                String key = entry.getKey();
+                String val = entry.getValue();
+                try {
+                    if ("queueSize".equals(key)) {
+                        queueSize = Integer.parseInt(val);
+                    } else if ("sampleRate".equals(key)) {
+                        sampleRate = Double.parseDouble(val);
+                    } else if ("bodyMaxChars".equals(key)) {
+                        bodyMaxChars = Integer.parseInt(val);
+                    }
+                } catch (NumberFormatException e) {
+                    LOG.warn("Invalid value " + val + " for " + key);
+                }
+            }
+        }
+        if (queueSize > 0) {
+            setQueueSize(queueSize);
+        } else {
+            LOG.warn("Invalid value " + queueSize + " for queueSize");
+        }
+        if (sampleRate >= 0 && sampleRate <= 1) {
+            setSampleRate(sampleRate);
+        } else {
+            LOG.warn("Invalid value " + sampleRate + " for sampleRate");
+        }
+        if (bodyMaxChars >= 0) {
+            setBodyMaxChars(bodyMaxChars);
+        } else {
+            LOG.warn("Invalid value " + bodyMaxChars + " for bodyMaxChars");
+        }
+    }
+
+    @ManagedAttribute(description = "Number of traced messages to keep per node")
     public int getQueueSize() {
         return queueSize;
     }
 
-    @ManagedAttribute(description = "Number of traced messages to keep in FIFO queue")
+    @ManagedAttribute(description = "Number of traced messages to keep per node")
     public void setQueueSize(int queueSize) {
         if (queueSize <= 0) {
             throw new IllegalArgumentException("The queue size must be a positive number, was: " + queueSize);
         }
         this.queueSize = queueSize;
+        buffer.setCapacity(queueSize);
+    }
+
+    @ManagedAttribute(description = "Ratio of the exchanges to trace, between 0 and 1")
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    @ManagedAttribute(description = "Ratio of the exchanges to trace, between 0 and 1")
+    public void setSampleRate(double sampleRate) {
+        // also rejects NaN
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("The sample rate must be between 0 and 1, was: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @ManagedAttribute(description = "Maximum number of characters of the traced message bodies, 0 for no limit")
+    public int getBodyMaxChars() {
+        return bodyMaxChars;
+    }
+
+    @ManagedAttribute(description = "Maximum number of characters of the traced message bodies, 0 for no limit")
+    public void setBodyMaxChars(int bodyMaxChars) {
+        if (bodyMaxChars < 0) {
+            throw new IllegalArgumentException("The maximum number of body characters must not be negative, was: " + bodyMaxChars);
+        }
+        this.bodyMaxChars = bodyMaxChars;
+    }
+
+    @ManagedAttribute(description = "Number of exchanges not traced because of sampling")
+    public long getSampledOutCounter() {
+        return sampledOutCounter.get();
     }
 
     @ManagedAttribute(description = "Number of total traced messages")
@@ -131,19 +215,12 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
     @ManagedOperation(description = "Resets the trace counter")
     public void resetTraceCounter() {
         traceCounter.set(0);
+        sampledOutCounter.set(0);
     }
 
     @ManagedOperation(description = "Dumps the traced messages for the given node")
     public List<TracerEventMessage> dumpTracedMessages(String nodeId) {
-        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
-        if (nodeId != null) {
-            for (TracerEventMessage message : queue) {
-                if (nodeId.equals(message.getToNode())) {
-                    answer.add(message);
-                }
-            }
-        }
-        return answer;
+        return buffer.get(String.valueOf(nodeId));
     }
 
     @ManagedOperation(description = "Dumps the traced messages for the given node in xml format")
@@ -161,10 +238,7 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
 
     @ManagedOperation(description = "Dumps the traced messages for all nodes")
     public List<TracerEventMessage> dumpAllTracedMessages() {
-        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
-        answer.addAll(queue);
-        queue.clear();
-        return answer;
+        return buffer.drain();
     }
 
     @ManagedOperation(description = "Dumps the traced messages for all nodes in xml format")
@@ -184,8 +258,40 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
         return traceCounter.incrementAndGet();
     }
 
+    /**
+     * Returns true if the exchange should be traced, the decision is taken from the exchange id
+     * so either all or none of the steps of an exchange are traced
+     */
+    boolean isSampled(Exchange exchange) {
+        double rate = sampleRate;
+        if (rate >= 1.0) {
+            return true;
+        }
+        int h = exchange.getExchangeId().hashCode();
+        // spread the bits as the ids only differ in their last characters
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        if ((h & 0x7fffffff) < rate * Integer.MAX_VALUE) {
+            return true;
+        }
+        sampledOutCounter.incrementAndGet();
+        return false;
+    }
+
+    void trace(TracerEventMessage message) {
+        buffer.add(message);
+    }
+
     void stopProcessor(TraceProcessor processor, ProcessorDefinition<?> processorDefinition) {
         this.processors.remove(processorDefinition);
+        buffer.remove(processorDefinition.getId());
+        if (processor.isFirst()) {
+            // the pseudo messages of the first processor are kept under the id of its route
+            buffer.remove(processor.getRouteDefinition().getId());
+        }
     }
 
     private void forceAutoAssigningIds() {
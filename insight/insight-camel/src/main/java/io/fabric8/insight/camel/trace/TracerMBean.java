@@ -28,6 +28,16 @@ public interface TracerMBean extends SwitchableContainerStrategyMBean {
 
     int getQueueSize();
 
+    void setSampleRate(double sampleRate);
+
+    double getSampleRate();
+
+    void setBodyMaxChars(int bodyMaxChars);
+
+    int getBodyMaxChars();
+
+    long getSampledOutCounter();
+
     long getTraceCounter();
 
     void resetTraceCounter();
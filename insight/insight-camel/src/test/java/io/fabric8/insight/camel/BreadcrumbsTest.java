@@ -0,0 +1,189 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel;
+
+import io.fabric8.insight.camel.breadcrumb.Breadcrumbs;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BreadcrumbsTest {
+
+    private CamelContext context = new DefaultCamelContext();
+
+    @After
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Test
+    public void testParseBreadcrumbs() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader(Breadcrumbs.BREADCRUMB, "[a, b]");
+        Set<String> breadcrumbs = Breadcrumbs.getBreadcrumbs(exchange);
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(breadcrumbs));
+        assertEquals("a,b", breadcrumbs.toString());
+        // the parsed breadcrumbs replace the header and are returned as they are from then on
+        assertSame(breadcrumbs, exchange.getIn().getHeader(Breadcrumbs.BREADCRUMB));
+        assertSame(breadcrumbs, Breadcrumbs.getBreadcrumbs(exchange));
+
+        exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader(Breadcrumbs.BREADCRUMB, "a,b");
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(Breadcrumbs.getBreadcrumbs(exchange)));
+
+        exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader(Breadcrumbs.BREADCRUMB, Arrays.asList("a", null, "b", "a"));
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(Breadcrumbs.getBreadcrumbs(exchange)));
+
+        exchange = new DefaultExchange(context);
+        assertTrue(Breadcrumbs.getBreadcrumbs(exchange).isEmpty());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        Breadcrumbs breadcrumbs = new Breadcrumbs();
+        breadcrumbs.setMaxBreadcrumbs(3);
+        Exchange received = sendThroughRoute(breadcrumbs, "first,b,c,d,e");
+
+        Set<String> crumbs = Breadcrumbs.getBreadcrumbs(received);
+        // the first breadcrumb and the most recent ones are kept
+        assertEquals(Arrays.asList("first", "e", received.getExchangeId()), new ArrayList<String>(crumbs));
+        assertEquals(3, breadcrumbs.getDroppedBreadcrumbs());
+        assertEquals(3, breadcrumbs.getLargestBreadcrumbs());
+
+        // the static helpers keep the maximum of the exchange
+        crumbs.add("f");
+        assertEquals(3, crumbs.size());
+        assertEquals(4, breadcrumbs.getDroppedBreadcrumbs());
+        assertEquals(3, Breadcrumbs.getBreadcrumbs(received, new DefaultExchange(context)).size());
+    }
+
+    @Test
+    public void testUnlimitedBreadcrumbs() throws Exception {
+        Breadcrumbs breadcrumbs = new Breadcrumbs();
+        breadcrumbs.setMaxBreadcrumbs(0);
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < 2 * Breadcrumbs.DEFAULT_MAX_BREADCRUMBS; i++) {
+            ids.append(i > 0 ? "," : "").append("id").append(i);
+        }
+        Exchange received = sendThroughRoute(breadcrumbs, ids.toString());
+
+        Object header = received.getIn().getHeader(Breadcrumbs.BREADCRUMB);
+        Set<String> crumbs = Breadcrumbs.getBreadcrumbs(received);
+        assertSame(header, crumbs);
+        assertEquals(2 * Breadcrumbs.DEFAULT_MAX_BREADCRUMBS + 1, crumbs.size());
+        assertEquals(2 * Breadcrumbs.DEFAULT_MAX_BREADCRUMBS + 1, Breadcrumbs.getBreadcrumbs(received, received).size());
+        assertEquals(0, breadcrumbs.getDroppedBreadcrumbs());
+    }
+
+    @Test
+    public void testNegativeMaxBreadcrumbsAreRejected() throws Exception {
+        Breadcrumbs breadcrumbs = new Breadcrumbs();
+        try {
+            breadcrumbs.setMaxBreadcrumbs(-1);
+            fail("Negative maximum should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(Breadcrumbs.DEFAULT_MAX_BREADCRUMBS, breadcrumbs.getMaxBreadcrumbs());
+
+        breadcrumbs.setMaxBreadcrumbs(10);
+        breadcrumbs.update(Collections.singletonMap("maxBreadcrumbs", "-1"));
+        assertEquals(Breadcrumbs.DEFAULT_MAX_BREADCRUMBS, breadcrumbs.getMaxBreadcrumbs());
+    }
+
+    @Test
+    public void testAggregationIsBounded() throws Exception {
+        Breadcrumbs breadcrumbs = new Breadcrumbs();
+        breadcrumbs.setMaxBreadcrumbs(3);
+        breadcrumbs.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:a")
+                        .aggregate(constant("all"), new AggregationStrategy() {
+                            @Override
+                            public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+                                return oldExchange != null ? oldExchange : newExchange;
+                            }
+                        }).completionSize(5)
+                        .to("mock:out");
+            }
+        });
+        context.start();
+        MockEndpoint out = context.getEndpoint("mock:out", MockEndpoint.class);
+        out.expectedMessageCount(1);
+
+        ProducerTemplate template = context.createProducerTemplate();
+        List<String> sent = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            final String header = i == 0 ? "first" : null;
+            sent.add(template.send("direct:a", new Processor() {
+                @Override
+                public void process(Exchange exchange) throws Exception {
+                    exchange.getIn().setHeader(Breadcrumbs.BREADCRUMB, header);
+                }
+            }).getExchangeId());
+        }
+        out.assertIsSatisfied();
+
+        Exchange received = out.getReceivedExchanges().get(0);
+        List<String> crumbs = new ArrayList<String>(Breadcrumbs.getBreadcrumbs(received));
+        assertEquals(3, crumbs.size());
+        assertEquals("first", crumbs.get(0));
+        assertTrue(crumbs + " should contain the last exchange", crumbs.contains(sent.get(4)));
+        // every breadcrumb beyond the first 3 was dropped: the first one, the 5 exchanges and the aggregated one
+        // if it got an id of its own
+        int seen = 1 + sent.size() + (sent.contains(received.getExchangeId()) ? 0 : 1);
+        assertEquals(seen - 3, breadcrumbs.getDroppedBreadcrumbs());
+        assertEquals(3, breadcrumbs.getLargestBreadcrumbs());
+    }
+
+    private Exchange sendThroughRoute(Breadcrumbs breadcrumbs, String header) throws Exception {
+        breadcrumbs.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:a").to("mock:out");
+            }
+        });
+        context.start();
+        MockEndpoint out = context.getEndpoint("mock:out", MockEndpoint.class);
+        out.expectedMessageCount(1);
+        context.createProducerTemplate().sendBodyAndHeader("direct:a", "hello", Breadcrumbs.BREADCRUMB, header);
+        out.assertIsSatisfied();
+        return out.getReceivedExchanges().get(0);
+    }
+}
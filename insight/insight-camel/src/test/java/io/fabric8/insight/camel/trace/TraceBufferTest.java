@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.trace;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceBufferTest {
+
+    private long uid;
+
+    @Test
+    public void testWraparound() throws Exception {
+        TraceBuffer buffer = new TraceBuffer(3);
+        add(buffer, "a", 7);
+
+        assertEquals(Arrays.asList(5L, 6L, 7L), uids(buffer.get("a")));
+        assertTrue(buffer.get("b").isEmpty());
+    }
+
+    @Test
+    public void testNodesAreKeptApart() throws Exception {
+        TraceBuffer buffer = new TraceBuffer(2);
+        for (int i = 0; i < 3; i++) {
+            add(buffer, "a", 1);
+            add(buffer, "b", 1);
+        }
+
+        assertEquals(Arrays.asList(3L, 5L), uids(buffer.get("a")));
+        assertEquals(Arrays.asList(4L, 6L), uids(buffer.get("b")));
+
+        buffer.remove("a");
+        assertTrue(buffer.get("a").isEmpty());
+        assertEquals(Arrays.asList(4L, 6L), uids(buffer.get("b")));
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        TraceBuffer buffer = new TraceBuffer(4);
+        add(buffer, "a", 6);
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), uids(buffer.get("a")));
+
+        // the ring is only resized when the node is next traced, keeping its latest messages
+        buffer.setCapacity(2);
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), uids(buffer.get("a")));
+        add(buffer, "a", 1);
+        assertEquals(Arrays.asList(6L, 7L), uids(buffer.get("a")));
+
+        buffer.setCapacity(5);
+        add(buffer, "a", 2);
+        assertEquals(Arrays.asList(6L, 7L, 8L, 9L), uids(buffer.get("a")));
+        add(buffer, "a", 2);
+        assertEquals(Arrays.asList(7L, 8L, 9L, 10L, 11L), uids(buffer.get("a")));
+    }
+
+    @Test
+    public void testDrainOrdering() throws Exception {
+        TraceBuffer buffer = new TraceBuffer(3);
+        add(buffer, "a", 2);
+        add(buffer, "b", 1);
+        add(buffer, "c", 2);
+        add(buffer, "a", 2);
+        add(buffer, "b", 1);
+
+        // the messages of all the nodes come back in the order they were traced
+        assertEquals(Arrays.asList(2L, 3L, 4L, 5L, 6L, 7L, 8L), uids(buffer.drain()));
+        assertTrue(buffer.drain().isEmpty());
+        assertTrue(buffer.get("a").isEmpty());
+
+        add(buffer, "a", 1);
+        assertEquals(Arrays.asList(9L), uids(buffer.drain()));
+    }
+
+    @Test
+    public void testStalledWriterDoesNotOverwriteNewerMessage() throws Exception {
+        TraceBuffer.Ring ring = new TraceBuffer.Ring(2);
+        long stalled = ring.reserve();
+        ring.add(message(2));
+        ring.add(message(3));
+        // the slot of the stalled writer now holds a later message
+        ring.publish(stalled, message(1));
+
+        assertEquals(Arrays.asList(2L, 3L), collect(ring));
+    }
+
+    @Test
+    public void testResizeKeepsMessagesAddedToTheOldRing() throws Exception {
+        TraceBuffer.Ring old = new TraceBuffer.Ring(4);
+        old.add(message(1));
+        old.add(message(2));
+        long stalled = old.reserve();
+        TraceBuffer.Ring resized = new TraceBuffer.Ring(2, old);
+        resized.add(message(3));
+        // added to the old ring after it was replaced
+        old.publish(stalled, message(4));
+
+        assertEquals(Arrays.asList(3L, 4L), collect(resized));
+        resized.add(message(5));
+        resized.add(message(6));
+        assertEquals(Arrays.asList(5L, 6L), collect(resized));
+    }
+
+    private static TracerEventMessage message(long uid) {
+        return new TracerEventMessage(uid, new Date(), "a", "exchange-" + uid, "<message/>");
+    }
+
+    private static List<Long> collect(TraceBuffer.Ring ring) {
+        List<TracerEventMessage> messages = new ArrayList<TracerEventMessage>();
+        ring.collect(messages);
+        List<Long> answer = uids(messages);
+        Collections.sort(answer);
+        return answer;
+    }
+
+    private void add(TraceBuffer buffer, String node, int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.add(new TracerEventMessage(++uid, new Date(), node, "exchange-" + uid, "<message/>"));
+        }
+    }
+
+    private static List<Long> uids(List<TracerEventMessage> messages) {
+        List<Long> answer = new ArrayList<Long>();
+        for (TracerEventMessage message : messages) {
+            answer.add(message.getUid());
+        }
+        return answer;
+    }
+}
@@ -15,10 +15,13 @@
  */
 package io.fabric8.insight.elasticsearch;
 
+import io.fabric8.common.util.JMXUtils;
 import io.fabric8.insight.metrics.model.MetricsStorageService;
 import io.fabric8.insight.metrics.model.QueryResult;
 import io.fabric8.insight.metrics.mvel.MetricsStorageServiceImpl;
 import io.fabric8.insight.storage.StorageService;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequest;
 import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequestBuilder;
@@ -27,29 +30,85 @@ import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.node.Node;
+import org.elasticsearch.rest.RestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Scanner;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, Runnable {
+/**
+ * Base class of the storages which index into Elasticsearch.
+ * <p>
+ * Requests are put on a bounded queue; when it is full they are either dropped or the caller is blocked for a
+ * while depending on {@link #isBlockWhenFull()}. A single thread takes them off the queue in bulks of at most
+ * {@link #getBulkActions()} requests, or fewer once {@link #getFlushInterval()} has passed, and sends them
+ * asynchronously with at most {@link #getConcurrentRequests()} bulks waiting for their response. Requests which
+ * Elasticsearch rejects because it is overloaded are retried with an exponential backoff.
+ */
+public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, Runnable, ElasticsearchStorageMBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractElasticsearchStorage.class);
 
-    private static final SimpleDateFormat indexFormat = new SimpleDateFormat("yyyy.MM.dd");
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
 
     private int max = 1000;
 
+    private int queueCapacity = 10000;
+
+    private boolean blockWhenFull = false;
+
+    private long blockTimeout = 100;
+
+    private long flushInterval = 1000;
+
+    private int concurrentRequests = 2;
+
+    private int maxRetries = 3;
+
+    private long retryBackoff = 100;
+
     protected Thread thread;
 
     protected volatile boolean running;
 
-    private BlockingQueue<ActionRequest> queue = new LinkedBlockingQueue<ActionRequest>();
+    private volatile BlockingQueue<ActionRequest> queue = new ArrayBlockingQueue<ActionRequest>(queueCapacity);
+
+    private volatile IndexName indexName = new IndexName(Long.MIN_VALUE, null);
+
+    private Semaphore inFlight;
+
+    private int inFlightLimit;
+
+    private ScheduledExecutorService retryExecutor;
+
+    private ObjectName objectName;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong bulks = new AtomicLong();
+    private final AtomicLong totalBulkLatency = new AtomicLong();
+    private final AtomicLong maxBulkLatency = new AtomicLong();
 
     private MetricsStorageService metricsStorage = new MetricsStorageServiceImpl(this);
 
@@ -65,43 +124,126 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
         indicesAdminClient.putTemplate(putInsightTemplateRequest).actionGet();
     }
 
+    /**
+     * Starts the thread sending the bulks and registers the statistics with JMX if there is an MBeanServer
+     */
+    protected void start(String threadName, MBeanServer mbeanServer, String name) {
+        inFlightLimit = concurrentRequests;
+        inFlight = new Semaphore(inFlightLimit);
+        retryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread retryThread = new Thread(runnable, AbstractElasticsearchStorage.this.getClass().getSimpleName() + "Retry");
+                retryThread.setDaemon(true);
+                return retryThread;
+            }
+        });
+        running = true;
+        thread = new Thread(this, threadName);
+        thread.start();
+        if (mbeanServer != null) {
+            try {
+                objectName = new ObjectName("io.fabric8.insight:type=ElasticsearchStorage,name=" + name);
+                JMXUtils.registerMBean(new StandardMBean(this, ElasticsearchStorageMBean.class), mbeanServer, objectName);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to register the statistics of " + name + " with JMX", e);
+            }
+        }
+    }
+
+    protected void stop(MBeanServer mbeanServer) {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (retryExecutor != null) {
+            retryExecutor.shutdownNow();
+        }
+        if (mbeanServer != null && objectName != null) {
+            try {
+                JMXUtils.unregisterMBean(mbeanServer, objectName);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to unregister " + objectName, e);
+            }
+        }
+    }
+
     @Override
     public void store(String type, long timestamp, QueryResult queryResult) {
         metricsStorage.store(type, timestamp, queryResult);
     }
 
+    @Override
+    public void store(String type, long timestamp, List<QueryResult> queryResults) {
+        metricsStorage.store(type, timestamp, queryResults);
+    }
+
     @Override
     public void store(String type, long timestamp, String jsonData) {
-        Date ts = new Date(timestamp);
-        Date utc = new Date(ts.getTime() + ts.getTimezoneOffset() * 60000);
         IndexRequest ir = new IndexRequest()
-                .index("insight-"+ indexFormat.format(utc))
+                .index(getIndexName(timestamp))
                 .type(type)
                 .source(jsonData)
                 .create(true);
-        queue.add(ir);
+        boolean added;
+        if (blockWhenFull) {
+            try {
+                added = queue.offer(ir, blockTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                added = false;
+            }
+        } else {
+            added = queue.offer(ir);
+        }
+        if (added) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the name of the daily index of the UTC day of the timestamp, the name is only formatted once a day
+     */
+    private String getIndexName(long timestamp) {
+        long day = timestamp >= 0 ? timestamp / DAY : (timestamp + 1) / DAY - 1;
+        IndexName current = indexName;
+        if (current.day != day) {
+            SimpleDateFormat indexFormat = new SimpleDateFormat("yyyy.MM.dd");
+            indexFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            current = new IndexName(day, "insight-" + indexFormat.format(new Date(day * DAY)));
+            indexName = current;
+        }
+        return current.name;
     }
 
     public void run() {
+        List<ActionRequest> requests = new ArrayList<ActionRequest>(max);
         while (running) {
             try {
                 ActionRequest req = queue.take();
-                // Send data
-                BulkRequest bulk = new BulkRequest();
-                int nb = 0;
-                while (req != null && (nb == 0 || nb < max)) {
-                    bulk.add(req);
-                    nb++;
+                // fill the bulk until it is full or the flush interval has passed
+                long flushTime = System.currentTimeMillis() + flushInterval;
+                while (req != null) {
+                    requests.add(req);
+                    if (requests.size() >= max) {
+                        break;
+                    }
                     req = queue.poll();
-                }
-                if (bulk.numberOfActions() > 0) {
-                    BulkResponse rep = getNode().client().bulk(bulk).actionGet();
-                    for (BulkItemResponse bir : rep.getItems()) {
-                        if (bir.isFailed()) {
-                            LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
+                    if (req == null) {
+                        long wait = flushTime - System.currentTimeMillis();
+                        if (wait > 0) {
+                            req = queue.poll(wait, TimeUnit.MILLISECONDS);
                         }
                     }
                 }
+                send(requests, 0);
+                requests = new ArrayList<ActionRequest>(max);
+            } catch (InterruptedException e) {
+                if (running) {
+                    LOGGER.warn("Interrupted while sending requests", e);
+                }
             } catch (Exception e) {
                 if (running) {
                     LOGGER.warn("Error while sending requests", e);
@@ -110,5 +252,252 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
         }
     }
 
+    /**
+     * Sends the requests as one bulk once fewer than the maximum number of bulks are waiting for their response
+     */
+    private void send(final List<ActionRequest> requests, final int attempt) throws InterruptedException {
+        if (requests.isEmpty()) {
+            return;
+        }
+        final BulkRequest bulk = new BulkRequest();
+        for (ActionRequest request : requests) {
+            bulk.add(request);
+        }
+        inFlight.acquire();
+        final long start = System.currentTimeMillis();
+        try {
+            getNode().client().bulk(bulk, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    inFlight.release();
+                    recordLatency(System.currentTimeMillis() - start);
+                    List<ActionRequest> rejected = new ArrayList<ActionRequest>();
+                    for (BulkItemResponse bir : response.getItems()) {
+                        if (!bir.isFailed()) {
+                            sent.incrementAndGet();
+                        } else if (bir.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                            rejected.add(bulk.requests().get(bir.getItemId()));
+                        } else {
+                            failed.incrementAndGet();
+                            LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
+                        }
+                    }
+                    retry(rejected, attempt);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    inFlight.release();
+                    recordLatency(System.currentTimeMillis() - start);
+                    if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+                        retry(requests, attempt);
+                    } else {
+                        failed.addAndGet(requests.size());
+                        LOGGER.warn("Error while sending requests", e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void retry(final List<ActionRequest> requests, final int attempt) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        if (attempt >= maxRetries || !running) {
+            dropped.addAndGet(requests.size());
+            LOGGER.warn("Dropping {} requests rejected by Elasticsearch after {} retries", requests.size(), attempt);
+            return;
+        }
+        retried.addAndGet(requests.size());
+        try {
+            retryExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        send(requests, attempt + 1);
+                    } catch (Exception e) {
+                        dropped.addAndGet(requests.size());
+                        if (running) {
+                            LOGGER.warn("Error while retrying requests", e);
+                        }
+                    }
+                }
+            }, retryBackoff << attempt, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            dropped.addAndGet(requests.size());
+        }
+    }
+
+    private void recordLatency(long latency) {
+        bulks.incrementAndGet();
+        totalBulkLatency.addAndGet(latency);
+        long current = maxBulkLatency.get();
+        while (latency > current && !maxBulkLatency.compareAndSet(current, latency)) {
+            current = maxBulkLatency.get();
+        }
+    }
+
     public abstract Node getNode();
+
+    // Statistics
+    //-------------------------------------------------------------------------
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    @Override
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    @Override
+    public long getBulkCount() {
+        return bulks.get();
+    }
+
+    @Override
+    public int getInFlightBulks() {
+        Semaphore semaphore = inFlight;
+        return semaphore != null ? inFlightLimit - semaphore.availablePermits() : 0;
+    }
+
+    @Override
+    public double getAverageBulkLatency() {
+        long count = bulks.get();
+        return count > 0 ? (double) totalBulkLatency.get() / count : 0;
+    }
+
+    @Override
+    public long getMaxBulkLatency() {
+        return maxBulkLatency.get();
+    }
+
+    @Override
+    public void resetStatistics() {
+        queued.set(0);
+        sent.set(0);
+        dropped.set(0);
+        failed.set(0);
+        retried.set(0);
+        bulks.set(0);
+        totalBulkLatency.set(0);
+        maxBulkLatency.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the capacity of the queue, it can only be changed before the storage is started
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (running) {
+            throw new IllegalStateException("The queue capacity can not be changed once started");
+        }
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<ActionRequest>(queueCapacity);
+    }
+
+    public int getBulkActions() {
+        return max;
+    }
+
+    public void setBulkActions(int bulkActions) {
+        this.max = bulkActions;
+    }
+
+    public boolean isBlockWhenFull() {
+        return blockWhenFull;
+    }
+
+    public void setBlockWhenFull(boolean blockWhenFull) {
+        this.blockWhenFull = blockWhenFull;
+    }
+
+    public long getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    /**
+     * Sets the maximum number of bulks waiting for their response, it only takes effect when the storage is next started
+     */
+    public void setConcurrentRequests(int concurrentRequests) {
+        if (concurrentRequests <= 0) {
+            throw new IllegalArgumentException("The number of concurrent requests must be a positive number, was: " + concurrentRequests);
+        }
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public void setRetryBackoff(long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+
+    private static final class IndexName {
+        final long day;
+        final String name;
+
+        IndexName(long day, String name) {
+            this.day = day;
+            this.name = name;
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+/**
+ * The statistics of the bulk indexing of an {@link AbstractElasticsearchStorage}
+ */
+public interface ElasticsearchStorageMBean {
+
+    /**
+     * @return the number of requests waiting to be sent
+     */
+    int getQueueSize();
+
+    int getQueueCapacity();
+
+    long getQueuedCount();
+
+    /**
+     * @return the number of requests which were indexed
+     */
+    long getSentCount();
+
+    /**
+     * @return the number of requests which were dropped because the queue was full or they were still rejected after the retries
+     */
+    long getDroppedCount();
+
+    long getFailedCount();
+
+    long getRetriedCount();
+
+    long getBulkCount();
+
+    /**
+     * @return the number of bulk requests which are waiting for their response
+     */
+    int getInFlightBulks();
+
+    double getAverageBulkLatency();
+
+    long getMaxBulkLatency();
+
+    void resetStatistics();
+}
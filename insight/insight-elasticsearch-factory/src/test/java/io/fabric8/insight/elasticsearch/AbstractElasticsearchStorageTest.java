@@ -0,0 +1,249 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AbstractElasticsearchStorageTest {
+
+    private StubStorage storage = new StubStorage();
+
+    @After
+    public void tearDown() {
+        storage.stop(null);
+    }
+
+    @Test
+    public void testSendsBulks() throws Exception {
+        storage.setBulkActions(2);
+        store(5);
+        storage.start("test", null, "test");
+
+        awaitSent(5);
+        assertEquals(Arrays.asList(2, 2, 1), storage.bulkSizes());
+        assertEquals(3, storage.getBulkCount());
+        assertEquals(0, storage.getRetriedCount());
+        assertEquals(0, storage.getDroppedCount());
+        assertEquals(0, storage.getFailedCount());
+    }
+
+    @Test
+    public void testRetriesRejectedBulk() throws Exception {
+        storage.reject(new EsRejectedExecutionException("busy"));
+        store(3);
+        storage.start("test", null, "test");
+
+        awaitSent(3);
+        assertEquals(Arrays.asList(3, 3), storage.bulkSizes());
+        // the retry sends the very same requests
+        assertEquals(storage.bulks.get(0).requests(), storage.bulks.get(1).requests());
+        assertEquals(3, storage.getRetriedCount());
+        assertEquals(0, storage.getDroppedCount());
+        assertEquals(0, storage.getFailedCount());
+    }
+
+    @Test
+    public void testRetriesRejectedItems() throws Exception {
+        storage.rejectItem(1);
+        store(3);
+        storage.start("test", null, "test");
+
+        awaitSent(3);
+        assertEquals(Arrays.asList(3, 1), storage.bulkSizes());
+        assertSame(storage.bulks.get(0).requests().get(1), storage.bulks.get(1).requests().get(0));
+        assertEquals(1, storage.getRetriedCount());
+        assertEquals(0, storage.getDroppedCount());
+        assertEquals(0, storage.getFailedCount());
+    }
+
+    @Test
+    public void testDropsAfterMaxRetries() throws Exception {
+        storage.setMaxRetries(2);
+        for (int i = 0; i < 3; i++) {
+            storage.reject(new EsRejectedExecutionException("busy"));
+        }
+        store(2);
+        storage.start("test", null, "test");
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (storage.getDroppedCount() < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, storage.getDroppedCount());
+        assertEquals(Arrays.asList(2, 2, 2), storage.bulkSizes());
+        assertEquals(4, storage.getRetriedCount());
+        assertEquals(0, storage.getSentCount());
+    }
+
+    @Test
+    public void testFailedBulkIsNotRetried() throws Exception {
+        storage.reject(new IllegalStateException("broken"));
+        store(2);
+        storage.start("test", null, "test");
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (storage.getFailedCount() < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, storage.getFailedCount());
+        assertEquals(Arrays.asList(2), storage.bulkSizes());
+        assertEquals(0, storage.getRetriedCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsMustBePositive() throws Exception {
+        for (int concurrentRequests : new int[]{0, -1}) {
+            try {
+                storage.setConcurrentRequests(concurrentRequests);
+                fail("Expected an IllegalArgumentException for " + concurrentRequests);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(2, storage.getConcurrentRequests());
+    }
+
+    private void store(int count) {
+        for (int i = 0; i < count; i++) {
+            storage.store("test", System.currentTimeMillis(), "{\"n\":" + i + "}");
+        }
+        assertEquals(count, storage.getQueuedCount());
+    }
+
+    private void awaitSent(long count) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (storage.getSentCount() < count && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, storage.getSentCount());
+        assertTrue("Bulks still in flight", storage.getInFlightBulks() == 0);
+    }
+
+    /**
+     * A storage whose client answers the bulks itself, failing them in the given ways before succeeding
+     */
+    static class StubStorage extends AbstractElasticsearchStorage {
+        final List<BulkRequest> bulks = new ArrayList<BulkRequest>();
+        private final LinkedList<Object> failures = new LinkedList<Object>();
+        private final Node node;
+
+        StubStorage() {
+            setFlushInterval(10);
+            setRetryBackoff(1);
+            final Client client = (Client) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Client.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("bulk") && args != null && args.length == 2) {
+                        bulk((BulkRequest) args[0], (ActionListener<BulkResponse>) args[1]);
+                        return null;
+                    }
+                    return handleObjectMethod(proxy, method, args);
+                }
+            });
+            node = (Node) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Node.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("client")) {
+                        return client;
+                    }
+                    return handleObjectMethod(proxy, method, args);
+                }
+            });
+        }
+
+        @Override
+        public Node getNode() {
+            return node;
+        }
+
+        synchronized void reject(Throwable failure) {
+            failures.add(failure);
+        }
+
+        synchronized void rejectItem(int item) {
+            failures.add(item);
+        }
+
+        synchronized List<Integer> bulkSizes() {
+            List<Integer> answer = new ArrayList<Integer>();
+            for (BulkRequest bulk : bulks) {
+                answer.add(bulk.numberOfActions());
+            }
+            return answer;
+        }
+
+        private void bulk(BulkRequest bulk, ActionListener<BulkResponse> listener) {
+            Object failure;
+            synchronized (this) {
+                bulks.add(bulk);
+                failure = failures.poll();
+            }
+            if (failure instanceof Throwable) {
+                listener.onFailure((Throwable) failure);
+                return;
+            }
+            List<ActionRequest> requests = bulk.requests();
+            BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+            for (int i = 0; i < items.length; i++) {
+                IndexRequest request = (IndexRequest) requests.get(i);
+                if (failure != null && (Integer) failure == i) {
+                    items[i] = new BulkItemResponse(i, "create", new BulkItemResponse.Failure(request.index(), request.type(),
+                            request.id(), "EsRejectedExecutionException[busy]", RestStatus.TOO_MANY_REQUESTS));
+                } else {
+                    items[i] = new BulkItemResponse(i, "create", new IndexResponse(request.index(), request.type(),
+                            String.valueOf(i), 1, true));
+                }
+            }
+            listener.onResponse(new BulkResponse(items, 1));
+        }
+
+        private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (method.getName().equals("toString")) {
+                return "Stub" + proxy.getClass().getInterfaces()[0].getSimpleName();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
@@ -21,27 +21,27 @@ import io.fabric8.insight.storage.StorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import javax.management.MBeanServer;
+
 @Component(immediate = true, name = "io.fabric8.insight.log.elasticsearch")
 @Service({StorageService.class})
 public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
 
+    @Reference
+    private MBeanServer mbeanServer;
+
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
     private final ValidatingReference<Node> node = new ValidatingReference<>();
 
     @Activate
     public void activate() {
-        running = true;
         putInsightTemplate();
-        thread = new Thread(this, "ElasticStorage");
-        thread.start();
+        start("ElasticStorage", mbeanServer, "log");
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop(mbeanServer);
     }
 
     private void bindNode(Node node) {
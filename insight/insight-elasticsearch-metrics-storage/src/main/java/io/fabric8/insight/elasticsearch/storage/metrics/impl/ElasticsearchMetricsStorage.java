@@ -21,25 +21,25 @@ import io.fabric8.insight.metrics.model.MetricsStorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import javax.management.MBeanServer;
+
 @Component(immediate = true, name = "io.fabric8.insight.metrics.elasticsearch")
 @Service({MetricsStorageService.class})
 public class ElasticsearchMetricsStorage extends AbstractElasticsearchStorage {
 
     @Activate
     public void activate() {
-        running = true;
-        thread = new Thread(this, "ElasticMetricsStorage");
-        thread.start();
+        start("ElasticMetricsStorage", mbeanServer, "metrics");
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop(mbeanServer);
     }
 
+    @Reference
+    private MBeanServer mbeanServer;
+
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
     private final ValidatingReference<Node> node = new ValidatingReference<>();
 
@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanRegistrationException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -75,12 +76,28 @@ public class InfluxDBMetricsStorage extends AbstractComponent implements Metrics
 
     @Override
     public void store(String type, long timestamp, QueryResult queryResult) {
+        store(type, timestamp, Collections.singletonList(queryResult));
+    }
+
+    @Override
+    public void store(String type, long timestamp, List<QueryResult> queryResults) {
         assertValid();
         if (influxDB == null) {
             throw new IllegalStateException("No influxDB available!");
         }
         List<Serie> series = new LinkedList<>();
+        for (QueryResult queryResult : queryResults) {
+            addSeries(type, timestamp, queryResult, series);
+        }
+        if (!series.isEmpty()) {
+            influxDB.get().write("fabric", TimeUnit.MILLISECONDS, series.toArray(new Serie[series.size()]));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("added " + series.size() + " metrics");
+            }
+        }
+    }
 
+    protected void addSeries(String type, long timestamp, QueryResult queryResult, List<Serie> series) {
         Map<String, Result<?>> results = queryResult.getResults();
         if (results != null) {
             Map<String, Object> data = new HashMap<>();
@@ -135,12 +152,6 @@ public class InfluxDBMetricsStorage extends AbstractComponent implements Metrics
                     );
                 }
             }
-            if (!series.isEmpty()) {
-                influxDB.get().write("fabric", TimeUnit.MILLISECONDS, series.toArray(new Serie[series.size()]));
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("added " + series.size() + " metrics");
-                }
-            }
         }
     }
 
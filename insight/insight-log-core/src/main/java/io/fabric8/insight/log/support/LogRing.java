@@ -0,0 +1,305 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring of log events which any number of threads can add to and query without locking.
+ * <p>
+ * Each event gets the next sequence number and also records the greatest timestamp added so far and the
+ * sequence number of the previous event of its level. These let a query binary search for a time range,
+ * only visit the events of the levels it wants and stop as soon as the remaining events are too old.
+ */
+public class LogRing<T> {
+    private static final int MAX_SPINS = 1000;
+
+    private final int capacity;
+    private final int levelCount;
+    private final AtomicReferenceArray<Entry<T>> entries;
+    private final AtomicReference<Head> head;
+    private final AtomicLong maxSkew = new AtomicLong();
+
+    /**
+     * Called for each matching event, newest first, until it returns false
+     */
+    public interface Visitor<T> {
+        boolean visit(T element, long timestamp);
+    }
+
+    /**
+     * @param capacity   the number of events kept
+     * @param levelCount the number of levels, each event has a level from 0 to levelCount - 1
+     */
+    public LogRing(int capacity, int levelCount) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The size must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.levelCount = levelCount;
+        this.entries = new AtomicReferenceArray<Entry<T>>(capacity);
+        this.head = new AtomicReference<Head>(new Head(-1, 0, Long.MIN_VALUE, newLevelHeads(levelCount)));
+    }
+
+    public void add(T element, long timestamp, int level) {
+        if (null == element) {
+            throw new NullPointerException("Attempted to add null object to buffer");
+        }
+        if (level < 0 || level >= levelCount) {
+            throw new IllegalArgumentException("Level " + level + " is not between 0 and " + (levelCount - 1));
+        }
+        Head current;
+        Head next;
+        do {
+            current = head.get();
+            long maxTimestamp = Math.max(current.maxTimestamp, timestamp);
+            // raise the skew before the event becomes reachable so a query never underestimates it
+            raiseMaxSkew(maxTimestamp - timestamp);
+            long[] lastOfLevel = current.lastOfLevel.clone();
+            lastOfLevel[level] = current.seq + 1;
+            next = new Head(current.seq + 1, current.firstSeq, maxTimestamp, lastOfLevel);
+        } while (!head.compareAndSet(current, next));
+
+        Entry<T> entry = new Entry<T>(next.seq, element, timestamp, next.maxTimestamp, current.lastOfLevel[level]);
+        int index = index(entry.seq);
+        while (true) {
+            Entry<T> old = entries.get(index);
+            // a slow thread must not overwrite a newer event which has already wrapped around the ring
+            if ((old != null && old.seq > entry.seq) || entries.compareAndSet(index, old, entry)) {
+                break;
+            }
+        }
+    }
+
+    public int size() {
+        Head current = head.get();
+        return (int) Math.min(current.seq + 1 - current.firstSeq, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        Head current;
+        do {
+            current = head.get();
+        } while (!head.compareAndSet(current, new Head(current.seq, current.seq + 1, Long.MIN_VALUE, newLevelHeads(levelCount))));
+    }
+
+    /**
+     * @return the greatest timestamp of the events or Long.MIN_VALUE if there are none
+     */
+    public long getLatestTimestamp() {
+        return head.get().maxTimestamp;
+    }
+
+    /**
+     * @return the timestamp of the oldest event or Long.MAX_VALUE if there are none
+     */
+    public long getOldestTimestamp() {
+        Head current = head.get();
+        for (long seq = oldestSeq(current); seq <= current.seq; seq++) {
+            Entry<T> entry = get(seq);
+            if (entry != null) {
+                return entry.timestamp;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the events oldest first
+     */
+    public List<T> getElements() {
+        Head current = head.get();
+        List<T> answer = new ArrayList<T>(capacity);
+        for (long seq = oldestSeq(current); seq <= current.seq; seq++) {
+            Entry<T> entry = get(seq);
+            if (entry != null) {
+                answer.add(entry.element);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Visits the events newest first whose timestamp is after and before the given ones
+     *
+     * @param after   the exclusive lower bound of the timestamps or Long.MIN_VALUE
+     * @param before  the exclusive upper bound of the timestamps or Long.MAX_VALUE
+     * @param levels  the levels to visit indexed by level or null for all of them
+     * @param visitor called for each matching event until it returns false
+     */
+    public void visit(long after, long before, boolean[] levels, Visitor<T> visitor) {
+        Head current = head.get();
+        long oldest = oldestSeq(current);
+        long start = current.seq;
+        if (before < Long.MAX_VALUE) {
+            // an event's maximum timestamp is at most maxSkew after its own timestamp
+            long skew = maxSkew.get();
+            long bound = before > Long.MAX_VALUE - skew ? Long.MAX_VALUE : before + skew;
+            start = lastSeqBelow(bound, oldest, current.seq);
+        }
+        if (levels == null) {
+            for (long seq = start; seq >= oldest; seq--) {
+                Entry<T> entry = get(seq);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.maxTimestamp <= after) {
+                    break;
+                }
+                if (entry.timestamp > after && entry.timestamp < before && !visitor.visit(entry.element, entry.timestamp)) {
+                    break;
+                }
+            }
+        } else {
+            long[] cursors = new long[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                cursors[level] = level < levels.length && levels[level] ? firstOfLevel(current.lastOfLevel[level], start) : -1;
+            }
+            while (true) {
+                // merge the chains of the levels newest first
+                int level = -1;
+                for (int i = 0; i < levelCount; i++) {
+                    if (cursors[i] >= oldest && (level < 0 || cursors[i] > cursors[level])) {
+                        level = i;
+                    }
+                }
+                if (level < 0) {
+                    break;
+                }
+                Entry<T> entry = get(cursors[level]);
+                if (entry == null) {
+                    cursors[level] = -1;
+                    continue;
+                }
+                cursors[level] = entry.previousOfLevel;
+                if (entry.maxTimestamp <= after) {
+                    break;
+                }
+                if (entry.timestamp > after && entry.timestamp < before && !visitor.visit(entry.element, entry.timestamp)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the newest event of a level chain which is no newer than the given sequence number
+     */
+    private long firstOfLevel(long seq, long start) {
+        while (seq > start) {
+            Entry<T> entry = get(seq);
+            if (entry == null) {
+                return -1;
+            }
+            seq = entry.previousOfLevel;
+        }
+        return seq;
+    }
+
+    /**
+     * Binary searches for the newest event whose maximum timestamp is less than the bound
+     */
+    private long lastSeqBelow(long bound, long low, long high) {
+        long answer = low - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            Entry<T> entry = get(middle);
+            if (entry == null || entry.maxTimestamp < bound) {
+                answer = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the event with the given sequence number or null if it has been overwritten. An event which has
+     * been given its sequence number but not stored yet is waited for briefly.
+     */
+    private Entry<T> get(long seq) {
+        int index = index(seq);
+        for (int spins = 0; spins < MAX_SPINS; spins++) {
+            Entry<T> entry = entries.get(index);
+            if (entry != null && entry.seq >= seq) {
+                return entry.seq == seq ? entry : null;
+            }
+            Thread.yield();
+        }
+        return null;
+    }
+
+    private long oldestSeq(Head current) {
+        return Math.max(current.firstSeq, current.seq + 1 - capacity);
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private void raiseMaxSkew(long skew) {
+        long current = maxSkew.get();
+        while (skew > current && !maxSkew.compareAndSet(current, skew)) {
+            current = maxSkew.get();
+        }
+    }
+
+    private static long[] newLevelHeads(int levelCount) {
+        long[] answer = new long[levelCount];
+        Arrays.fill(answer, -1);
+        return answer;
+    }
+
+    private static final class Head {
+        final long seq;
+        final long firstSeq;
+        final long maxTimestamp;
+        final long[] lastOfLevel;
+
+        Head(long seq, long firstSeq, long maxTimestamp, long[] lastOfLevel) {
+            this.seq = seq;
+            this.firstSeq = firstSeq;
+            this.maxTimestamp = maxTimestamp;
+            this.lastOfLevel = lastOfLevel;
+        }
+    }
+
+    private static final class Entry<T> {
+        final long seq;
+        final T element;
+        final long timestamp;
+        final long maxTimestamp;
+        final long previousOfLevel;
+
+        Entry(long seq, T element, long timestamp, long maxTimestamp, long previousOfLevel) {
+            this.seq = seq;
+            this.element = element;
+            this.timestamp = timestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.previousOfLevel = previousOfLevel;
+        }
+    }
+}
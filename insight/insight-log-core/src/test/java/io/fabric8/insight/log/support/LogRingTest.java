@@ -0,0 +1,220 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.support;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogRingTest {
+
+    @Test
+    public void testWraparound() throws Exception {
+        LogRing<String> ring = new LogRing<String>(5, 3);
+        for (int i = 0; i < 12; i++) {
+            ring.add("e" + i, 100 + i, i % 3);
+        }
+
+        assertEquals(5, ring.size());
+        assertEquals(Arrays.asList("e7", "e8", "e9", "e10", "e11"), ring.getElements());
+        assertEquals(107, ring.getOldestTimestamp());
+        assertEquals(111, ring.getLatestTimestamp());
+        assertEquals(Arrays.asList("e11", "e10", "e9", "e8", "e7"), visit(ring, Long.MIN_VALUE, Long.MAX_VALUE, null));
+
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertEquals(Arrays.<String>asList(), ring.getElements());
+        ring.add("e12", 112, 0);
+        assertEquals(Arrays.asList("e12"), ring.getElements());
+    }
+
+    @Test
+    public void testTimeRangeAcrossTheWrap() throws Exception {
+        LogRing<String> ring = new LogRing<String>(8, 1);
+        for (int i = 0; i < 20; i++) {
+            ring.add("e" + i, 100 + i * 10, 0);
+        }
+
+        // e12 to e19 are kept and the range spans the end of the array, e15 is in its last slot
+        assertEquals(Arrays.asList("e16", "e15", "e14", "e13"), visit(ring, 225, 265, null));
+        // both bounds are exclusive
+        assertEquals(Arrays.asList("e15", "e14"), visit(ring, 230, 260, null));
+        // the evicted events are not found any more
+        assertEquals(Arrays.asList("e13", "e12"), visit(ring, Long.MIN_VALUE, 235, null));
+        assertEquals(Arrays.<String>asList(), visit(ring, Long.MIN_VALUE, 200, null));
+        assertEquals(Arrays.asList("e19", "e18"), visit(ring, 270, Long.MAX_VALUE, null));
+    }
+
+    @Test
+    public void testTimeRangeWithOutOfOrderTimestamps() throws Exception {
+        LogRing<String> ring = new LogRing<String>(8, 1);
+        long[] timestamps = {100, 120, 110, 130, 90, 140, 150, 145, 160, 155};
+        for (int i = 0; i < timestamps.length; i++) {
+            ring.add("e" + i, timestamps[i], 0);
+        }
+
+        // e0 and e1 have been evicted, e4 is older than the events before it
+        assertEquals(Arrays.asList("e7", "e5", "e3", "e2"), visit(ring, 105, 150, null));
+        assertEquals(Arrays.asList("e4"), visit(ring, Long.MIN_VALUE, 100, null));
+    }
+
+    @Test
+    public void testLevelFiltering() throws Exception {
+        LogRing<String> ring = new LogRing<String>(10, 3);
+        for (int i = 0; i < 25; i++) {
+            ring.add(i % 3 + ":e" + i, 100 + i, i % 3);
+        }
+
+        assertEquals(Arrays.asList("0:e24", "2:e23", "0:e21", "2:e20", "0:e18", "2:e17", "0:e15"),
+                visit(ring, Long.MIN_VALUE, Long.MAX_VALUE, new boolean[]{true, false, true}));
+        assertEquals(Arrays.asList("1:e22", "1:e19", "1:e16"),
+                visit(ring, Long.MIN_VALUE, Long.MAX_VALUE, new boolean[]{false, true, false}));
+        // levels combined with a time range
+        assertEquals(Arrays.asList("0:e21", "2:e20", "0:e18"),
+                visit(ring, 117, 122, new boolean[]{true, false, true}));
+        // a shorter array leaves out the higher levels
+        assertEquals(Arrays.asList("0:e24", "0:e21", "0:e18", "0:e15"),
+                visit(ring, Long.MIN_VALUE, Long.MAX_VALUE, new boolean[]{true}));
+        assertEquals(Arrays.<String>asList(),
+                visit(ring, Long.MIN_VALUE, Long.MAX_VALUE, new boolean[]{false, false, false}));
+    }
+
+    @Test
+    public void testVisitorStopsTheQuery() throws Exception {
+        LogRing<String> ring = new LogRing<String>(10, 1);
+        for (int i = 0; i < 10; i++) {
+            ring.add("e" + i, 100 + i, 0);
+        }
+        final List<String> visited = new ArrayList<String>();
+        ring.visit(Long.MIN_VALUE, Long.MAX_VALUE, null, new LogRing.Visitor<String>() {
+            @Override
+            public boolean visit(String element, long timestamp) {
+                visited.add(element);
+                return visited.size() < 3;
+            }
+        });
+        assertEquals(Arrays.asList("e9", "e8", "e7"), visited);
+    }
+
+    @Test
+    public void testConcurrentAppendsAndQueries() throws Exception {
+        final int capacity = 256;
+        final int writers = 4;
+        final int eventsPerWriter = 20000;
+        final LogRing<long[]> ring = new LogRing<long[]>(capacity, 2);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final List<String> failures = new CopyOnWriteArrayList<String>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread("writer-" + w) {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    for (int i = 0; i < eventsPerWriter; i++) {
+                        // the element is the writer and its sequence, the timestamp grows with the sequence
+                        ring.add(new long[]{writer, i}, i, i % 2);
+                    }
+                }
+            });
+        }
+        Thread reader = new Thread("reader") {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                while (writing.get()) {
+                    final long[] lastSeen = new long[writers];
+                    Arrays.fill(lastSeen, Long.MAX_VALUE);
+                    final int[] count = new int[1];
+                    ring.visit(1000, Long.MAX_VALUE, new boolean[]{false, true}, new LogRing.Visitor<long[]>() {
+                        @Override
+                        public boolean visit(long[] element, long timestamp) {
+                            int writer = (int) element[0];
+                            if (timestamp <= 1000 || element[1] % 2 != 1 || timestamp != element[1]) {
+                                failures.add("Unexpected event " + Arrays.toString(element) + " at " + timestamp);
+                            }
+                            // the events of each writer are visited newest first
+                            if (element[1] >= lastSeen[writer]) {
+                                failures.add("Event " + Arrays.toString(element) + " visited after " + lastSeen[writer]);
+                            }
+                            lastSeen[writer] = element[1];
+                            count[0]++;
+                            return true;
+                        }
+                    });
+                    if (count[0] > capacity) {
+                        failures.add("Visited " + count[0] + " events of a ring of " + capacity);
+                    }
+                }
+            }
+        };
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        reader.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writing.set(false);
+        reader.join();
+
+        assertEquals(failures.toString(), 0, failures.size());
+        assertEquals(capacity, ring.size());
+        List<long[]> elements = ring.getElements();
+        assertEquals(capacity, elements.size());
+        Set<String> distinct = new HashSet<String>();
+        for (long[] element : elements) {
+            assertTrue("Stale event " + Arrays.toString(element), element[1] >= eventsPerWriter - capacity);
+            distinct.add(Arrays.toString(element));
+        }
+        assertEquals(capacity, distinct.size());
+        assertEquals(eventsPerWriter - 1, ring.getLatestTimestamp());
+    }
+
+    private static List<String> visit(LogRing<String> ring, long after, long before, boolean[] levels) {
+        final List<String> answer = new ArrayList<String>();
+        ring.visit(after, before, levels, new LogRing.Visitor<String>() {
+            @Override
+            public boolean visit(String element, long timestamp) {
+                answer.add(element);
+                return true;
+            }
+        });
+        return answer;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -31,7 +31,7 @@ import io.fabric8.insight.log.LogEvent;
 import io.fabric8.insight.log.LogFilter;
 import io.fabric8.insight.log.LogResults;
 import io.fabric8.insight.log.support.LogQuerySupport;
-import io.fabric8.insight.log.support.LruList;
+import io.fabric8.insight.log.support.LogRing;
 import io.fabric8.insight.log.support.Predicate;
 import org.ops4j.util.property.PropertiesPropertyResolver;
 import org.slf4j.ILoggerFactory;
@@ -44,6 +44,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -65,8 +66,14 @@ import static io.fabric8.common.util.Strings.contains;
 public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean {
     private static final transient Logger LOG = LoggerFactory.getLogger(Log4jLogQuery.class);
 
+    /**
+     * The levels the events are indexed by, any other level is indexed as {@link #OTHER_LEVEL}
+     */
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR, Level.FATAL};
+    private static final int OTHER_LEVEL = LEVELS.length;
+
     private int size = 1000;
-    private LruList<LoggingEvent> events;
+    private LogRing<LoggingEvent> events;
     private boolean addMavenCoordinates = true;
     private AetherBasedResolver resolver;
     private Properties properties = new Properties();
@@ -115,56 +122,43 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     @Deactivate
     public void stop() {
         super.stop();
+        MavenCoordHelper.shutdown();
     }
 
     public LogResults getLogResults(int maxCount) throws IOException {
-        return filterLogResults(null, maxCount);
+        return filterLogResults(Long.MIN_VALUE, Long.MAX_VALUE, null, null, maxCount);
     }
 
     public LogResults queryLogResults(LogFilter filter) {
-        Predicate<LogEvent> predicate = createPredicate(filter);
-        int maxCount = -1;
-        if (filter != null) {
-            maxCount = filter.getCount();
+        if (filter == null) {
+            return filterLogResults(Long.MIN_VALUE, Long.MAX_VALUE, null, null, -1);
+        }
+        // the levels and the time range are looked up using the indexes of the ring so only the text is a predicate
+        boolean[] levels = null;
+        Set<String> levelNames = filter.getLevelsSet();
+        if (levelNames.size() > 0) {
+            levels = new boolean[LEVELS.length + 1];
+            for (String levelName : levelNames) {
+                levels[levelIndex(Level.toLevel(levelName, null))] = true;
+            }
         }
-        return filterLogResults(predicate, maxCount);
+        Long before = filter.getBeforeTimestamp();
+        Long after = filter.getAfterTimestamp();
+        return filterLogResults(after != null ? after : Long.MIN_VALUE, before != null ? before : Long.MAX_VALUE,
+                levels, createPredicate(filter, levels != null && levels[OTHER_LEVEL]), filter.getCount());
     }
 
-    private Predicate<LogEvent> createPredicate(LogFilter filter) {
-        if (filter == null) {
-            return null;
-        }
+    private Predicate<LogEvent> createPredicate(LogFilter filter, boolean otherLevels) {
         final List<Predicate<LogEvent>> predicates = new ArrayList<Predicate<LogEvent>>();
 
         final Set<String> levels = filter.getLevelsSet();
-        if (levels.size() > 0) {
+        if (otherLevels) {
+            // the levels without an index of their own share one so their names still need to be checked
             predicates.add(new Predicate<LogEvent>() {
                 @Override
                 public boolean matches(LogEvent event) {
                     String level = event.getLevel();
-                    return level != null && levels.contains(level.toString());
-                }
-            });
-        }
-        final Long before = filter.getBeforeTimestamp();
-        if (before != null) {
-            final Date date = new Date(before);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.before(date);
-                }
-            });
-        }
-        final Long after = filter.getAfterTimestamp();
-        if (after != null) {
-            final Date date = new Date(after);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.after(date);
+                    return level != null && (levels.contains(level) || levelIndex(Level.toLevel(level, null)) != OTHER_LEVEL);
                 }
             });
         }
@@ -214,47 +208,51 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         }
     }
 
-    protected LogResults filterLogResults(Predicate<LogEvent> predicate, int maxCount) {
-        int matched = 0;
-        long from = Long.MAX_VALUE;
-        long to = Long.MIN_VALUE;
-        List<LogEvent> list = new ArrayList<LogEvent>();
-        Iterable<LoggingEvent> elements = getEvents().getElements();
-        for (LoggingEvent element : elements) {
-            LogEvent logEvent = toLogEvent(element);
-            long timestamp = element.getTimeStamp();
-            if (timestamp > to) {
-                to = timestamp;
-            }
-            if (timestamp < from) {
-                from = timestamp;
-            }
-            if (logEvent != null) {
+    /**
+     * Returns the newest events, oldest first, after and before the given timestamps with one of the given levels
+     * which match the predicate. Only the events which pass the indexes are converted to {@link LogEvent}s.
+     */
+    protected LogResults filterLogResults(long after, long before, boolean[] levels, final Predicate<LogEvent> predicate, final int maxCount) {
+        final List<LogEvent> list = new ArrayList<LogEvent>();
+        LogRing<LoggingEvent> ring = getEvents();
+        ring.visit(after, before, levels, new LogRing.Visitor<LoggingEvent>() {
+            @Override
+            public boolean visit(LoggingEvent element, long timestamp) {
+                LogEvent logEvent = toLogEvent(element);
                 if (predicate == null || predicate.matches(logEvent)) {
                     list.add(logEvent);
-                    matched += 1;
-                    if (maxCount > 0 && matched >= maxCount) {
-                        break;
-                    }
                 }
+                return maxCount <= 0 || list.size() < maxCount;
             }
-        }
+        });
+        Collections.reverse(list);
         LogResults results = new LogResults();
         results.setEvents(list);
+        long from = ring.getOldestTimestamp();
         if (from < Long.MAX_VALUE) {
             results.setFromTimestamp(from);
         }
+        long to = ring.getLatestTimestamp();
         if (to > Long.MIN_VALUE) {
             results.setToTimestamp(to);
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Requested " + maxCount + " logging items. returning "
-                    + results.getEvents().size() + " event(s) from a possible " + getEvents().size());
+                    + results.getEvents().size() + " event(s) from a possible " + ring.size());
 
         }
         return results;
     }
 
+    private static int levelIndex(Level level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                return i;
+            }
+        }
+        return OTHER_LEVEL;
+    }
+
     protected LogEvent toLogEvent(LoggingEvent element) {
         LogEvent answer = new LogEvent();
         answer.setClassName(element.getFQNOfLoggerClass());
@@ -361,14 +359,14 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
 
     // Properties
     //-------------------------------------------------------------------------
-    public LruList<LoggingEvent> getEvents() {
+    public LogRing<LoggingEvent> getEvents() {
         if (events == null) {
-            events = new LruList<LoggingEvent>(LoggingEvent.class, getSize());
+            events = new LogRing<LoggingEvent>(getSize(), LEVELS.length + 1);
         }
         return events;
     }
 
-    public void setEvents(LruList<LoggingEvent> events) {
+    public void setEvents(LogRing<LoggingEvent> events) {
         this.events = events;
     }
 
@@ -404,6 +402,14 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         this.config = config;
     }
 
+    public long getMavenCoordinatesCacheHits() {
+        return MavenCoordHelper.getCacheHits();
+    }
+
+    public long getMavenCoordinatesCacheMisses() {
+        return MavenCoordHelper.getCacheMisses();
+    }
+
     public AetherBasedResolver getResolver() {
         return resolver;
     }
@@ -417,6 +423,6 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         if (addMavenCoordinates) {
             appendMavenCoordinates(record);
         }
-		getEvents().add(record);
+		getEvents().add(record, record.getTimeStamp(), levelIndex(record.getLevel()));
 	}
 }
@@ -31,4 +31,14 @@ public interface Log4jLogQueryMBean extends LogQuerySupportMBean {
     void reconnectAppender();
 
     public void logMessage(LoggingEvent record);
+
+    /**
+     * @return the number of log events whose maven coordinates were already cached
+     */
+    long getMavenCoordinatesCacheHits();
+
+    /**
+     * @return the number of log events whose maven coordinates had to be looked up
+     */
+    long getMavenCoordinatesCacheMisses();
 }
@@ -22,33 +22,183 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.security.AccessController;
 import java.security.CodeSource;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A helper class for finding the maven coordinates
+ * <p>
+ * The coordinates of a class name are cached for each class loader, which is only weakly referenced, and the
+ * coordinates of each jar are cached too. A class name which is not cached yet is resolved on a background
+ * thread so loading the class and reading its jar never happens on the thread which is logging. The background
+ * thread is started on demand and stopped again by {@link #shutdown()}.
  */
 public class MavenCoordHelper {
     private static final transient Logger LOG = LoggerFactory.getLogger(MavenCoordHelper.class);
-    // TODO need to have one of these per class loader ideally
-    private static Map<String, String> classToMavenCoordMap = new ConcurrentHashMap<String, String>();
 
+    private static final int MAX_CLASSES_PER_CLASS_LOADER = 10000;
+    private static final int MAX_JARS = 1000;
+    private static final int MAX_PENDING = 1000;
+    private static final String NOT_FOUND = "";
+
+    private static final ConcurrentMap<ClassLoaderKey, Map<String, String>> classLoaderCaches =
+            new ConcurrentHashMap<ClassLoaderKey, Map<String, String>>();
+    private static final ReferenceQueue<ClassLoader> collectedClassLoaders = new ReferenceQueue<ClassLoader>();
+    private static final Map<String, String> jarCache = createLruCache(MAX_JARS);
+    private static final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong jarHits = new AtomicLong();
+    private static final AtomicLong jarMisses = new AtomicLong();
+    private static ExecutorService resolver;
+
+    /**
+     * Returns the cached coordinates of the class with the given name as loaded by the thread context class loader.
+     * If they are not cached yet they are looked up in the background and null is returned.
+     */
     public static String getMavenCoordinates(String className) {
-        String coordinates = null;
-        if (!Strings.isEmpty(className)) {
-            coordinates = classToMavenCoordMap.get(className);
-            if (coordinates == null) {
-                try {
-                    Class cls = findClass(className);
-                    coordinates = getMavenCoordinates(cls);
-                } catch (Throwable t) {
-                    LOG.debug("Can't find maven coordinate for " + className);
-                }
+        if (Strings.isEmpty(className)) {
+            return null;
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = MavenCoordHelper.class.getClassLoader();
+        }
+        Map<String, String> cache = getClassLoaderCache(classLoader);
+        String coordinates = cache.get(className);
+        if (coordinates != null) {
+            hits.incrementAndGet();
+            return coordinates == NOT_FOUND ? null : coordinates;
+        }
+        misses.incrementAndGet();
+        resolveLater(classLoader, cache, className);
+        return null;
+    }
+
+    public static long getCacheHits() {
+        return hits.get();
+    }
+
+    public static long getCacheMisses() {
+        return misses.get();
+    }
+
+    public static long getJarCacheHits() {
+        return jarHits.get();
+    }
+
+    public static long getJarCacheMisses() {
+        return jarMisses.get();
+    }
+
+    /**
+     * Stops the background thread which resolves the coordinates, a new one is started when they are next looked up
+     */
+    public static void shutdown() {
+        ExecutorService executor;
+        synchronized (MavenCoordHelper.class) {
+            executor = resolver;
+            resolver = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Clears the caches and their statistics
+     */
+    public static void clearCaches() {
+        classLoaderCaches.clear();
+        jarCache.clear();
+        hits.set(0);
+        misses.set(0);
+        jarHits.set(0);
+        jarMisses.set(0);
+    }
+
+    private static Map<String, String> getClassLoaderCache(ClassLoader classLoader) {
+        Map<String, String> cache = classLoaderCaches.get(new ClassLoaderKey(classLoader, null));
+        if (cache == null) {
+            expungeCollectedClassLoaders();
+            cache = createLruCache(MAX_CLASSES_PER_CLASS_LOADER);
+            Map<String, String> existing = classLoaderCaches.putIfAbsent(new ClassLoaderKey(classLoader, collectedClassLoaders), cache);
+            if (existing != null) {
+                cache = existing;
             }
         }
-        return coordinates;
+        return cache;
+    }
+
+    private static void expungeCollectedClassLoaders() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = collectedClassLoaders.poll()) != null) {
+            classLoaderCaches.remove(reference);
+        }
+    }
+
+    private static Map<String, String> createLruCache(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getResolver() {
+        if (resolver == null) {
+            resolver = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_PENDING), new ResolverThreadFactory());
+        }
+        return resolver;
+    }
+
+    private static void resolveLater(final ClassLoader classLoader, final Map<String, String> cache, final String className) {
+        final String key = System.identityHashCode(classLoader) + ":" + className;
+        if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            getResolver().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String coordinates = null;
+                        try {
+                            Class cls = findClass(className, classLoader);
+                            coordinates = getMavenCoordinates(cls);
+                        } catch (Throwable t) {
+                            LOG.debug("Can't find maven coordinate for " + className);
+                        }
+                        cache.put(className, Strings.isEmpty(coordinates) ? NOT_FOUND : coordinates);
+                    } finally {
+                        pending.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // too many classes are waiting already or we are shutting down, this one will be looked up again when it is next logged
+            pending.remove(key);
+        }
     }
 
     public static String getMavenCoordinates(Class cls) throws IOException {
@@ -68,7 +218,7 @@ public class MavenCoordHelper {
                         if (path != null) {
                             File file = new File(path);
                             if (file.exists() && !file.isDirectory()) {
-                                String coordinates = MavenCoordinates.mavenCoordinatesFromJarFile(file);
+                                String coordinates = getJarCoordinates(file);
                                 if (!Strings.isEmpty(coordinates)) {
                                     return coordinates;
                                 }
@@ -110,6 +260,19 @@ public class MavenCoordHelper {
     }
 
 
+    private static String getJarCoordinates(File file) throws IOException {
+        String key = file.getPath();
+        String coordinates = jarCache.get(key);
+        if (coordinates != null) {
+            jarHits.incrementAndGet();
+            return coordinates;
+        }
+        jarMisses.incrementAndGet();
+        coordinates = MavenCoordinates.mavenCoordinatesFromJarFile(file);
+        jarCache.put(key, coordinates);
+        return coordinates;
+    }
+
     /**
      * Find class given class name.
      *
@@ -128,4 +291,67 @@ public class MavenCoordHelper {
             }
         }
     }
+
+    /**
+     * Find class given class name using the given class loader first.
+     */
+    protected static Class findClass(final String className, ClassLoader classLoader) throws ClassNotFoundException {
+        try {
+            return classLoader.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            try {
+                return Class.forName(className);
+            } catch (ClassNotFoundException e1) {
+                return MavenCoordHelper.class.getClassLoader().loadClass(className);
+            }
+        }
+    }
+
+    /**
+     * Weakly references a class loader and compares it by identity so it can key a concurrent map
+     */
+    private static final class ClassLoaderKey extends WeakReference<ClassLoader> {
+        private final int hash;
+
+        ClassLoaderKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.hash = System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClassLoaderKey)) {
+                return false;
+            }
+            ClassLoader classLoader = get();
+            return classLoader != null && classLoader == ((ClassLoaderKey) obj).get();
+        }
+    }
+
+    /**
+     * Creates daemon threads which neither pin the class loader nor the access control context of the thread
+     * which happened to log first
+     */
+    private static final class ResolverThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return AccessController.doPrivileged(new PrivilegedAction<Thread>() {
+                @Override
+                public Thread run() {
+                    Thread thread = new Thread(runnable, "MavenCoordHelper");
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(null);
+                    return thread;
+                }
+            });
+        }
+    }
 }
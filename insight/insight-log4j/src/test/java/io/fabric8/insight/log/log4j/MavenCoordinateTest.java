@@ -20,6 +20,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  */
 public class MavenCoordinateTest {
@@ -36,8 +39,31 @@ public class MavenCoordinateTest {
     }
     @Test
     public void testCoordinates() throws Exception {
-        String coords = MavenCoordHelper.getMavenCoordinates(LoggerFactory.class.getName());
-        System.out.println("Found coords: " + coords);
+        String className = LoggerFactory.class.getName();
+        String coords = awaitCoordinates(className);
+        assertNotNull("Coordinates of " + className + " were not resolved", coords);
+        assertTrue("Unexpected coordinates " + coords, coords.startsWith("org.slf4j:slf4j-api:"));
     }
 
+    @Test
+    public void testResolvesAgainAfterStop() throws Exception {
+        MavenCoordHelper.shutdown();
+        String className = LoggerFactory.class.getName();
+        MavenCoordHelper.clearCaches();
+        String coords = awaitCoordinates(className);
+        assertNotNull("Coordinates of " + className + " were not resolved after a stop", coords);
+    }
+
+    /**
+     * The first lookup only schedules the resolution on the background thread so poll until it completes
+     */
+    private static String awaitCoordinates(String className) throws InterruptedException {
+        String coords = MavenCoordHelper.getMavenCoordinates(className);
+        long timeout = System.currentTimeMillis() + 10000;
+        while (coords == null && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+            coords = MavenCoordHelper.getMavenCoordinates(className);
+        }
+        return coords;
+    }
 }
@@ -15,27 +15,34 @@
  */
 package io.fabric8.insight.metrics.model;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public final class MetricsJSON {
 
-    private static final SimpleDateFormat format;
+    // the metrics and audit events are rendered by several threads at once and SimpleDateFormat is not thread safe
+    private static final ThreadLocal<SimpleDateFormat> format = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+        }
+    };
     private static final ObjectMapper mapper;
 
     static {
-        format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
         mapper = new ObjectMapper();
-        mapper.getDeserializationConfig().with(format);
-        mapper.getSerializationConfig().with(format);
+        mapper.getDeserializationConfig().with(format.get());
+        mapper.getSerializationConfig().with(format.get());
     }
 
     public static String toIso(Date d) {
-        return format.format(d);
+        return format.get().format(d);
     }
 
     public static String toJson(Object o) {
@@ -76,6 +83,44 @@ public final class MetricsJSON {
         }
     }
 
+    /**
+     * Writes the given value to the generator the same way {@link #toJson(Object)} renders it.
+     * Values of the given bean types are serialized by the codec of the generator instead of as strings.
+     */
+    public static void writeJson(JsonGenerator jgen, Object o, Class<?>... beanTypes) throws IOException {
+        if (o instanceof Collection) {
+            jgen.writeStartArray();
+            for (Object c : (Collection) o) {
+                writeJson(jgen, c, beanTypes);
+            }
+            jgen.writeEndArray();
+        } else if (o instanceof Map) {
+            jgen.writeStartObject();
+            for (Map.Entry<Object, Object> e : ((Map<Object, Object>) o).entrySet()) {
+                jgen.writeFieldName(e.getKey().toString());
+                writeJson(jgen, e.getValue(), beanTypes);
+            }
+            jgen.writeEndObject();
+        } else if (o == null) {
+            jgen.writeNull();
+        } else if (o instanceof Date) {
+            jgen.writeString(toIso((Date) o));
+        } else if (isBean(o, beanTypes)) {
+            jgen.writeObject(o);
+        } else {
+            jgen.writeString(o.toString());
+        }
+    }
+
+    private static boolean isBean(Object o, Class<?>[] beanTypes) {
+        for (Class<?> beanType : beanTypes) {
+            if (beanType.isInstance(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static Map parseJson(String str) {
         try {
             return mapper.readValue(str, Map.class);
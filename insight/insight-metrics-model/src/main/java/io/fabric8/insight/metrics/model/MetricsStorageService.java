@@ -15,6 +15,8 @@
  */
 package io.fabric8.insight.metrics.model;
 
+import java.util.List;
+
 /**
  * A storage service for metrics storage
  */
@@ -28,4 +30,13 @@ public interface MetricsStorageService {
      * @param queryResult the data to store
      */
     void store(String type, long timestamp, QueryResult queryResult);
+
+    /**
+     * Store all the QueryResults collected in a single pass
+     *
+     * @param type the name of the query results
+     * @param timestamp the date of the collection
+     * @param queryResults the data to store
+     */
+    void store(String type, long timestamp, List<QueryResult> queryResults);
 }
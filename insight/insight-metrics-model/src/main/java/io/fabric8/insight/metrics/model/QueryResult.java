@@ -24,12 +24,21 @@ public class QueryResult {
     private final Query query;
     private final Date timestamp;
     private final Map<String, Result<?>> results;
+    private final boolean delta;
 
     public QueryResult(Server server, Query query, Date timestamp, Map<String, Result<?>> results) {
+        this(server, query, timestamp, results, false);
+    }
+
+    /**
+     * @param delta true if the results only contain the values which have changed since the previous result
+     */
+    public QueryResult(Server server, Query query, Date timestamp, Map<String, Result<?>> results, boolean delta) {
         this.server = server;
         this.query = query;
         this.timestamp = timestamp;
         this.results = results;
+        this.delta = delta;
     }
 
     public Server getServer() {
@@ -47,4 +56,8 @@ public class QueryResult {
     public Map<String, Result<?>> getResults() {
         return results;
     }
+
+    public boolean isDelta() {
+        return delta;
+    }
 }
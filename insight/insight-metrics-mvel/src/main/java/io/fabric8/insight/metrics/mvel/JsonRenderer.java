@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.mvel;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.MBeanOperResult;
+import io.fabric8.insight.metrics.model.MBeanOpersResult;
+import io.fabric8.insight.metrics.model.MetricsJSON;
+import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.Result;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * Renders a {@link QueryResult} to the same JSON document as the default template, but streams it
+ * through a Jackson generator instead of interpreting the template for every result.
+ */
+public class JsonRenderer {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    public String render(QueryResult qrs) throws IOException {
+        StringWriter writer = new StringWriter(512);
+        JsonGenerator jgen = factory.createGenerator(writer);
+        try {
+            write(jgen, qrs);
+        } finally {
+            jgen.close();
+        }
+        return writer.toString();
+    }
+
+    public void write(JsonGenerator jgen, QueryResult qrs) throws IOException {
+        jgen.writeStartObject();
+        jgen.writeStringField("host", String.valueOf(qrs.getServer().getName()));
+        jgen.writeFieldName("@timestamp");
+        MetricsJSON.writeJson(jgen, qrs.getTimestamp());
+        if (qrs.isDelta()) {
+            jgen.writeBooleanField("delta", true);
+        }
+        jgen.writeObjectFieldStart("queries");
+        for (Map.Entry<String, Result<?>> entry : qrs.getResults().entrySet()) {
+            jgen.writeArrayFieldStart(entry.getKey());
+            Result<?> result = entry.getValue();
+            if (result instanceof MBeanAttrsResult) {
+                for (MBeanAttrResult r : ((MBeanAttrsResult) result).getResults()) {
+                    jgen.writeStartObject();
+                    jgen.writeStringField("name", String.valueOf(r.getObjectName()));
+                    jgen.writeObjectFieldStart("attrs");
+                    for (Map.Entry<String, Object> attr : r.getAttrs().entrySet()) {
+                        jgen.writeFieldName(attr.getKey());
+                        MetricsJSON.writeJson(jgen, attr.getValue());
+                    }
+                    jgen.writeEndObject();
+                    jgen.writeEndObject();
+                }
+            } else if (result instanceof MBeanOpersResult) {
+                for (MBeanOperResult r : ((MBeanOpersResult) result).getResults()) {
+                    jgen.writeStartObject();
+                    jgen.writeStringField("name", String.valueOf(r.getObjectName()));
+                    jgen.writeFieldName("value");
+                    MetricsJSON.writeJson(jgen, r.getValue());
+                    jgen.writeEndObject();
+                }
+            }
+            jgen.writeEndArray();
+        }
+        jgen.writeEndObject();
+        jgen.writeEndObject();
+    }
+
+}
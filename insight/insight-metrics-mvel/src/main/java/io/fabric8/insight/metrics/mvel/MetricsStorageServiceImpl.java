@@ -22,6 +22,8 @@ import io.fabric8.insight.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 /**
  * Implements {@link MetricsStorageService} using the JSON {@link StorageService}
  */
@@ -56,6 +58,21 @@ public class MetricsStorageServiceImpl implements MetricsStorageService {
                 output);
     }
 
+    @Override
+    public void store(String type, long timestamp, List<QueryResult> queryResults) {
+        for (QueryResult qrs : queryResults) {
+            store(type, timestamp, qrs);
+        }
+    }
+
+    /**
+     * Renders the results of the queries without their own template with the default template
+     * instead of streaming them with the {@link JsonRenderer}
+     */
+    public void setUseTemplates(boolean useTemplates) {
+        renderer.setUseTemplates(useTemplates);
+    }
+
     public StorageService getStorageService() {
         return storageService;
     }
@@ -32,9 +32,18 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class Renderer {
 
+    /**
+     * System property which forces the results of the queries without their own template to also be
+     * rendered with the default template instead of the {@link JsonRenderer}
+     */
+    public static final String USE_TEMPLATES = "io.fabric8.insight.metrics.templates";
+
     private Map<Query, String> sources = new ConcurrentHashMap<Query, String>();
     private Map<String, CompiledTemplate> templates = new ConcurrentHashMap<String, CompiledTemplate>();
+    private Map<Query, Boolean> customTemplates = new ConcurrentHashMap<Query, Boolean>();
     private ParserContext context;
+    private JsonRenderer jsonRenderer = new JsonRenderer();
+    private boolean useTemplates = Boolean.getBoolean(USE_TEMPLATES);
 
     public Renderer() {
         context = new ParserContext();
@@ -46,12 +55,33 @@ public class Renderer {
     }
 
     public String render(QueryResult qrs) throws Exception {
+        if (!useTemplates && !hasCustomTemplate(qrs.getQuery())) {
+            return jsonRenderer.render(qrs);
+        }
         Map<String, Object> vars = new HashMap<String, Object>();
         vars.put("result", qrs);
 
         return TemplateRuntime.execute(getTemplate(qrs.getQuery()), context, vars).toString();
     }
 
+    public boolean isUseTemplates() {
+        return useTemplates;
+    }
+
+    public void setUseTemplates(boolean useTemplates) {
+        this.useTemplates = useTemplates;
+    }
+
+    private boolean hasCustomTemplate(Query set) {
+        Boolean custom = customTemplates.get(set);
+        if (custom == null) {
+            custom = set.getTemplate() != null
+                    || getClass().getResource("/io/fabric8/insight/metrics/" + set.getName() + ".mvel") != null;
+            customTemplates.put(set, custom);
+        }
+        return custom;
+    }
+
     private CompiledTemplate getTemplate(Query set) throws IOException {
         String source = getTemplateSource(set);
         CompiledTemplate template = templates.get(source);
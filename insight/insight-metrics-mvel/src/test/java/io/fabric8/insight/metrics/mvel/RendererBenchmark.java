@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.mvel;
+
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrs;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.MBeanOperResult;
+import io.fabric8.insight.metrics.model.MBeanOpers;
+import io.fabric8.insight.metrics.model.MBeanOpersResult;
+import io.fabric8.insight.metrics.model.Query;
+import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.Result;
+import io.fabric8.insight.metrics.model.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering the same metrics query result through the default MVEL template and through
+ * the {@link JsonRenderer} which streams the same document. It is not run by the build, run its main
+ * method from the test classpath instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+
+    private Renderer template;
+    private JsonRenderer json;
+    private QueryResult result;
+
+    /**
+     * Collects the memory and garbage collector attributes and the thread cpu time of this JVM, like the
+     * default insight metrics queries do
+     */
+    @Setup
+    public void setUp() throws Exception {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        MBeanAttrs memory = new MBeanAttrs("memory", "java.lang:type=Memory",
+                Arrays.asList("HeapMemoryUsage", "NonHeapMemoryUsage", "Verbose"));
+        MBeanAttrs gc = new MBeanAttrs("gc", "java.lang:type=GarbageCollector,*",
+                Arrays.asList("CollectionCount", "CollectionTime"));
+        MBeanOpers cpu = new MBeanOpers("cpu", "java.lang:type=Threading", "getThreadCpuTime",
+                Arrays.<Object>asList(1L), Arrays.<String>asList(long.class.getName()));
+        Query query = new Query("benchmark", new HashSet<Request>(Arrays.<Request>asList(memory, gc, cpu)),
+                null, null, null, 0, 0);
+
+        Map<String, Result<?>> results = new LinkedHashMap<String, Result<?>>();
+        results.put(memory.getName(), new MBeanAttrsResult(memory, getAttributes(mbeanServer, memory)));
+        results.put(gc.getName(), new MBeanAttrsResult(gc, getAttributes(mbeanServer, gc)));
+        ObjectName threading = new ObjectName(cpu.getObj());
+        Object cpuTime = mbeanServer.invoke(threading, cpu.getOper(), cpu.getArgs().toArray(),
+                cpu.getSig().toArray(new String[cpu.getSig().size()]));
+        results.put(cpu.getName(), new MBeanOpersResult(cpu,
+                Collections.singletonList(new MBeanOperResult(threading, cpuTime))));
+        result = new QueryResult(new Server("local"), query, new Date(), results);
+
+        template = new Renderer();
+        template.setUseTemplates(true);
+        json = new JsonRenderer();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RendererBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Benchmark
+    public String template() throws Exception {
+        return template.render(result);
+    }
+
+    @Benchmark
+    public String json() throws Exception {
+        return json.render(result);
+    }
+
+    private static List<MBeanAttrResult> getAttributes(MBeanServer mbeanServer, MBeanAttrs request) throws Exception {
+        List<MBeanAttrResult> answer = new ArrayList<MBeanAttrResult>();
+        for (ObjectName name : mbeanServer.queryNames(new ObjectName(request.getObj()), null)) {
+            Map<String, Object> attrs = new LinkedHashMap<String, Object>();
+            for (Object attr : mbeanServer.getAttributes(name, request.getAttrs().toArray(new String[request.getAttrs().size()]))) {
+                attrs.put(((Attribute) attr).getName(), ((Attribute) attr).getValue());
+            }
+            answer.add(new MBeanAttrResult(name, attrs));
+        }
+        return answer;
+    }
+}
@@ -19,7 +19,6 @@ package io.fabric8.insight.metrics.service;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.fabric8.api.*;
-import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.JMXUtils;
 import io.fabric8.groups.Group;
 import io.fabric8.groups.GroupListener;
@@ -43,6 +42,7 @@ import java.net.UnknownHostException;
 import java.security.PrivilegedAction;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.fabric8.common.util.IOHelpers.loadFully;
 import static io.fabric8.insight.metrics.model.MetricsJSON.parseJson;
@@ -72,6 +72,13 @@ public class MetricsCollector implements MetricsCollectorMBean {
     public static final String DEFAULT = "default";
     public static final String LOCK_GLOBAL = "global";
     public static final String LOCK_HOST = "host";
+    public static final String BATCH = "batch";
+    public static final String KEYFRAME_PERIOD = "keyframePeriod";
+
+    /**
+     * How often the batch collection looks for the queries which are due, in milliseconds
+     */
+    private static final long BATCH_TICK = 1000;
 
     private static final transient Logger LOG = LoggerFactory.getLogger(MetricsCollector.class);
 
@@ -86,14 +93,29 @@ public class MetricsCollector implements MetricsCollectorMBean {
     @Reference
     private MBeanServer mbeanServer;
 
-    @Reference(name = "storage", referenceInterface = MetricsStorageService.class)
-    private final ValidatingReference<MetricsStorageService> storage = new ValidatingReference<>();
+    /**
+     * Every bound storage receives all the results, so a local storage keeps them while an external one is down
+     */
+    @Reference(name = "storage", referenceInterface = MetricsStorageService.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC, bind = "bindStorage", unbind = "unbindStorage")
+    private final List<MetricsStorageService> storages = new CopyOnWriteArrayList<MetricsStorageService>();
 
     private int defaultDelay = 60;
     private int threadPoolSize = 5;
     private String type = "sta";
     private BundleContext bundleContext;
 
+    /**
+     * When enabled all the queries due are collected in a single pass every tick and only the values
+     * which changed since the previous collection are stored, with a full result every keyframe period.
+     */
+    @Property(name = BATCH, boolValue = false)
+    private boolean batch;
+    @Property(name = KEYFRAME_PERIOD, intValue = 600)
+    private int keyframePeriod = 600;
+
+    private final AtomicLong collectedValues = new AtomicLong();
+    private final AtomicLong sentValues = new AtomicLong();
+
     static class QueryState {
         ScheduledFuture<?> future;
         Server server;
@@ -103,9 +125,13 @@ public class MetricsCollector implements MetricsCollectorMBean {
         long lastSent;
         Map metadata;
         Group<QueryNodeState> lock;
+        long nextRun;
+        long lastFull;
 
         public void close() {
-            future.cancel(false);
+            if (future != null) {
+                future.cancel(false);
+            }
             if (lock != null) {
                 try {
                     lock.close();
@@ -117,8 +143,14 @@ public class MetricsCollector implements MetricsCollectorMBean {
     }
 
     @Activate
-    private void activate(BundleContext bundleContext) throws Exception {
+    private void activate(BundleContext bundleContext, Map<String, ?> properties) throws Exception {
         this.bundleContext = bundleContext;
+        if (properties.get(BATCH) != null) {
+            this.batch = Boolean.parseBoolean(properties.get(BATCH).toString());
+        }
+        if (properties.get(KEYFRAME_PERIOD) != null) {
+            this.keyframePeriod = Integer.parseInt(properties.get(KEYFRAME_PERIOD).toString());
+        }
         this.executor = new ScheduledThreadPoolExecutor(threadPoolSize);
         this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
         this.executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
@@ -129,6 +161,9 @@ public class MetricsCollector implements MetricsCollectorMBean {
                 process();
             }
         }, 1, defaultDelay, TimeUnit.SECONDS);
+        if (batch) {
+            this.executor.scheduleAtFixedRate(new BatchTask(), BATCH_TICK, BATCH_TICK, TimeUnit.MILLISECONDS);
+        }
 
         JMXUtils.registerMBean(this, mbeanServer, new ObjectName("io.fabric8.insight:type=MetricsCollector"));
     }
@@ -156,11 +191,29 @@ public class MetricsCollector implements MetricsCollectorMBean {
     }
 
     private void bindStorage(MetricsStorageService storage) {
-        this.storage.bind(storage);
+        this.storages.add(storage);
     }
 
     private void unbindStorage(MetricsStorageService storage) {
-        this.storage.unbind(storage);
+        this.storages.remove(storage);
+    }
+
+    /**
+     * Stores the results in every storage, a failing storage does not prevent the others from storing them
+     *
+     * @return whether all the storages stored the results
+     */
+    private boolean store(List<MetricsStorageService> svcs, long timestamp, List<QueryResult> results) {
+        boolean stored = true;
+        for (MetricsStorageService svc : svcs) {
+            try {
+                svc.store(type, timestamp, results);
+            } catch (Throwable e) {
+                LOG.error("Error sending metrics to " + svc, e);
+                stored = false;
+            }
+        }
+        return stored;
     }
 
     static class QueryNodeState extends NodeState {
@@ -189,6 +242,14 @@ public class MetricsCollector implements MetricsCollectorMBean {
         this.type = type;
     }
 
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    public void setKeyframePeriod(int keyframePeriod) {
+        this.keyframePeriod = keyframePeriod;
+    }
+
     @Override
     public String getMetrics() {
         Map<String, Object> meta = new HashMap<String, Object>();
@@ -198,6 +259,16 @@ public class MetricsCollector implements MetricsCollectorMBean {
         return MetricsJSON.toJson(meta);
     }
 
+    @Override
+    public long getCollectedValues() {
+        return collectedValues.get();
+    }
+
+    @Override
+    public long getSentValues() {
+        return sentValues.get();
+    }
+
     public void process() {
         try {
             Container container = MetricsCollector.this.fabricService.getCurrentContainer();
@@ -245,11 +316,15 @@ public class MetricsCollector implements MetricsCollectorMBean {
                     }
 
                     long delay = q.getPeriod() > 0 ? q.getPeriod() : defaultDelay;
-                    state.future = this.executor.scheduleAtFixedRate(
-                            new Task(state, storage),
-                            Math.round(Math.random() * 1000) + 1,
-                            delay * 1000,
-                            TimeUnit.MILLISECONDS);
+                    if (batch) {
+                        state.nextRun = System.currentTimeMillis() + Math.round(Math.random() * 1000) + 1;
+                    } else {
+                        state.future = this.executor.scheduleAtFixedRate(
+                                new Task(state),
+                                Math.round(Math.random() * 1000) + 1,
+                                delay * 1000,
+                                TimeUnit.MILLISECONDS);
+                    }
                     queries.put(q, state);
                 }
             }
@@ -324,16 +399,16 @@ public class MetricsCollector implements MetricsCollectorMBean {
 
         private final QueryState query;
 
-        public Task(QueryState query, ValidatingReference<MetricsStorageService> storage) {
+        public Task(QueryState query) {
             this.query = query;
         }
 
         @Override
         public void run() {
             try {
-                final MetricsStorageService svc = storage.get();
+                final List<MetricsStorageService> svcs = new ArrayList<MetricsStorageService>(storages);
                 // Abort if required services aren't available
-                if (mbeanServer == null || svc == null) {
+                if (mbeanServer == null || svcs.isEmpty()) {
                     return;
                 }
                 // If there's a lock, check we are the master
@@ -365,22 +440,129 @@ public class MetricsCollector implements MetricsCollectorMBean {
                             query.lastResultSent = false;
                         }
                         if (!query.lastResultSent) {
-                            renderAndSend(svc, query.lastResult);
+                            renderAndSend(svcs, query.lastResult);
                         }
                     }
                     query.lastResult = qrs;
                     query.lastResultSent = true;
                     query.lastSent = qrs.getTimestamp().getTime();
-                    renderAndSend(svc, qrs);
+                    renderAndSend(svcs, qrs);
                 }
             } catch (Throwable e) {
                 LOG.error("Error sending metrics", e);
             }
         }
 
-        private void renderAndSend(MetricsStorageService svc, QueryResult qrs) throws Exception {
+        private void renderAndSend(List<MetricsStorageService> svcs, QueryResult qrs) throws Exception {
             long timestamp = qrs.getTimestamp().getTime();
-            svc.store(type, timestamp, qrs);
+            store(svcs, timestamp, Collections.singletonList(qrs));
+        }
+
+    }
+
+    /**
+     * Collects all the queries which are due in one pass over the MBeanServer and stores their
+     * changes in a single call to the storage.
+     */
+    class BatchTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                final List<MetricsStorageService> svcs = new ArrayList<MetricsStorageService>(storages);
+                // Abort if required services aren't available
+                if (mbeanServer == null || svcs.isEmpty()) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                final Map<Server, List<QueryState>> due = new LinkedHashMap<Server, List<QueryState>>();
+                for (QueryState state : queries.values()) {
+                    if (state.nextRun > now) {
+                        continue;
+                    }
+                    long delay = state.query.getPeriod() > 0 ? state.query.getPeriod() : defaultDelay;
+                    while (state.nextRun <= now) {
+                        state.nextRun += TimeUnit.SECONDS.toMillis(delay);
+                    }
+                    // If there's a lock, check we are the master
+                    if (state.lock != null && !state.lock.isMaster()) {
+                        continue;
+                    }
+                    List<QueryState> states = due.get(state.server);
+                    if (states == null) {
+                        states = new ArrayList<QueryState>();
+                        due.put(state.server, states);
+                    }
+                    states.add(state);
+                }
+                if (due.isEmpty()) {
+                    return;
+                }
+
+                Subject subject = new Subject();
+                subject.getPrincipals().add(new RolePrincipal("admin"));
+
+                for (final Map.Entry<Server, List<QueryState>> entry : due.entrySet()) {
+                    final List<Query> batchQueries = new ArrayList<Query>();
+                    for (QueryState state : entry.getValue()) {
+                        batchQueries.add(state.query);
+                    }
+                    List<QueryResult> results = Subject.doAs(subject, new PrivilegedAction<List<QueryResult>>() {
+                        @Override
+                        public List<QueryResult> run() {
+                            try {
+                                return JmxUtils.execute(entry.getKey(), batchQueries, mbeanServer);
+                            } catch (Throwable e) {
+                                LOG.error("Error retrieving metrics for " + entry.getValue().size() + " queries", e);
+                            }
+                            return null;
+                        }
+                    });
+                    if (results != null) {
+                        send(svcs, entry.getValue(), results);
+                    }
+                }
+            } catch (Throwable e) {
+                LOG.error("Error sending metrics", e);
+            }
+        }
+
+        private void send(List<MetricsStorageService> svcs, List<QueryState> states, List<QueryResult> results) {
+            List<QueryResult> changes = new ArrayList<QueryResult>();
+            List<QueryState> sent = new ArrayList<QueryState>();
+            long timestamp = 0;
+            int values = 0;
+            for (int i = 0; i < states.size(); i++) {
+                QueryState state = states.get(i);
+                QueryResult qrs = results.get(i);
+                timestamp = qrs.getTimestamp().getTime();
+                collectedValues.addAndGet(JmxUtils.countValues(qrs));
+                QueryResult change;
+                if (state.lastResult == null || timestamp - state.lastFull >= TimeUnit.SECONDS.toMillis(keyframePeriod)) {
+                    change = qrs;
+                    state.lastFull = timestamp;
+                } else {
+                    change = JmxUtils.delta(state.lastResult, qrs);
+                }
+                state.lastResult = qrs;
+                if (change != null) {
+                    state.lastSent = timestamp;
+                    values += JmxUtils.countValues(change);
+                    changes.add(change);
+                    sent.add(state);
+                }
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+            if (store(svcs, timestamp, changes)) {
+                sentValues.addAndGet(values);
+            } else {
+                // the following deltas would not apply to the failed storage, start again from a full result
+                for (QueryState state : sent) {
+                    state.lastFull = 0;
+                }
+            }
         }
 
     }
@@ -18,4 +18,14 @@ package io.fabric8.insight.metrics.service;
 public interface MetricsCollectorMBean {
 
     String getMetrics();
+
+    /**
+     * Returns the number of values read from the MBeans by the batch collection
+     */
+    long getCollectedValues();
+
+    /**
+     * Returns the number of values stored by the batch collection, unchanged values are not stored
+     */
+    long getSentValues();
 }
@@ -34,6 +34,151 @@ public class JmxUtils {
         return new QueryResult(server, query, new Date(), queryResults);
     }
 
+    /**
+     * Executes all the given queries in a single pass over the MBeanServer: the attributes requested
+     * by all the queries are grouped by ObjectName so that each MBean is only read once.
+     * MBeans unregistered during the pass are skipped.
+     */
+    public static List<QueryResult> execute(Server server, List<Query> queries, MBeanServerConnection mbs) throws JMException, IOException {
+        Date timestamp = new Date();
+        // Resolve the MBeans and gather the attributes to read for each of them
+        Map<String, Set<ObjectName>> names = new HashMap<String, Set<ObjectName>>();
+        Map<ObjectName, Set<String>> attributes = new LinkedHashMap<ObjectName, Set<String>>();
+        for (Query query : queries) {
+            for (Request request : query.getRequests()) {
+                if (request instanceof MBeanAttrs) {
+                    MBeanAttrs attrs = (MBeanAttrs) request;
+                    for (ObjectName mbean : queryNames(attrs.getObj(), names, mbs)) {
+                        Set<String> set = attributes.get(mbean);
+                        if (set == null) {
+                            set = new LinkedHashSet<String>();
+                            attributes.put(mbean, set);
+                        }
+                        set.addAll(attrs.getAttrs());
+                    }
+                }
+            }
+        }
+        // Read the attributes, one call per MBean
+        Map<ObjectName, Map<String, Object>> values = new HashMap<ObjectName, Map<String, Object>>();
+        for (Map.Entry<ObjectName, Set<String>> entry : attributes.entrySet()) {
+            Set<String> attrs = entry.getValue();
+            AttributeList al;
+            try {
+                al = mbs.getAttributes(entry.getKey(), attrs.toArray(new String[attrs.size()]));
+            } catch (InstanceNotFoundException e) {
+                continue;
+            }
+            Map<String, Object> map = new HashMap<String, Object>();
+            for (Attribute attribute : al.asList()) {
+                map.put(attribute.getName(), getJmxValue(attribute.getValue()));
+            }
+            values.put(entry.getKey(), map);
+        }
+        // Dispatch the values to the queries
+        List<QueryResult> results = new ArrayList<QueryResult>(queries.size());
+        for (Query query : queries) {
+            Map<String, Result<?>> queryResults = new HashMap<String, Result<?>>();
+            for (Request request : query.getRequests()) {
+                if (request instanceof MBeanAttrs) {
+                    MBeanAttrs attrs = (MBeanAttrs) request;
+                    List<MBeanAttrResult> attrResults = new ArrayList<MBeanAttrResult>();
+                    for (ObjectName mbean : queryNames(attrs.getObj(), names, mbs)) {
+                        Map<String, Object> all = values.get(mbean);
+                        if (all != null) {
+                            Map<String, Object> map = new HashMap<String, Object>();
+                            for (String attr : attrs.getAttrs()) {
+                                if (all.containsKey(attr)) {
+                                    map.put(attr, all.get(attr));
+                                }
+                            }
+                            attrResults.add(new MBeanAttrResult(mbean, map));
+                        }
+                    }
+                    queryResults.put(request.getName(), new MBeanAttrsResult(attrs, attrResults));
+                } else {
+                    queryResults.put(request.getName(), execute(server, request, mbs));
+                }
+            }
+            results.add(new QueryResult(server, query, timestamp, queryResults));
+        }
+        return results;
+    }
+
+    /**
+     * Returns a delta of the given result containing only the MBean attributes and operation results
+     * whose value has changed since the previous result, or null if nothing has changed.
+     */
+    public static QueryResult delta(QueryResult previous, QueryResult current) {
+        Map<String, Result<?>> changes = new HashMap<String, Result<?>>();
+        for (Map.Entry<String, Result<?>> entry : current.getResults().entrySet()) {
+            Result<?> result = entry.getValue();
+            Result<?> last = previous.getResults().get(entry.getKey());
+            if (result instanceof MBeanAttrsResult && last instanceof MBeanAttrsResult) {
+                Map<ObjectName, Map<String, Object>> lastValues = new HashMap<ObjectName, Map<String, Object>>();
+                for (MBeanAttrResult r : ((MBeanAttrsResult) last).getResults()) {
+                    lastValues.put(r.getObjectName(), r.getAttrs());
+                }
+                List<MBeanAttrResult> changed = new ArrayList<MBeanAttrResult>();
+                for (MBeanAttrResult r : ((MBeanAttrsResult) result).getResults()) {
+                    Map<String, Object> lastAttrs = lastValues.get(r.getObjectName());
+                    Map<String, Object> attrs = new HashMap<String, Object>();
+                    for (Map.Entry<String, Object> attr : r.getAttrs().entrySet()) {
+                        if (lastAttrs == null || !lastAttrs.containsKey(attr.getKey())
+                                || !equals(attr.getValue(), lastAttrs.get(attr.getKey()))) {
+                            attrs.put(attr.getKey(), attr.getValue());
+                        }
+                    }
+                    if (!attrs.isEmpty()) {
+                        changed.add(new MBeanAttrResult(r.getObjectName(), attrs));
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    changes.put(entry.getKey(), new MBeanAttrsResult(((MBeanAttrsResult) result).getRequest(), changed));
+                }
+            } else if (!result.equals(last)) {
+                changes.put(entry.getKey(), result);
+            }
+        }
+        if (changes.isEmpty()) {
+            return null;
+        }
+        return new QueryResult(current.getServer(), current.getQuery(), current.getTimestamp(), changes, true);
+    }
+
+    /**
+     * Returns the number of MBean attributes and operation results in the given result
+     */
+    public static int countValues(QueryResult result) {
+        int count = 0;
+        for (Result<?> r : result.getResults().values()) {
+            if (r instanceof MBeanAttrsResult) {
+                for (MBeanAttrResult attrResult : ((MBeanAttrsResult) r).getResults()) {
+                    count += attrResult.getAttrs().size();
+                }
+            } else if (r instanceof MBeanOpersResult) {
+                count += ((MBeanOpersResult) r).getResults().size();
+            }
+        }
+        return count;
+    }
+
+    private static Set<ObjectName> queryNames(String obj, Map<String, Set<ObjectName>> names, MBeanServerConnection mbs) throws JMException, IOException {
+        Set<ObjectName> set = names.get(obj);
+        if (set == null) {
+            set = mbs.queryNames(new ObjectName(obj), null);
+            names.put(obj, set);
+        }
+        return set;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        if (a instanceof Object[] && b instanceof Object[]) {
+            return Arrays.deepEquals((Object[]) a, (Object[]) b);
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+
     private static Result execute(Server server, Request request, MBeanServerConnection mbs) throws JMException, IOException {
         if (request instanceof MBeanAttrs) {
             return execute(server, ((MBeanAttrs) request), mbs);
@@ -20,7 +20,9 @@ import io.fabric8.insight.metrics.model.MBeanAttrs;
 import io.fabric8.insight.metrics.model.MBeanOpers;
 import io.fabric8.insight.metrics.model.Query;
 import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.Result;
 import io.fabric8.insight.metrics.service.support.JmxUtils;
+import io.fabric8.insight.metrics.mvel.JsonRenderer;
 import io.fabric8.insight.metrics.mvel.Renderer;
 import io.fabric8.insight.metrics.model.QueryResult;
 import io.fabric8.insight.metrics.model.Server;
@@ -28,11 +30,16 @@ import org.junit.Test;
 
 import java.lang.management.ManagementFactory;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class MetricsTest {
 
@@ -55,4 +62,56 @@ public class MetricsTest {
         assertEquals("local", map.get("host"));
         assertNotNull(map.get("@timestamp"));
     }
+
+    @Test
+    public void testJsonRenderer() throws Exception {
+        Query query = new Query("test", new HashSet<Request>(Arrays.asList(
+                new MBeanAttrs("memory", "java.lang:type=Memory",
+                        Arrays.asList("HeapMemoryUsage", "NonHeapMemoryUsage", "Verbose")),
+                new MBeanAttrs("gc", "java.lang:type=GarbageCollector,*",
+                        Arrays.asList("CollectionCount", "CollectionTime")),
+                new MBeanOpers("cpu", "java.lang:type=Threading", "getThreadCpuTime",
+                        Arrays.<Object>asList(1L), Arrays.<String>asList(long.class.getName()))
+        )), null, null, null, 0, 0);
+
+        QueryResult qrs = JmxUtils.execute(new Server("local"), query,
+                ManagementFactory.getPlatformMBeanServer());
+        Renderer template = new Renderer();
+        template.setUseTemplates(true);
+        JsonRenderer json = new JsonRenderer();
+
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(mapper.readValue(template.render(qrs), Map.class), mapper.readValue(json.render(qrs), Map.class));
+    }
+
+    @Test
+    public void testBatchDelta() throws Exception {
+        Query memory = new Query("memory", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("memory", "java.lang:type=Memory",
+                        Arrays.asList("HeapMemoryUsage", "ObjectPendingFinalizationCount"))
+        )), null, null, null, 0, 0);
+        Query runtime = new Query("runtime", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("runtime", "java.lang:type=Runtime", Arrays.asList("Name", "VmName"))
+        )), null, null, null, 0, 0);
+
+        List<QueryResult> first = JmxUtils.execute(new Server("local"), Arrays.asList(memory, runtime),
+                ManagementFactory.getPlatformMBeanServer());
+        assertEquals(2, first.size());
+        assertEquals(2, JmxUtils.countValues(first.get(0)));
+        assertEquals(2, JmxUtils.countValues(first.get(1)));
+
+        List<QueryResult> second = JmxUtils.execute(new Server("local"), Arrays.asList(memory, runtime),
+                ManagementFactory.getPlatformMBeanServer());
+        assertNull(JmxUtils.delta(first.get(1), second.get(1)));
+
+        QueryResult delta = JmxUtils.delta(new QueryResult(new Server("local"), runtime, new Date(),
+                new HashMap<String, Result<?>>()), second.get(1));
+        assertNotNull(delta);
+        assertTrue(delta.isDelta());
+        assertEquals(2, JmxUtils.countValues(delta));
+
+        String output = new Renderer().render(delta);
+        Map map = new ObjectMapper().readValue(output, Map.class);
+        assertEquals(Boolean.TRUE, map.get("delta"));
+    }
 }
@@ -47,6 +47,7 @@ import javax.management.MBeanRegistrationException;
 import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -135,13 +136,30 @@ public class RhqMetricsStorage extends AbstractComponent implements MetricsStora
 
     @Override
     public void store(String type, long timestamp, QueryResult queryResult) {
+        store(type, timestamp, Collections.singletonList(queryResult));
+    }
+
+    @Override
+    public void store(String type, long timestamp, List<QueryResult> queryResults) {
         assertValid();
         if (metricsService == null) {
             throw new IllegalStateException("No metricsService available!");
         }
+        Set<RawNumericMetric> data = new HashSet<>();
+        for (QueryResult queryResult : queryResults) {
+            addMetrics(type, timestamp, queryResult, data);
+        }
+        if (!data.isEmpty()) {
+            metricsService.addData(data);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("added " + data.size() + " metrics");
+            }
+        }
+    }
+
+    protected void addMetrics(String type, long timestamp, QueryResult queryResult, Set<RawNumericMetric> data) {
         Map<String, Result<?>> results = queryResult.getResults();
         if (results != null) {
-            Set<RawNumericMetric> data = new HashSet<>();
             Set<Map.Entry<String, Result<?>>> entries = results.entrySet();
             for (Map.Entry<String, Result<?>> entry : entries) {
                 String key = entry.getKey();
@@ -181,12 +199,6 @@ public class RhqMetricsStorage extends AbstractComponent implements MetricsStora
                     }
                 }
             }
-            if (!data.isEmpty()) {
-                metricsService.addData(data);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("added " + data.size() + " metrics");
-                }
-            }
         }
     }
 
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+/**
+ * How the values of a series are combined when it is downsampled
+ */
+public enum Aggregation {
+
+    AVG("avg"),
+    MIN("min"),
+    MAX("max");
+
+    private final String suffix;
+
+    Aggregation(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Returns the name of the rollup series of the given series for this aggregation
+     */
+    String rollupName(String series) {
+        return series + "|" + suffix;
+    }
+
+    /**
+     * Combines the given value with the aggregate of the previous values, count includes the given value
+     */
+    double combine(double current, double value, int count) {
+        if (count == 1) {
+            return value;
+        }
+        switch (this) {
+            case MIN:
+                return Math.min(current, value);
+            case MAX:
+                return Math.max(current, value);
+            default:
+                // running average
+                return current + (value - current) / count;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A fixed size block of a segment holding the compressed points of a single series.
+ * <p>
+ * Points are compressed the way the Gorilla paper describes: timestamps are stored as the delta of their
+ * deltas and values as the XOR with the previous value, so a metric collected at a regular period whose value
+ * did not change only takes two bits. The header is updated after every point, the count last, so the points
+ * of a block can always be read back even if the process died while writing one.
+ */
+final class Block {
+
+    static final int SIZE = 4096;
+    static final int HEADER_SIZE = 32;
+
+    private static final int SERIES = 0;
+    private static final int COUNT = 4;
+    private static final int BITS = 8;
+    private static final int FIRST = 16;
+    private static final int LAST = 24;
+
+    private static final int CAPACITY_BITS = (SIZE - HEADER_SIZE) * 8;
+    // the most bits a single point can take: the largest timestamp and value encodings
+    private static final int MAX_POINT_BITS = 4 + 64 + 2 + 5 + 6 + 64;
+
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    private int count;
+    private int bits;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValue;
+    private int leading = -1;
+    private int trailing;
+
+    private Block(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    /**
+     * Starts a new block for the given series at the given offset of the buffer
+     */
+    static Block create(ByteBuffer buffer, int offset, int seriesId) {
+        buffer.putInt(offset + COUNT, 0);
+        buffer.putInt(offset + BITS, 0);
+        // 0 marks a free block
+        buffer.putInt(offset + SERIES, seriesId + 1);
+        return new Block(buffer, offset);
+    }
+
+    /**
+     * Returns the series of the block at the given offset or -1 if the block has not been allocated
+     */
+    static int getSeriesId(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + SERIES) - 1;
+    }
+
+    static int getCount(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + COUNT);
+    }
+
+    static long getFirstTimestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + FIRST);
+    }
+
+    static long getLastTimestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + LAST);
+    }
+
+    boolean hasRoom() {
+        return bits + MAX_POINT_BITS <= CAPACITY_BITS;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    void append(long timestamp, double value) {
+        long v = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            buffer.putLong(offset + FIRST, timestamp);
+            writeBits(v, 64);
+        } else {
+            long delta = timestamp - lastTimestamp;
+            long dod = delta - lastDelta;
+            if (dod == 0) {
+                writeBits(0, 1);
+            } else if (fits(dod, 7)) {
+                writeBits(0x2, 2);
+                writeBits(dod, 7);
+            } else if (fits(dod, 9)) {
+                writeBits(0x6, 3);
+                writeBits(dod, 9);
+            } else if (fits(dod, 12)) {
+                writeBits(0xe, 4);
+                writeBits(dod, 12);
+            } else {
+                writeBits(0xf, 4);
+                writeBits(dod, 64);
+            }
+            lastDelta = delta;
+
+            long xor = v ^ lastValue;
+            if (xor == 0) {
+                writeBits(0, 1);
+            } else {
+                int lz = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int tz = Long.numberOfTrailingZeros(xor);
+                if (leading >= 0 && lz >= leading && tz >= trailing) {
+                    // the meaningful bits fit in the previous window
+                    writeBits(0x2, 2);
+                    writeBits(xor >>> trailing, 64 - leading - trailing);
+                } else {
+                    int length = 64 - lz - tz;
+                    writeBits(0x3, 2);
+                    writeBits(lz, 5);
+                    writeBits(length - 1, 6);
+                    writeBits(xor >>> tz, length);
+                    leading = lz;
+                    trailing = tz;
+                }
+            }
+        }
+        lastTimestamp = timestamp;
+        lastValue = v;
+        count++;
+        buffer.putLong(offset + LAST, timestamp);
+        buffer.putInt(offset + BITS, bits);
+        buffer.putInt(offset + COUNT, count);
+    }
+
+    private static boolean fits(long value, int bits) {
+        long bound = 1L << (bits - 1);
+        return value >= -bound && value < bound;
+    }
+
+    private void writeBits(long value, int n) {
+        int position = HEADER_SIZE * 8 + bits;
+        bits += n;
+        while (n > 0) {
+            int index = offset + (position >>> 3);
+            int used = position & 7;
+            int free = 8 - used;
+            int take = Math.min(free, n);
+            int chunk = (int) ((value >>> (n - take)) & ((1 << take) - 1));
+            int current = used == 0 ? 0 : buffer.get(index);
+            buffer.put(index, (byte) (current | (chunk << (free - take))));
+            position += take;
+            n -= take;
+        }
+    }
+
+    /**
+     * Decodes the points of the block at the given offset whose timestamp is within the given range
+     */
+    static void read(ByteBuffer buffer, int offset, long from, long to, List<DataPoint> points) {
+        int count = getCount(buffer, offset);
+        if (count == 0 || getLastTimestamp(buffer, offset) < from || getFirstTimestamp(buffer, offset) > to) {
+            return;
+        }
+        Reader reader = new Reader(buffer, offset);
+        long timestamp = getFirstTimestamp(buffer, offset);
+        long value = reader.readBits(64);
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; ; i++) {
+            if (timestamp > to) {
+                break;
+            }
+            if (timestamp >= from) {
+                points.add(new DataPoint(timestamp, Double.longBitsToDouble(value)));
+            }
+            if (i + 1 == count) {
+                break;
+            }
+            long dod;
+            if (reader.readBits(1) == 0) {
+                dod = 0;
+            } else if (reader.readBits(1) == 0) {
+                dod = reader.readSigned(7);
+            } else if (reader.readBits(1) == 0) {
+                dod = reader.readSigned(9);
+            } else if (reader.readBits(1) == 0) {
+                dod = reader.readSigned(12);
+            } else {
+                dod = reader.readBits(64);
+            }
+            delta += dod;
+            timestamp += delta;
+            if (reader.readBits(1) == 1) {
+                if (reader.readBits(1) == 0) {
+                    value ^= reader.readBits(64 - leading - trailing) << trailing;
+                } else {
+                    leading = (int) reader.readBits(5);
+                    int length = (int) reader.readBits(6) + 1;
+                    trailing = 64 - leading - length;
+                    value ^= reader.readBits(length) << trailing;
+                }
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private int position = HEADER_SIZE * 8;
+
+        Reader(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        long readBits(int n) {
+            long value = 0;
+            while (n > 0) {
+                int used = position & 7;
+                int available = 8 - used;
+                int take = Math.min(available, n);
+                int current = buffer.get(offset + (position >>> 3)) & 0xff;
+                int chunk = (current >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                position += take;
+                n -= take;
+            }
+            return value;
+        }
+
+        long readSigned(int n) {
+            long value = readBits(n);
+            return (value << (64 - n)) >> (64 - n);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Stores series in the blocks of a directory of segments.
+ * <p>
+ * Each series appends to its own block and starts a new one once it is full, new blocks are allocated from the
+ * latest segment and a new segment is created once it is full. Old segments are removed as a whole once all their
+ * points are older than the retention. The names of the series are kept in an index file whose line numbers are
+ * the series ids written in the block headers.
+ * <p>
+ * This class is not thread safe.
+ */
+final class BlockStore implements Closeable {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(BlockStore.class);
+
+    private static final String INDEX = "series.idx";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final int segmentBlocks;
+    private final long retention;
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private final Map<String, Series> series = new HashMap<String, Series>();
+    private final List<Series> seriesById = new ArrayList<Series>();
+    private Writer index;
+
+    static final class BlockRef {
+        final Segment segment;
+        final int offset;
+
+        BlockRef(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    static final class Series {
+        final int id;
+        final String name;
+        final List<BlockRef> blocks = new ArrayList<BlockRef>();
+        Block open;
+        Segment openSegment;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        Series(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * @param retention how long the points are kept in milliseconds
+     */
+    BlockStore(File directory, int segmentBlocks, long retention) throws IOException {
+        this.directory = directory;
+        this.segmentBlocks = segmentBlocks;
+        this.retention = retention;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        loadIndex();
+        loadSegments();
+        index = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, INDEX), true), UTF8));
+    }
+
+    private void loadIndex() throws IOException {
+        File file = new File(directory, INDEX);
+        if (file.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            try {
+                String name;
+                while ((name = reader.readLine()) != null) {
+                    Series s = new Series(seriesById.size(), name);
+                    seriesById.add(s);
+                    series.put(name, s);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(Segment.PREFIX) && name.endsWith(Segment.SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        // the ids are zero padded so the names sort in the order the segments were created
+        Arrays.sort(files);
+        for (File file : files) {
+            Segment segment = Segment.open(file);
+            segments.add(segment);
+            for (int i = 0; i < segment.getAllocated(); i++) {
+                int offset = i * Block.SIZE;
+                int id = Block.getSeriesId(segment.getBuffer(), offset);
+                if (id < 0 || id >= seriesById.size()) {
+                    LOG.warn("Ignoring block " + i + " of " + file + " of unknown series " + id);
+                    continue;
+                }
+                if (Block.getCount(segment.getBuffer(), offset) > 0) {
+                    Series s = seriesById.get(id);
+                    s.blocks.add(new BlockRef(segment, offset));
+                    s.lastTimestamp = Math.max(s.lastTimestamp, Block.getLastTimestamp(segment.getBuffer(), offset));
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a point to the series, the points of a series must be appended in order
+     *
+     * @return false if the point was ignored because it is older than the last point of the series
+     */
+    boolean append(String name, long timestamp, double value) throws IOException {
+        Series s = series.get(name);
+        if (s == null) {
+            s = new Series(seriesById.size(), name);
+            index.write(name.replace('\n', ' '));
+            index.write('\n');
+            index.flush();
+            seriesById.add(s);
+            series.put(name, s);
+        }
+        if (timestamp < s.lastTimestamp) {
+            return false;
+        }
+        if (s.open == null || !s.open.hasRoom()) {
+            Segment segment = segments.isEmpty() ? null : segments.getLast();
+            int offset = segment != null ? segment.allocate() : -1;
+            if (offset < 0) {
+                segment = Segment.create(directory, segments.isEmpty() ? 0 : segments.getLast().getId() + 1, segmentBlocks);
+                segments.add(segment);
+                offset = segment.allocate();
+            }
+            s.open = Block.create(segment.getBuffer(), offset, s.id);
+            s.openSegment = segment;
+            s.blocks.add(new BlockRef(segment, offset));
+        }
+        s.open.append(timestamp, value);
+        s.openSegment.updateLastTimestamp(timestamp);
+        s.lastTimestamp = timestamp;
+        return true;
+    }
+
+    /**
+     * Adds the points of the series within the given range to the list
+     */
+    void query(String name, long from, long to, List<DataPoint> points) {
+        Series s = series.get(name);
+        if (s != null) {
+            for (BlockRef block : s.blocks) {
+                Block.read(block.segment.getBuffer(), block.offset, from, to, points);
+            }
+        }
+    }
+
+    Set<String> getSeries() {
+        Set<String> names = new TreeSet<String>();
+        for (Series s : seriesById) {
+            if (!s.blocks.isEmpty()) {
+                names.add(s.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Removes the segments whose points are all older than the retention, the latest segment is always kept
+     *
+     * @return the number of segments removed
+     */
+    int expire(long now) throws IOException {
+        int removed = 0;
+        while (segments.size() > 1 && segments.getFirst().getLastTimestamp() < now - retention) {
+            Segment segment = segments.removeFirst();
+            for (Series s : seriesById) {
+                Iterator<BlockRef> it = s.blocks.iterator();
+                while (it.hasNext() && it.next().segment == segment) {
+                    it.remove();
+                }
+                if (s.openSegment == segment) {
+                    s.open = null;
+                    s.openSegment = null;
+                }
+            }
+            if (!segment.delete()) {
+                LOG.warn("Unable to delete expired segment " + segment.getId() + " in " + directory);
+            }
+            removed++;
+        }
+        return removed;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    void flush() throws IOException {
+        for (Segment segment : segments) {
+            segment.flush();
+        }
+        index.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        index.close();
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+/**
+ * A value of a series at a given time
+ */
+public final class DataPoint {
+
+    private final long timestamp;
+    private final double value;
+
+    public DataPoint(long timestamp, double value) {
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DataPoint that = (DataPoint) o;
+
+        return timestamp == that.timestamp && Double.compare(that.value, value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(value);
+        int result = (int) (timestamp ^ (timestamp >>> 32));
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DataPoint{" + timestamp + "=" + value + "}";
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A memory mapped file of fixed size blocks, the blocks are allocated in order and only ever appended to.
+ */
+final class Segment {
+
+    static final String PREFIX = "segment-";
+    static final String SUFFIX = ".tsdb";
+
+    private final File file;
+    private final long id;
+    private final int blockCount;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private int allocated;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private Segment(File file, long id, int blockCount) throws IOException {
+        this.file = file;
+        this.id = id;
+        this.blockCount = blockCount;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength((long) blockCount * Block.SIZE);
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) blockCount * Block.SIZE);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    static Segment create(File directory, long id, int blockCount) throws IOException {
+        return new Segment(new File(directory, String.format("%s%016d%s", PREFIX, id, SUFFIX)), id, blockCount);
+    }
+
+    /**
+     * Opens an existing segment, the blocks which were allocated are found again by scanning their headers
+     */
+    static Segment open(File file) throws IOException {
+        String name = file.getName();
+        long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        Segment segment = new Segment(file, id, (int) (file.length() / Block.SIZE));
+        for (int i = 0; i < segment.blockCount; i++) {
+            int offset = i * Block.SIZE;
+            if (Block.getSeriesId(segment.buffer, offset) >= 0) {
+                segment.allocated = i + 1;
+                if (Block.getCount(segment.buffer, offset) > 0) {
+                    segment.lastTimestamp = Math.max(segment.lastTimestamp, Block.getLastTimestamp(segment.buffer, offset));
+                }
+            }
+        }
+        return segment;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * Returns the offset of the next free block or -1 if the segment is full
+     */
+    int allocate() {
+        if (allocated == blockCount) {
+            return -1;
+        }
+        return allocated++ * Block.SIZE;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    void updateLastTimestamp(long timestamp) {
+        if (timestamp > lastTimestamp) {
+            lastTimestamp = timestamp;
+        }
+    }
+
+    long getSize() {
+        return (long) blockCount * Block.SIZE;
+    }
+
+    void flush() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+
+    /**
+     * Closes and removes the segment, the mapping is only released once the buffer has been garbage collected
+     */
+    boolean delete() throws IOException {
+        raf.close();
+        return file.delete();
+    }
+}
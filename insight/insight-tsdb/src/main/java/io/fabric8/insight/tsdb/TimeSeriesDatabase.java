@@ -0,0 +1,241 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An embedded time series database storing its points in memory mapped, append only segments.
+ * <p>
+ * The raw points are kept for the raw retention. Each series is also downsampled into rollups of the configured
+ * resolutions which keep the average, minimum and maximum of every bucket for the rollup retention. A bucket is
+ * written once the first point of the next bucket arrives, the buckets still being filled are only kept in memory.
+ */
+public class TimeSeriesDatabase implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_BLOCKS = 1024;
+
+    private final BlockStore raw;
+    private final long[] resolutions;
+    private final BlockStore[] rollups;
+    private final Map<String, Bucket[]> buckets = new HashMap<String, Bucket[]>();
+
+    private static final class Bucket {
+        long start = Long.MIN_VALUE;
+        int count;
+        final double[] values = new double[Aggregation.values().length];
+
+        void add(double value) {
+            count++;
+            for (Aggregation aggregation : Aggregation.values()) {
+                values[aggregation.ordinal()] = aggregation.combine(values[aggregation.ordinal()], value, count);
+            }
+        }
+    }
+
+    /**
+     * @param directory       the directory of the database
+     * @param retention       how long the raw points are kept in milliseconds
+     * @param resolutions     the resolutions of the rollups in milliseconds
+     * @param rollupRetention how long the rollups are kept in milliseconds
+     * @param segmentBlocks   the number of 4k blocks of each segment file
+     */
+    public TimeSeriesDatabase(File directory, long retention, long[] resolutions, long rollupRetention, int segmentBlocks) throws IOException {
+        this.resolutions = resolutions.clone();
+        Arrays.sort(this.resolutions);
+        this.raw = new BlockStore(new File(directory, "raw"), segmentBlocks, retention);
+        this.rollups = new BlockStore[this.resolutions.length];
+        try {
+            for (int i = 0; i < this.resolutions.length; i++) {
+                rollups[i] = new BlockStore(new File(directory, "rollup-" + this.resolutions[i]), segmentBlocks, rollupRetention);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a point to the given series, the points of a series must be appended in order
+     *
+     * @return false if the point was ignored because it is older than the last point of the series
+     */
+    public synchronized boolean append(String series, long timestamp, double value) throws IOException {
+        if (!raw.append(series, timestamp, value)) {
+            return false;
+        }
+        if (resolutions.length > 0) {
+            Bucket[] pending = buckets.get(series);
+            if (pending == null) {
+                pending = new Bucket[resolutions.length];
+                for (int i = 0; i < pending.length; i++) {
+                    pending[i] = new Bucket();
+                }
+                buckets.put(series, pending);
+            }
+            for (int i = 0; i < resolutions.length; i++) {
+                Bucket bucket = pending[i];
+                long start = timestamp - timestamp % resolutions[i];
+                if (bucket.count > 0 && bucket.start != start) {
+                    for (Aggregation aggregation : Aggregation.values()) {
+                        rollups[i].append(aggregation.rollupName(series), bucket.start, bucket.values[aggregation.ordinal()]);
+                    }
+                    bucket.count = 0;
+                }
+                bucket.start = start;
+                bucket.add(value);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the raw points of the series within the given range
+     */
+    public synchronized List<DataPoint> query(String series, long from, long to) {
+        List<DataPoint> points = new ArrayList<DataPoint>();
+        raw.query(series, from, to, points);
+        return points;
+    }
+
+    /**
+     * Returns the points of the series within the given range downsampled to the given resolution.
+     * The points are read from the coarsest rollup which is at least as fine as the resolution, or from the raw
+     * points if there is none, and aggregated again if that rollup is finer than the resolution.
+     *
+     * @param resolution the resolution in milliseconds or 0 for the raw points
+     */
+    public synchronized List<DataPoint> query(String series, long from, long to, long resolution, Aggregation aggregation) {
+        int rollup = -1;
+        for (int i = 0; i < resolutions.length && resolutions[i] <= resolution; i++) {
+            rollup = i;
+        }
+        List<DataPoint> points = new ArrayList<DataPoint>();
+        long stored = 0;
+        if (rollup < 0) {
+            raw.query(series, from, to, points);
+        } else {
+            stored = resolutions[rollup];
+            rollups[rollup].query(aggregation.rollupName(series), from - from % stored, to, points);
+            Bucket[] pending = buckets.get(series);
+            if (pending != null) {
+                Bucket bucket = pending[rollup];
+                if (bucket.count > 0 && bucket.start <= to && bucket.start + stored > from) {
+                    points.add(new DataPoint(bucket.start, bucket.values[aggregation.ordinal()]));
+                }
+            }
+        }
+        if (resolution > stored) {
+            points = downsample(points, resolution, aggregation);
+        }
+        return points;
+    }
+
+    static List<DataPoint> downsample(List<DataPoint> points, long resolution, Aggregation aggregation) {
+        List<DataPoint> result = new ArrayList<DataPoint>();
+        long start = Long.MIN_VALUE;
+        double value = 0;
+        int count = 0;
+        for (DataPoint point : points) {
+            long bucket = point.getTimestamp() - point.getTimestamp() % resolution;
+            if (count > 0 && bucket != start) {
+                result.add(new DataPoint(start, value));
+                count = 0;
+            }
+            start = bucket;
+            value = aggregation.combine(value, point.getValue(), ++count);
+        }
+        if (count > 0) {
+            result.add(new DataPoint(start, value));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the names of the series which have points
+     */
+    public synchronized Set<String> getSeries() {
+        return raw.getSeries();
+    }
+
+    /**
+     * Removes the segments which only hold points older than their retention
+     *
+     * @return the number of segments removed
+     */
+    public synchronized int expire(long now) throws IOException {
+        int removed = raw.expire(now);
+        for (BlockStore rollup : rollups) {
+            removed += rollup.expire(now);
+        }
+        return removed;
+    }
+
+    public synchronized int getSegmentCount() {
+        int count = raw.getSegmentCount();
+        for (BlockStore rollup : rollups) {
+            count += rollup.getSegmentCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the size of the segment files in bytes
+     */
+    public synchronized long getSize() {
+        long size = raw.getSize();
+        for (BlockStore rollup : rollups) {
+            size += rollup.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Forces the segments to be written to the disk
+     */
+    public synchronized void flush() throws IOException {
+        raw.flush();
+        for (BlockStore rollup : rollups) {
+            rollup.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (BlockStore store : rollups) {
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        raw.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
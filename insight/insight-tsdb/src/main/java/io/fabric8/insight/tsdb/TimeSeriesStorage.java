@@ -0,0 +1,344 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.api.scr.AbstractComponent;
+import io.fabric8.api.scr.Configurer;
+import io.fabric8.common.util.JMXUtils;
+import io.fabric8.common.util.Strings;
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.MBeanOperResult;
+import io.fabric8.insight.metrics.model.MBeanOpersResult;
+import io.fabric8.insight.metrics.model.Metrics;
+import io.fabric8.insight.metrics.model.MetricsStorageService;
+import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.Result;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An implementation of {@link MetricsStorageService} which keeps the metrics of the container in an embedded
+ * {@link TimeSeriesDatabase}. The metrics collector stores its results in every bound storage, so they are
+ * retained locally next to any external backend and while it is unavailable.
+ */
+@ThreadSafe
+@Component(name = "io.fabric8.insight.tsdb", label = "Fabric8 Insight Time Series Storage", policy = ConfigurationPolicy.OPTIONAL, immediate = true, metatype = true)
+@Service(MetricsStorageService.class)
+public class TimeSeriesStorage extends AbstractComponent implements MetricsStorageService, TimeSeriesStorageMBean {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(TimeSeriesStorage.class);
+
+    private static final long EXPIRE_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    @Reference
+    private Configurer configurer;
+    @Reference
+    private MBeanServer mbeanServer;
+
+    @Property(name = "directory", label = "Directory", description = "The directory of the database, defaults to insight/tsdb in the data directory of the container")
+    private String directory;
+
+    @Property(name = "retention", label = "Retention", description = "How many hours the raw metrics are kept", intValue = 48)
+    private int retention = 48;
+
+    @Property(name = "rollups", label = "Rollups", description = "The resolutions of the downsampled metrics in seconds, separated by commas", value = "60,900,3600")
+    private String rollups = "60,900,3600";
+
+    @Property(name = "rollupRetention", label = "Rollup Retention", description = "How many hours the downsampled metrics are kept", intValue = 720)
+    private int rollupRetention = 720;
+
+    @Property(name = "segmentBlocks", label = "Segment Blocks", description = "The number of 4k blocks of each segment file", intValue = TimeSeriesDatabase.DEFAULT_SEGMENT_BLOCKS)
+    private int segmentBlocks = TimeSeriesDatabase.DEFAULT_SEGMENT_BLOCKS;
+
+    /**
+     * The database is used under the read lock and only closed or replaced under the write lock
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TimeSeriesDatabase database;
+    private String settings;
+    private ObjectName objectName;
+    private long lastExpire;
+    private final AtomicLong storedPoints = new AtomicLong();
+    private final AtomicLong ignoredPoints = new AtomicLong();
+
+    @Activate
+    void activate(Map<String, ?> configuration) throws Exception {
+        updateConfiguration(configuration);
+        objectName = new ObjectName("io.fabric8.insight:type=TimeSeriesStorage");
+        JMXUtils.registerMBean(this, mbeanServer, objectName);
+        activateComponent();
+    }
+
+    @Modified
+    void modified(Map<String, ?> configuration) throws Exception {
+        updateConfiguration(configuration);
+    }
+
+    @Deactivate
+    void deactivate() throws Exception {
+        deactivateComponent();
+        JMXUtils.unregisterMBean(mbeanServer, objectName);
+        closeDatabase();
+    }
+
+    protected void updateConfiguration(Map<String, ?> configuration) throws Exception {
+        configurer.configure(configuration, this);
+        File dir = Strings.isNotBlank(directory)
+                ? new File(directory)
+                : new File(System.getProperty("karaf.data", "data"), "insight" + File.separator + "tsdb");
+        String[] values = Strings.isNotBlank(rollups) ? rollups.split(",") : new String[0];
+        long[] resolutions = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            resolutions[i] = TimeUnit.SECONDS.toMillis(Long.parseLong(values[i].trim()));
+        }
+        String newSettings = dir.getAbsolutePath() + ";" + retention + ";" + Arrays.toString(resolutions)
+                + ";" + rollupRetention + ";" + segmentBlocks;
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (database != null && newSettings.equals(settings)) {
+                return;
+            }
+            closeDatabase();
+            database = new TimeSeriesDatabase(dir, TimeUnit.HOURS.toMillis(retention), resolutions,
+                    TimeUnit.HOURS.toMillis(rollupRetention), segmentBlocks);
+            settings = newSettings;
+        } finally {
+            writeLock.unlock();
+        }
+        LOG.info("Storing metrics in " + dir);
+    }
+
+    protected void closeDatabase() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (database != null) {
+                try {
+                    database.close();
+                } catch (IOException e) {
+                    LOG.warn("Error closing time series database", e);
+                }
+            }
+            database = null;
+            settings = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current database, which may be closed by a configuration change once returned
+     */
+    public TimeSeriesDatabase getDatabase() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return database;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void store(String type, long timestamp, QueryResult queryResult) {
+        store(type, timestamp, Collections.singletonList(queryResult));
+    }
+
+    @Override
+    public void store(String type, long timestamp, List<QueryResult> queryResults) {
+        assertValid();
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            TimeSeriesDatabase db = database;
+            if (db == null) {
+                throw new IllegalStateException("No time series database available!");
+            }
+            for (QueryResult queryResult : queryResults) {
+                store(db, type, timestamp, queryResult);
+            }
+            expire(db, timestamp);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to store metrics", e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    protected void store(TimeSeriesDatabase db, String type, long timestamp, QueryResult queryResult) throws IOException {
+        Map<String, Result<?>> results = queryResult.getResults();
+        if (results == null) {
+            return;
+        }
+        for (Result<?> result : results.values()) {
+            if (result instanceof MBeanOpersResult) {
+                MBeanOpersResult opersResult = (MBeanOpersResult) result;
+                List<MBeanOperResult> operResults = opersResult.getResults();
+                for (MBeanOperResult operResult : operResults) {
+                    String id = Metrics.metricId(type, opersResult.getRequest());
+                    if (operResults.size() > 1) {
+                        id += "[" + operResult.getObjectName().getKeyPropertyListString() + "]";
+                    }
+                    append(db, id, timestamp, operResult.getValue());
+                }
+            } else if (result instanceof MBeanAttrsResult) {
+                MBeanAttrsResult attrsResult = (MBeanAttrsResult) result;
+                List<MBeanAttrResult> attrResults = attrsResult.getResults();
+                for (MBeanAttrResult attrResult : attrResults) {
+                    for (Map.Entry<String, Object> attr : attrResult.getAttrs().entrySet()) {
+                        String id = Metrics.metricId(type, attrsResult.getRequest(), attr.getKey());
+                        if (attrResults.size() > 1) {
+                            id += "[" + attrResult.getObjectName().getKeyPropertyListString() + "]";
+                        }
+                        append(db, id, timestamp, attr.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the numeric value, or the numeric values of a composite value, to the series
+     */
+    protected void append(TimeSeriesDatabase db, String id, long timestamp, Object value) throws IOException {
+        if (value instanceof Number) {
+            if (db.append(id, timestamp, ((Number) value).doubleValue())) {
+                storedPoints.incrementAndGet();
+            } else {
+                ignoredPoints.incrementAndGet();
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    append(db, id + "." + entry.getKey(), timestamp, entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void expire(TimeSeriesDatabase db, long now) throws IOException {
+        synchronized (this) {
+            if (now - lastExpire < EXPIRE_PERIOD) {
+                return;
+            }
+            lastExpire = now;
+        }
+        int removed = db.expire(now);
+        if (removed > 0 && LOG.isDebugEnabled()) {
+            LOG.debug("Removed " + removed + " expired segments");
+        }
+    }
+
+    @Override
+    public String[] getSeries() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (database == null) {
+                return new String[0];
+            }
+            Set<String> series = database.getSeries();
+            return series.toArray(new String[series.size()]);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public String query(String series, long from, long to, long resolution, String aggregation) throws Exception {
+        Aggregation agg = Strings.isNotBlank(aggregation) ? Aggregation.valueOf(aggregation.trim().toUpperCase()) : Aggregation.AVG;
+        List<DataPoint> points;
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (database == null) {
+                throw new IllegalStateException("No time series database available!");
+            }
+            points = database.query(series, from, to, resolution, agg);
+        } finally {
+            readLock.unlock();
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (DataPoint point : points) {
+            if (sb.length() > 1) {
+                sb.append(",");
+            }
+            sb.append("[").append(point.getTimestamp()).append(",");
+            double value = point.getValue();
+            sb.append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+            sb.append("]");
+        }
+        return sb.append("]").toString();
+    }
+
+    @Override
+    public long getStoredPoints() {
+        return storedPoints.get();
+    }
+
+    @Override
+    public long getIgnoredPoints() {
+        return ignoredPoints.get();
+    }
+
+    @Override
+    public int getSegmentCount() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return database != null ? database.getSegmentCount() : 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return database != null ? database.getSize() : 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+}
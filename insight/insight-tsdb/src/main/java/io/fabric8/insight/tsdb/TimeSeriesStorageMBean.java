@@ -0,0 +1,48 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+public interface TimeSeriesStorageMBean {
+
+    /**
+     * @return the names of the stored series
+     */
+    String[] getSeries();
+
+    /**
+     * Returns the points of a series as a JSON array of [timestamp, value] pairs
+     *
+     * @param from        the start of the range in milliseconds since the epoch
+     * @param to          the end of the range in milliseconds since the epoch
+     * @param resolution  the resolution in milliseconds or 0 for the raw points
+     * @param aggregation avg, min or max, how the points are combined when they are downsampled
+     */
+    String query(String series, long from, long to, long resolution, String aggregation) throws Exception;
+
+    long getStoredPoints();
+
+    /**
+     * @return the number of points ignored because they were older than the last point of their series
+     */
+    long getIgnoredPoints();
+
+    int getSegmentCount();
+
+    /**
+     * @return the size of the segment files in bytes
+     */
+    long getSize();
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSeriesDatabaseTest {
+
+    private static final long START = 1420070400000L;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File("target/tsdb-" + System.nanoTime());
+    }
+
+    @Test
+    public void testAppendAndQuery() throws Exception {
+        List<DataPoint> expected = new ArrayList<DataPoint>();
+        Random random = new Random(0);
+        TimeSeriesDatabase db = new TimeSeriesDatabase(directory, HOUR * 24, new long[0], HOUR * 24, 16);
+        long timestamp = START;
+        double value = 100;
+        for (int i = 0; i < 20000; i++) {
+            // mostly regular timestamps and values which often do not change
+            timestamp += 1000 + (random.nextInt(10) == 0 ? random.nextInt(5000) - 100 : 0);
+            if (random.nextInt(4) == 0) {
+                value = random.nextInt(3) == 0 ? random.nextDouble() * 1e6 : value + 1;
+            }
+            assertTrue(db.append("test", timestamp, value));
+            expected.add(new DataPoint(timestamp, value));
+        }
+        assertFalse("out of order points are ignored", db.append("test", START, 1));
+        assertEquals(expected, db.query("test", Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(expected.subList(100, 201), db.query("test", expected.get(100).getTimestamp(), expected.get(200).getTimestamp()));
+        assertTrue("points should be compressed: " + db.getSize(), db.getSize() < expected.size() * 16 / 4);
+        db.close();
+
+        // the points are read back from the segments and new ones go to new blocks
+        db = new TimeSeriesDatabase(directory, HOUR * 24, new long[0], HOUR * 24, 16);
+        assertEquals(expected, db.query("test", Long.MIN_VALUE, Long.MAX_VALUE));
+        assertTrue(db.append("test", timestamp + 1000, 1.5));
+        assertTrue(db.append("other", timestamp, 2.5));
+        expected.add(new DataPoint(timestamp + 1000, 1.5));
+        assertEquals(expected, db.query("test", Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(2, db.getSeries().size());
+        db.close();
+    }
+
+    @Test
+    public void testRollups() throws Exception {
+        TimeSeriesDatabase db = new TimeSeriesDatabase(directory, HOUR * 24, new long[]{MINUTE, HOUR}, HOUR * 24, 16);
+        // 10 points per minute whose values are the minute and then 0 to 9
+        for (int minute = 0; minute < 90; minute++) {
+            for (int i = 0; i < 10; i++) {
+                db.append("test", START + minute * MINUTE + i * 6000, minute * 10 + i);
+            }
+        }
+        List<DataPoint> points = db.query("test", START, START + 90 * MINUTE, MINUTE, Aggregation.AVG);
+        assertEquals(90, points.size());
+        assertEquals(new DataPoint(START, 4.5), points.get(0));
+        assertEquals(new DataPoint(START + 89 * MINUTE, 894.5), points.get(89));
+        points = db.query("test", START, START + 90 * MINUTE, MINUTE, Aggregation.MAX);
+        assertEquals(new DataPoint(START + MINUTE, 19), points.get(1));
+
+        // served from the minute rollup and aggregated again
+        points = db.query("test", START, START + 90 * MINUTE, 10 * MINUTE, Aggregation.MIN);
+        assertEquals(9, points.size());
+        assertEquals(new DataPoint(START + 10 * MINUTE, 100), points.get(1));
+
+        // served from the hour rollup, the last hour is still being filled
+        points = db.query("test", START, START + 90 * MINUTE, HOUR, Aggregation.MAX);
+        assertEquals(2, points.size());
+        assertEquals(new DataPoint(START, 599), points.get(0));
+        assertEquals(new DataPoint(START + HOUR, 899), points.get(1));
+
+        // downsampled from the raw points
+        points = db.query("test", START, START + MINUTE - 1, 30000, Aggregation.AVG);
+        assertEquals(2, points.size());
+        assertEquals(new DataPoint(START, 2), points.get(0));
+        db.close();
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        TimeSeriesDatabase db = new TimeSeriesDatabase(directory, HOUR, new long[0], HOUR, 2);
+        long timestamp = START;
+        for (int i = 0; i < 20000; i++) {
+            timestamp += 1000;
+            db.append("test", timestamp, i * 0.5);
+        }
+        int segments = db.getSegmentCount();
+        assertTrue(segments > 2);
+        assertTrue(db.expire(timestamp) > 0);
+        assertTrue(db.getSegmentCount() < segments);
+        List<DataPoint> points = db.query("test", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(points.get(0).getTimestamp() > START);
+        assertEquals(timestamp, points.get(points.size() - 1).getTimestamp());
+        assertTrue(timestamp - points.get(0).getTimestamp() >= HOUR);
+        db.close();
+    }
+}